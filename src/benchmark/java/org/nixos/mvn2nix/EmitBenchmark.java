@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2026 The mvn2nix-maven-plugin authors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.nixos.mvn2nix;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.json.Json;
+import javax.json.stream.JsonGenerator;
+
+import org.eclipse.aether.artifact.Artifact;
+import org.eclipse.aether.artifact.DefaultArtifact;
+import org.eclipse.aether.graph.Dependency;
+import org.eclipse.aether.graph.Exclusion;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Writing the JSON for one artifact and its dependencies */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class EmitBenchmark
+{
+	@Param({ "10", "100" })
+	public int dependencies;
+
+	@Param({ "false", "true" })
+	public boolean sortOutput;
+
+	private Mvn2NixMojo mojo;
+
+	private Artifact art;
+
+	private List<Dependency> deps;
+
+	private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+	@Setup
+	public void setUp() throws ReflectiveOperationException {
+		mojo = new Mvn2NixMojo();
+		MojoHarness.set(mojo, "sortOutput", sortOutput);
+		art = new DefaultArtifact(SyntheticRepository.GROUP +
+			":a0:jar:1.0");
+		deps = new ArrayList<Dependency>();
+		for (int i = dependencies; i > 0; i--) {
+			deps.add(new Dependency(
+				new DefaultArtifact(SyntheticRepository.GROUP +
+					".g" + (i % 10) + ":a" + i + ":jar:1.0"),
+				"compile",
+				false,
+				Arrays.asList(
+					new Exclusion("org.example", "b" + i,
+						"", ""),
+					new Exclusion("org.example", "a" + i,
+						"", ""))));
+		}
+	}
+
+	@Benchmark
+	public int emit() {
+		out.reset();
+		JsonGenerator gen = Json.createGenerator(out);
+		gen.writeStartObject();
+		mojo.emitArtifactBody(art, deps, gen);
+		gen.writeEnd();
+		gen.close();
+		return out.size();
+	}
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright (c) 2026 The mvn2nix-maven-plugin authors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.nixos.mvn2nix;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.maven.project.MavenProject;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * A whole mojo execution against a {@link SyntheticRepository}.
+ *
+ * With a cold local repository every POM is copied from the synthetic
+ * repository first; a warm one already holds them from earlier
+ * invocations.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class ResolveBenchmark
+{
+	@Param({ "1000" })
+	public int artifacts;
+
+	@Param({ "4" })
+	public int fanOut;
+
+	@Param({ "6" })
+	public int depth;
+
+	@Param({ "1", "8" })
+	public int threads;
+
+	@Param({ "false", "true" })
+	public boolean cold;
+
+	@Param({ "false" })
+	public boolean sortOutput;
+
+	private File dir;
+
+	private MojoHarness harness;
+
+	private MavenProject project;
+
+	private File localRepo;
+
+	@Setup(Level.Trial)
+	public void generate() throws IOException {
+		dir = Files.createTempDirectory("mvn2nix-bench").toFile();
+		SyntheticRepository repo = new SyntheticRepository();
+		repo.artifacts = artifacts;
+		repo.fanOut = fanOut;
+		repo.depth = depth;
+		repo.snapshotEvery = 50;
+		repo.relocations = 10;
+		File remote = new File(dir, "remote");
+		List<String> roots = repo.write(remote);
+		harness = new MojoHarness();
+		project = MojoHarness.newProject(remote, roots);
+		localRepo = new File(dir, "local");
+	}
+
+	@Setup(Level.Invocation)
+	public void clearLocal() throws IOException {
+		if (cold) {
+			delete(localRepo);
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void cleanUp() throws IOException {
+		delete(dir);
+	}
+
+	@Benchmark
+	public void resolve() throws Exception {
+		Mvn2NixMojo mojo = harness.newMojo(project,
+			harness.newSession(localRepo),
+			new File(dir, "project-info.json"),
+			new File(dir, "cache"));
+		MojoHarness.set(mojo, "threads", threads);
+		MojoHarness.set(mojo, "checksumThreads", threads);
+		MojoHarness.set(mojo, "useChecksumCache", false);
+		MojoHarness.set(mojo, "sortOutput", sortOutput);
+		mojo.execute();
+	}
+
+	private static void delete(File file) throws IOException {
+		if (!file.exists()) {
+			return;
+		}
+		Files.walkFileTree(file.toPath(), new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult visitFile(Path path,
+				BasicFileAttributes attrs) throws IOException {
+				Files.delete(path);
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult postVisitDirectory(Path path,
+				IOException e) throws IOException {
+				Files.delete(path);
+				return FileVisitResult.CONTINUE;
+			}
+		});
+	}
+}
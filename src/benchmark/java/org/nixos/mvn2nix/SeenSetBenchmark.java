@@ -0,0 +1,144 @@
+/*
+ * Copyright (c) 2026 The mvn2nix-maven-plugin authors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.nixos.mvn2nix;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.aether.artifact.DefaultArtifact;
+import org.eclipse.aether.graph.Dependency;
+import org.eclipse.aether.graph.Exclusion;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The heap kept by the set of dependencies a walk has seen, as a
+ * <code>HashSet</code> of the dependencies themselves or as interned keys
+ * in a {@link LongHashSet}, reported as <code>retainedBytes</code>.
+ *
+ * Every artifact is reached with a number of different exclusion sets,
+ * each dependency coming with its own exclusion objects as if read from a
+ * separate descriptor.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@Warmup(iterations = 1, time = 1)
+@Measurement(iterations = 3, time = 1)
+public class SeenSetBenchmark
+{
+	@Param({ "50000" })
+	public int artifacts;
+
+	@Param({ "8" })
+	public int exclusionSets;
+
+	@Param({ "4" })
+	public int exclusions;
+
+	@Param({ "hashSet", "interned" })
+	public String seen;
+
+	/** Reported alongside the time taken */
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.EVENTS)
+	public static class Heap
+	{
+		public long retainedBytes;
+
+		private long before;
+
+		@Setup(Level.Invocation)
+		public void measureBefore() {
+			before = usedAfterGc();
+		}
+	}
+
+	private static long usedAfterGc() {
+		Runtime rt = Runtime.getRuntime();
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+		}
+		return rt.totalMemory() - rt.freeMemory();
+	}
+
+	private Dependency dependency(int art, int set) {
+		Exclusion[] excls = new Exclusion[exclusions];
+		for (int i = 0; i < exclusions; i++) {
+			excls[i] = new Exclusion(SyntheticRepository.GROUP,
+				"e" + (set * exclusions + i),
+				"*",
+				"*");
+		}
+		List<Exclusion> list = Arrays.asList(excls);
+		return new Dependency(new DefaultArtifact(
+				SyntheticRepository.GROUP + ":a" + art +
+				":jar:1.0"),
+			"compile",
+			false,
+			list);
+	}
+
+	@Benchmark
+	public int track(Heap heap) {
+		Set<Dependency> objects = null;
+		CoordinateInterner interner = null;
+		LongHashSet keys = null;
+		if (seen.equals("hashSet")) {
+			objects = new HashSet<Dependency>();
+		} else {
+			interner = new CoordinateInterner();
+			keys = new LongHashSet();
+		}
+		for (int art = 0; art < artifacts; art++) {
+			for (int set = 0; set < exclusionSets; set++) {
+				Dependency dep = dependency(art, set);
+				if (objects != null) {
+					objects.add(dep);
+				} else {
+					keys.add(interner.intern(dep));
+				}
+			}
+		}
+		heap.retainedBytes = usedAfterGc() - heap.before;
+		/* Keeps the sets reachable until measured */
+		return objects != null ? objects.size() :
+			keys.size() + interner.artifactCount();
+	}
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 2026 The mvn2nix-maven-plugin authors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.nixos.mvn2nix;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A thread-safe, size-bounded, least-recently-used cache.
+ *
+ * Values are only softly reachable from the cache, so the garbage
+ * collector may drop them when memory runs low, before the size bound
+ * is reached.
+ */
+final class BoundedCache<K, V>
+{
+	private static final class Entry<K, V> extends SoftReference<V>
+	{
+		final K key;
+
+		Entry(K key, V value, ReferenceQueue<V> queue) {
+			super(value, queue);
+			this.key = key;
+		}
+	}
+
+	private final ReferenceQueue<V> cleared = new ReferenceQueue<V>();
+
+	private final Map<K, Entry<K, V>> entries;
+
+	BoundedCache(final int maxEntries) {
+		this.entries = new LinkedHashMap<K, Entry<K, V>>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(
+				Map.Entry<K, Entry<K, V>> eldest) {
+				return size() > maxEntries;
+			}
+		};
+	}
+
+	public synchronized V get(K key) {
+		purge();
+		Entry<K, V> e = entries.get(key);
+		if (e == null) {
+			return null;
+		}
+		V value = e.get();
+		if (value == null) {
+			entries.remove(key);
+		}
+		return value;
+	}
+
+	public synchronized void put(K key, V value) {
+		purge();
+		entries.put(key, new Entry<K, V>(key, value, cleared));
+	}
+
+	public synchronized int size() {
+		purge();
+		return entries.size();
+	}
+
+	/* Forget entries whose values have been collected */
+	private void purge() {
+		Reference<? extends V> ref;
+		while ((ref = cleared.poll()) != null) {
+			@SuppressWarnings("unchecked")
+			Entry<K, V> e = (Entry<K, V>) ref;
+			if (entries.get(e.key) == e) {
+				entries.remove(e.key);
+			}
+		}
+	}
+}
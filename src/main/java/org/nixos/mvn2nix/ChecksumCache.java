@@ -0,0 +1,268 @@
+/*
+ * Copyright (c) 2026 The mvn2nix-maven-plugin authors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.nixos.mvn2nix;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A persistent map from artifact URLs to their SHA-1 (or, in a separate
+ * file, SHA-256) checksums.
+ *
+ * The backing file is an append-only log of
+ * <code>(key length, key, checksum)</code> records after a short header.
+ * It is read once, through a memory map, into a hash table on the heap
+ * when the cache is opened; lookups after that are plain hash table
+ * lookups, and new entries are appended to the log as they are added. A
+ * partially written trailing record, as left by an interrupted run, is
+ * dropped on open.
+ *
+ * The file may be shared by several processes, which take a lock on it
+ * to append or to drop such a record. Within one JVM, e.g. under the
+ * Maven daemon, opening the same file again returns the instance already
+ * open, which stays open until every opener has closed it.
+ *
+ * Only content that can never change should be stored here, i.e. release
+ * artifacts; the cache has no notion of expiry.
+ */
+final class ChecksumCache implements Closeable
+{
+	static final String FILE_NAME = "sha1.idx";
+
+	static final String SHA256_FILE_NAME = "sha256.idx";
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	static final int MAX_KEY_LENGTH = 64 * 1024;
+
+	/* Caches open in this JVM, by canonical file */
+	private static final Map<File, ChecksumCache> OPEN =
+		new HashMap<File, ChecksumCache>();
+
+	private final ConcurrentMap<String, String> entries =
+		new ConcurrentHashMap<String, String>();
+
+	private final File file;
+
+	private final FileChannel log;
+
+	private final byte[] magic;
+
+	/* Length of the hex checksums stored */
+	private final int hashLength;
+
+	/* Number of opens not closed yet, guarded by OPEN */
+	private int users = 1;
+
+	private ChecksumCache(File file,
+		FileChannel log,
+		String kind,
+		int hashLength) {
+		this.file = file;
+		this.log = log;
+		this.magic = ("mvn2nix-" + kind + "-1\n").getBytes(
+			Charset.forName("US-ASCII"));
+		this.hashLength = hashLength;
+	}
+
+	/**
+	 * Opens (creating if needed) the SHA-1 cache stored in
+	 * <code>dir</code>.
+	 */
+	public static ChecksumCache open(File dir) throws IOException {
+		return open(dir, FILE_NAME, "sha1", 40);
+	}
+
+	/**
+	 * Opens (creating if needed) the SHA-256 cache stored in
+	 * <code>dir</code>.
+	 */
+	public static ChecksumCache openSha256(File dir) throws IOException {
+		return open(dir, SHA256_FILE_NAME, "sha256", 64);
+	}
+
+	private static ChecksumCache open(File dir,
+		String name,
+		String kind,
+		int hashLength) throws IOException {
+		if (!dir.isDirectory() && !dir.mkdirs()) {
+			throw new IOException("Cannot create " + dir);
+		}
+		File file = new File(dir, name).getCanonicalFile();
+		synchronized (OPEN) {
+			ChecksumCache cache = OPEN.get(file);
+			if (cache != null) {
+				cache.users++;
+				return cache;
+			}
+			FileChannel ch = FileChannel.open(file.toPath(),
+				StandardOpenOption.CREATE,
+				StandardOpenOption.READ,
+				StandardOpenOption.WRITE);
+			try {
+				cache = new ChecksumCache(file,
+					ch,
+					kind,
+					hashLength);
+				cache.load();
+			} catch (IOException e) {
+				ch.close();
+				throw e;
+			}
+			OPEN.put(file, cache);
+			return cache;
+		}
+	}
+
+	/* Holds the file lock, so that records other runs are appending
+	 * are complete before the end of the log is looked at.
+	 */
+	private void load() throws IOException {
+		FileLock lock = log.lock();
+		try {
+			scan();
+		} finally {
+			lock.release();
+		}
+	}
+
+	private void scan() throws IOException {
+		long size = log.size();
+		if (size < magic.length) {
+			log.truncate(0);
+			log.write(ByteBuffer.wrap(magic), 0);
+			log.position(magic.length);
+			return;
+		}
+
+		MappedByteBuffer map = log.map(FileChannel.MapMode.READ_ONLY,
+			0,
+			size);
+		byte[] header = new byte[magic.length];
+		map.get(header);
+		if (!Arrays.equals(header, magic)) {
+			throw new IOException("Not a mvn2nix checksum cache");
+		}
+
+		byte[] hash = new byte[hashLength];
+		long good = map.position();
+		while (map.remaining() >= 4) {
+			int len = map.getInt();
+			if (len <= 0 || len > MAX_KEY_LENGTH ||
+				map.remaining() < len + hashLength) {
+				break;
+			}
+			byte[] key = new byte[len];
+			map.get(key);
+			map.get(hash);
+			entries.put(new String(key, UTF8),
+				new String(hash, UTF8));
+			good = map.position();
+		}
+
+		if (good != size) {
+			log.truncate(good);
+		}
+		log.position(good);
+	}
+
+	/**
+	 * Returns the cached checksum for <code>key</code>, or
+	 * <code>null</code> if there is none.
+	 */
+	public String get(String key) {
+		return entries.get(key);
+	}
+
+	/**
+	 * Records the checksum for <code>key</code>, persisting it unless it
+	 * is already known. Keys too long to be read back are only kept for
+	 * this run.
+	 */
+	public void put(String key, String hash) throws IOException {
+		byte[] h = hash.getBytes(UTF8);
+		if (h.length != hashLength) {
+			return;
+		}
+		if (entries.putIfAbsent(key, hash) != null) {
+			return;
+		}
+		byte[] k = key.getBytes(UTF8);
+		if (k.length > MAX_KEY_LENGTH) {
+			/* Loading would stop at such a record, dropping all
+			 * those after it.
+			 */
+			return;
+		}
+		ByteBuffer rec = ByteBuffer.allocate(4 + k.length + h.length);
+		rec.putInt(k.length);
+		rec.put(k);
+		rec.put(h);
+		rec.flip();
+		synchronized (log) {
+			/* Other runs may share the file, so always append at
+			 * its current end.
+			 */
+			FileLock lock = log.lock();
+			try {
+				log.position(log.size());
+				while (rec.hasRemaining()) {
+					log.write(rec);
+				}
+			} finally {
+				lock.release();
+			}
+		}
+	}
+
+	/** Number of checksums known to the cache */
+	public int size() {
+		return entries.size();
+	}
+
+	@Override
+	public void close() throws IOException {
+		synchronized (OPEN) {
+			if (users == 0 || --users > 0) {
+				return;
+			}
+			OPEN.remove(file);
+		}
+		synchronized (log) {
+			log.close();
+		}
+	}
+}
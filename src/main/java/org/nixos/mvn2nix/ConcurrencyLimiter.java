@@ -0,0 +1,404 @@
+/*
+ * Copyright (c) 2026 The mvn2nix-maven-plugin authors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.nixos.mvn2nix;
+
+import java.net.URI;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.eclipse.aether.spi.connector.transport.GetTask;
+import org.eclipse.aether.spi.connector.transport.PeekTask;
+import org.eclipse.aether.spi.connector.transport.PutTask;
+import org.eclipse.aether.spi.connector.transport.Transporter;
+import org.eclipse.aether.transfer.ArtifactNotFoundException;
+import org.eclipse.aether.transfer.MetadataNotFoundException;
+import org.eclipse.aether.transfer.TransferCancelledException;
+import org.eclipse.aether.transfer.TransferEvent;
+import org.eclipse.aether.transfer.TransferListener;
+import org.eclipse.aether.transfer.TransferResource;
+
+/**
+ * Limits the requests in flight to each host, adapting the limit to what
+ * the host can sustain.
+ *
+ * The limit grows by one for every limit's worth of requests that are
+ * answered in good time (additive increase) and is cut when a host fails
+ * a request for any reason but the file being missing, by half, or when
+ * its latency climbs to twice the best it has shown, by a tenth
+ * (multiplicative decrease). It is cut at most once per round trip, so a
+ * burst of failures from requests that were sent together only counts
+ * once.
+ *
+ * Transfers made by Aether are limited through {@link #listener}, which
+ * must be given to the session, and requests through pooled transporters
+ * through {@link #limit}.
+ */
+final class ConcurrencyLimiter
+{
+	/** Told about changes in the limit of a host */
+	interface Listener
+	{
+		void limitChanged(String host, int previous, int limit);
+	}
+
+	/* Latency below this never counts as queueing, whatever the ratio */
+	private static final long MIN_QUEUEING_NANOS = 5000000L;
+
+	private static final double LATENCY_TOLERANCE = 2.0;
+
+	private static final double OVERLOAD_BACKOFF = 0.5;
+
+	private static final double LATENCY_BACKOFF = 0.9;
+
+	/* The limit of one host */
+	final class Limit
+	{
+		final String host;
+
+		private double limit;
+
+		private int inFlight;
+
+		private int peak;
+
+		private long bestNanos = Long.MAX_VALUE;
+
+		private double smoothedNanos;
+
+		private long lastDecrease;
+
+		private long overloads;
+
+		Limit(String host) {
+			this.host = host;
+			this.limit = initial;
+		}
+
+		synchronized void acquire() throws InterruptedException {
+			while (inFlight >= (int) limit) {
+				wait();
+			}
+			inFlight++;
+			peak = Math.max(peak, inFlight);
+		}
+
+		void release(long nanos, boolean overloaded) {
+			int before;
+			int after;
+			synchronized (this) {
+				inFlight--;
+				before = (int) limit;
+				adjust(nanos, overloaded);
+				after = (int) limit;
+				notifyAll();
+			}
+			if (after != before && listener != null) {
+				listener.limitChanged(host, before, after);
+			}
+		}
+
+		private void adjust(long nanos, boolean overloaded) {
+			if (overloaded) {
+				overloads++;
+				decrease(OVERLOAD_BACKOFF);
+				return;
+			}
+			/* The best latency creeps up so a host that got
+			 * slower for good is eventually judged by its new
+			 * latency.
+			 */
+			bestNanos = Math.min(nanos,
+				bestNanos == Long.MAX_VALUE ? nanos :
+					bestNanos + (bestNanos >> 8));
+			smoothedNanos = smoothedNanos == 0 ? nanos :
+				0.8 * smoothedNanos + 0.2 * nanos;
+			if (smoothedNanos > LATENCY_TOLERANCE * bestNanos &&
+				smoothedNanos - bestNanos > MIN_QUEUEING_NANOS) {
+				decrease(LATENCY_BACKOFF);
+			} else {
+				limit = Math.min(max, limit + 1 / limit);
+			}
+		}
+
+		private void decrease(double factor) {
+			long now = System.nanoTime();
+			if (lastDecrease != 0 &&
+				now - lastDecrease < smoothedNanos) {
+				return;
+			}
+			lastDecrease = now;
+			limit = Math.max(1, limit * factor);
+		}
+
+		synchronized int getLimit() {
+			return (int) limit;
+		}
+
+		synchronized int getPeak() {
+			return peak;
+		}
+
+		synchronized long getOverloads() {
+			return overloads;
+		}
+	}
+
+	private final int initial;
+
+	private final int max;
+
+	private final Listener listener;
+
+	private final ConcurrentMap<String, Limit> limits =
+		new ConcurrentHashMap<String, Limit>();
+
+	/* A transfer Aether is making */
+	private static final class Transfer
+	{
+		final Limit limit;
+
+		final long start = System.nanoTime();
+
+		Transfer(Limit limit) {
+			this.limit = limit;
+		}
+	}
+
+	private final ConcurrentMap<TransferResource, Transfer> transfers =
+		new ConcurrentHashMap<TransferResource, Transfer>();
+
+	/**
+	 * A limiter letting at most <code>max</code> requests to a host be
+	 * in flight at once, starting at <code>initial</code>. The listener
+	 * may be null.
+	 */
+	ConcurrencyLimiter(int initial, int max, Listener listener) {
+		this.max = Math.max(1, max);
+		this.initial = Math.max(1, Math.min(initial, this.max));
+		this.listener = listener;
+	}
+
+	/** The host a repository URL refers to */
+	static String host(String url) {
+		try {
+			URI uri = new URI(url);
+			if (uri.getAuthority() != null) {
+				return uri.getAuthority();
+			}
+			return uri.getScheme() + ":";
+		} catch (Exception e) {
+			return url;
+		}
+	}
+
+	/** The limit of the host the repository at url is on */
+	Limit get(String url) {
+		String host = host(url);
+		Limit limit = limits.get(host);
+		if (limit == null) {
+			limit = new Limit(host);
+			Limit other = limits.putIfAbsent(host, limit);
+			if (other != null) {
+				limit = other;
+			}
+		}
+		return limit;
+	}
+
+	/** Current limit, peak concurrency and overloads of each host */
+	public Map<String, long[]> getLimits() {
+		Map<String, long[]> res = new TreeMap<String, long[]>();
+		for (Limit limit : limits.values()) {
+			res.put(limit.host, new long[] {
+				limit.getLimit(),
+				limit.getPeak(),
+				limit.getOverloads()
+			});
+		}
+		return res;
+	}
+
+	/**
+	 * A transporter making requests through <code>transport</code>, to
+	 * the repository at url, within the limit of its host.
+	 */
+	public Transporter limit(final Transporter transport, String url) {
+		final Limit limit = get(url);
+		return new Transporter() {
+			@Override
+			public int classify(Throwable error) {
+				return transport.classify(error);
+			}
+
+			@Override
+			public void peek(PeekTask task) throws Exception {
+				limit.acquire();
+				long start = System.nanoTime();
+				try {
+					transport.peek(task);
+				} catch (Exception e) {
+					release(e, start);
+					throw e;
+				}
+				limit.release(System.nanoTime() - start, false);
+			}
+
+			@Override
+			public void get(GetTask task) throws Exception {
+				limit.acquire();
+				long start = System.nanoTime();
+				try {
+					transport.get(task);
+				} catch (Exception e) {
+					release(e, start);
+					throw e;
+				}
+				limit.release(System.nanoTime() - start, false);
+			}
+
+			@Override
+			public void put(PutTask task) throws Exception {
+				limit.acquire();
+				long start = System.nanoTime();
+				try {
+					transport.put(task);
+				} catch (Exception e) {
+					release(e, start);
+					throw e;
+				}
+				limit.release(System.nanoTime() - start, false);
+			}
+
+			private void release(Exception e, long start) {
+				limit.release(System.nanoTime() - start,
+					transport.classify(e) !=
+						ERROR_NOT_FOUND);
+			}
+
+			@Override
+			public void close() {
+				transport.close();
+			}
+		};
+	}
+
+	/**
+	 * A listener holding back each transfer Aether makes until its host
+	 * is within its limit, passing all events on to <code>next</code>,
+	 * which may be null.
+	 */
+	public TransferListener listener(final TransferListener next) {
+		return new TransferListener() {
+			@Override
+			public void transferInitiated(TransferEvent event)
+				throws TransferCancelledException {
+				TransferResource res = event.getResource();
+				Limit limit = get(res.getRepositoryUrl());
+				try {
+					limit.acquire();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new TransferCancelledException(
+						"Interrupted waiting for " +
+							limit.host);
+				}
+				transfers.put(res, new Transfer(limit));
+				if (next != null) {
+					try {
+						next.transferInitiated(event);
+					} catch (TransferCancelledException e) {
+						finish(event, false);
+						throw e;
+					}
+				}
+			}
+
+			@Override
+			public void transferStarted(TransferEvent event)
+				throws TransferCancelledException {
+				if (next != null) {
+					next.transferStarted(event);
+				}
+			}
+
+			@Override
+			public void transferProgressed(TransferEvent event)
+				throws TransferCancelledException {
+				if (next != null) {
+					next.transferProgressed(event);
+				}
+			}
+
+			@Override
+			public void transferCorrupted(TransferEvent event)
+				throws TransferCancelledException {
+				if (next != null) {
+					next.transferCorrupted(event);
+				}
+			}
+
+			@Override
+			public void transferSucceeded(TransferEvent event) {
+				try {
+					if (next != null) {
+						next.transferSucceeded(event);
+					}
+				} finally {
+					finish(event, false);
+				}
+			}
+
+			@Override
+			public void transferFailed(TransferEvent event) {
+				try {
+					if (next != null) {
+						next.transferFailed(event);
+					}
+				} finally {
+					finish(event,
+						isOverload(event.getException()));
+				}
+			}
+		};
+	}
+
+	private void finish(TransferEvent event, boolean overloaded) {
+		Transfer transfer = transfers.remove(event.getResource());
+		if (transfer != null) {
+			transfer.limit.release(System.nanoTime() - transfer.start,
+				overloaded);
+		}
+	}
+
+	/* Whether a failed transfer says the host is struggling, rather
+	 * than that it doesn't have the file.
+	 */
+	static boolean isOverload(Exception e) {
+		return e != null &&
+			!(e instanceof ArtifactNotFoundException) &&
+			!(e instanceof MetadataNotFoundException) &&
+			!(e instanceof TransferCancelledException);
+	}
+}
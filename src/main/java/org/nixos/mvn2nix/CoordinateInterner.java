@@ -0,0 +1,220 @@
+/*
+ * Copyright (c) 2026 The mvn2nix-maven-plugin authors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.nixos.mvn2nix;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.aether.artifact.Artifact;
+import org.eclipse.aether.artifact.DefaultArtifact;
+import org.eclipse.aether.graph.Dependency;
+import org.eclipse.aether.graph.Exclusion;
+
+/**
+ * Maps dependencies to compact <code>long</code> keys and back.
+ *
+ * A key packs an artifact id, an exclusion set id and a scope/optional
+ * id. Each distinct artifact, exclusion and exclusion set is stored once,
+ * however many dependencies refer to it, so a walk only needs to keep
+ * keys for the dependencies it has seen or queued and can rebuild the
+ * <code>Dependency</code> when it gets to it.
+ *
+ * Artifacts are interned by coordinates only; their properties are not
+ * kept.
+ */
+final class CoordinateInterner
+{
+	private static final int VARIANT_BITS = 8;
+
+	private static final int EXCLUSION_SET_BITS = 32 - VARIANT_BITS;
+
+	/* An exclusion set, as the sorted ids of its exclusions */
+	private static final class IdSet
+	{
+		final int[] ids;
+
+		IdSet(int[] ids) {
+			this.ids = ids;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			return o instanceof IdSet &&
+				Arrays.equals(ids, ((IdSet) o).ids);
+		}
+
+		@Override
+		public int hashCode() {
+			return Arrays.hashCode(ids);
+		}
+	}
+
+	private final Map<String, Integer> artifactIds =
+		new HashMap<String, Integer>();
+
+	private final List<Artifact> artifacts = new ArrayList<Artifact>();
+
+	private final Map<String, Integer> exclusionIds =
+		new HashMap<String, Integer>();
+
+	private final List<Exclusion> exclusions = new ArrayList<Exclusion>();
+
+	private final Map<IdSet, Integer> exclusionSetIds =
+		new HashMap<IdSet, Integer>();
+
+	private final List<List<Exclusion>> exclusionSets =
+		new ArrayList<List<Exclusion>>();
+
+	private final List<int[]> exclusionSetMembers = new ArrayList<int[]>();
+
+	private final Map<String, Integer> variantIds =
+		new HashMap<String, Integer>();
+
+	private final List<String> scopes = new ArrayList<String>();
+
+	private final List<Boolean> optionals = new ArrayList<Boolean>();
+
+	public synchronized long intern(Dependency dep) {
+		long artifact = internArtifact(dep.getArtifact());
+		long exclusionSet = internExclusions(dep.getExclusions());
+		long variant = internVariant(dep.getScope(), dep.getOptional());
+		return (artifact << 32) | (exclusionSet << VARIANT_BITS) | variant;
+	}
+
+	public synchronized Dependency materialize(long key) {
+		Artifact art = artifacts.get(artifactId(key));
+		int variant = (int) (key & ((1 << VARIANT_BITS) - 1));
+		return new Dependency(art,
+			scopes.get(variant),
+			optionals.get(variant),
+			exclusionSets.get(exclusionSetId(key)));
+	}
+
+	/** The id of the artifact in <code>key</code> */
+	static int artifactId(long key) {
+		return (int) (key >>> 32);
+	}
+
+	/** The id of the exclusion set in <code>key</code> */
+	static int exclusionSetId(long key) {
+		return (int) ((key >>> VARIANT_BITS) &
+			((1 << EXCLUSION_SET_BITS) - 1));
+	}
+
+	/** <code>key</code> without its scope and optionality */
+	static long withoutVariant(long key) {
+		return key & ~((1L << VARIANT_BITS) - 1);
+	}
+
+	/** The sorted exclusion ids making up an interned exclusion set */
+	public synchronized int[] exclusionSet(int id) {
+		return exclusionSetMembers.get(id);
+	}
+
+	/** Number of distinct artifacts interned */
+	public synchronized int artifactCount() {
+		return artifacts.size();
+	}
+
+	/** Number of distinct exclusion sets interned */
+	public synchronized int exclusionSetCount() {
+		return exclusionSets.size();
+	}
+
+	private int internArtifact(Artifact art) {
+		String coords = art.getGroupId() + ':' + art.getArtifactId() +
+			':' + art.getExtension() + ':' + art.getClassifier() +
+			':' + art.getVersion();
+		Integer id = artifactIds.get(coords);
+		if (id == null) {
+			id = artifacts.size();
+			artifactIds.put(coords, id);
+			artifacts.add(new DefaultArtifact(art.getGroupId(),
+				art.getArtifactId(),
+				art.getClassifier(),
+				art.getExtension(),
+				art.getVersion()));
+		}
+		return id;
+	}
+
+	private int internExclusion(Exclusion excl) {
+		String coords = excl.getGroupId() + ':' + excl.getArtifactId() +
+			':' + excl.getClassifier() + ':' + excl.getExtension();
+		Integer id = exclusionIds.get(coords);
+		if (id == null) {
+			id = exclusions.size();
+			exclusionIds.put(coords, id);
+			exclusions.add(excl);
+		}
+		return id;
+	}
+
+	private int internExclusions(Collection<Exclusion> excls) {
+		int[] ids = new int[excls.size()];
+		int n = 0;
+		for (Exclusion excl : excls) {
+			ids[n++] = internExclusion(excl);
+		}
+		Arrays.sort(ids);
+		IdSet set = new IdSet(ids);
+		Integer id = exclusionSetIds.get(set);
+		if (id == null) {
+			id = exclusionSets.size();
+			if (id >= 1 << EXCLUSION_SET_BITS) {
+				throw new IllegalStateException(
+					"Too many distinct exclusion sets");
+			}
+			exclusionSetIds.put(set, id);
+			List<Exclusion> members = new ArrayList<Exclusion>();
+			for (int i : ids) {
+				members.add(exclusions.get(i));
+			}
+			exclusionSets.add(Collections.unmodifiableList(members));
+			exclusionSetMembers.add(ids);
+		}
+		return id;
+	}
+
+	private int internVariant(String scope, Boolean optional) {
+		String key = scope + ':' + optional;
+		Integer id = variantIds.get(key);
+		if (id == null) {
+			id = scopes.size();
+			if (id >= 1 << VARIANT_BITS) {
+				throw new IllegalStateException(
+					"Too many distinct scopes");
+			}
+			variantIds.put(key, id);
+			scopes.add(scope);
+			optionals.add(optional);
+		}
+		return id;
+	}
+}
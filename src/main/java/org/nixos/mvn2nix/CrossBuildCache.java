@@ -0,0 +1,69 @@
+/*
+ * Copyright (c) 2026 The mvn2nix-maven-plugin authors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.nixos.mvn2nix;
+
+import org.eclipse.aether.resolution.ArtifactDescriptorResult;
+
+/**
+ * Caches that outlive a single build, for JVMs that run many builds such
+ * as the Maven daemon or embedded Maven.
+ *
+ * Only content that cannot change is put here: descriptors and checksums
+ * of released artifacts. Both caches are bounded and evict the least
+ * recently used entries first.
+ */
+final class CrossBuildCache
+{
+	private static CrossBuildCache instance;
+
+	private final int maxEntries;
+
+	/**
+	 * Descriptors keyed by session properties, repositories and
+	 * coordinates
+	 */
+	final BoundedCache<String, ArtifactDescriptorResult> descriptors;
+
+	/** SHA-1 checksums keyed by URL */
+	final BoundedCache<String, String> checksums;
+
+	private CrossBuildCache(int maxEntries) {
+		this.maxEntries = maxEntries;
+		this.descriptors =
+			new BoundedCache<String, ArtifactDescriptorResult>(
+				maxEntries);
+		this.checksums = new BoundedCache<String, String>(maxEntries);
+	}
+
+	/**
+	 * The cache shared by all builds in this JVM, recreated empty if
+	 * it was last used with a different size.
+	 */
+	public static synchronized CrossBuildCache get(int maxEntries) {
+		if (instance == null || instance.maxEntries != maxEntries) {
+			instance = new CrossBuildCache(maxEntries);
+		}
+		return instance;
+	}
+}
@@ -0,0 +1,351 @@
+/*
+ * Copyright (c) 2026 The mvn2nix-maven-plugin authors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.nixos.mvn2nix;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.maven.plugin.MojoExecutionException;
+
+import org.eclipse.aether.graph.Dependency;
+
+/**
+ * Expands a dependency graph on a fixed pool of threads.
+ *
+ * Every distinct <code>Dependency</code> passed to {@link #add} is handed
+ * to the {@link Visitor} exactly once, together with the walker so that
+ * it can feed the dependencies it discovers back through {@link #add}.
+ * While queued or after being visited, a dependency is only kept as a key
+ * from a {@link CoordinateInterner}.
+ *
+ * Scope and optionality don't change what a dependency leads to, so a
+ * dependency is skipped if the same artifact has already been queued with
+ * a subset of its exclusions: that earlier visit reaches everything this
+ * one could. A visit that does go ahead re-adds all of the artifact's
+ * dependencies, and the same check then only lets through the ones that
+ * lead somewhere new.
+ *
+ * Latency-bound work that nothing else in the walk depends on, such as
+ * checksum downloads, can be handed to a second, separately sized pool
+ * with {@link #fork}, so that it overlaps with the expansion of the graph
+ * instead of holding it up.
+ *
+ * {@link #await} returns once the frontier is empty and all forked tasks
+ * have finished, rethrowing the first failure if any of them failed.
+ */
+final class DependencyWalker
+{
+	/**
+	 * Called once for every distinct dependency reached by the walk.
+	 * May be called concurrently from several threads.
+	 */
+	interface Visitor
+	{
+		void visit(Dependency dep, DependencyWalker walker)
+			throws MojoExecutionException;
+	}
+
+	/**
+	 * A unit of work passed to {@link #fork}.
+	 */
+	interface Task
+	{
+		void run() throws MojoExecutionException;
+	}
+
+	private final Visitor visitor;
+
+	private final ExecutorService executor;
+
+	private final ExecutorService forkExecutor;
+
+	private final CoordinateInterner interner = new CoordinateInterner();
+
+	private final LongHashSet seen = new LongHashSet();
+
+	/* For each artifact id, the minimal exclusion sets it was queued
+	 * with so far.
+	 */
+	private final List<int[]> explored = new ArrayList<int[]>();
+
+	private final AtomicLong visits = new AtomicLong();
+
+	private final AtomicLong subsumed = new AtomicLong();
+
+	private final AtomicLong duplicates = new AtomicLong();
+
+	private final Object lock = new Object();
+
+	private int pending = 0;
+
+	private MojoExecutionException failure = null;
+
+	DependencyWalker(int threads, int forkThreads, Visitor visitor) {
+		this.visitor = visitor;
+		this.executor = newPool(threads, "mvn2nix-walker-");
+		this.forkExecutor = newPool(forkThreads, "mvn2nix-fetcher-");
+	}
+
+	private static ExecutorService newPool(int threads,
+		final String prefix) {
+		return Executors.newFixedThreadPool(Math.max(1, threads),
+			new ThreadFactory() {
+				private final AtomicInteger count =
+					new AtomicInteger();
+
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, prefix +
+						count.incrementAndGet());
+					t.setDaemon(true);
+					return t;
+				}
+			});
+	}
+
+	/**
+	 * Queues <code>dep</code> for a visit unless it has already been
+	 * queued or subsumed. Safe to call from any thread, including from within
+	 * {@link Visitor#visit}.
+	 */
+	public void add(Dependency dep) {
+		final long key = interner.intern(dep);
+		if (!explore(key)) {
+			return;
+		}
+		visits.incrementAndGet();
+		submit(executor, new Task() {
+			@Override
+			public void run() throws MojoExecutionException {
+				visitor.visit(interner.materialize(key),
+					DependencyWalker.this);
+			}
+
+			@Override
+			public String toString() {
+				return "Handling " + interner.materialize(key);
+			}
+		});
+	}
+
+	/**
+	 * Queues each of <code>deps</code> like {@link #add}. On a single
+	 * thread they are all queued before any of them is visited, so the
+	 * order of visits doesn't depend on how fast the first ones are.
+	 */
+	public void addAll(final Collection<Dependency> deps) {
+		final List<Dependency> copy = new ArrayList<Dependency>(deps);
+		submit(executor, new Task() {
+			@Override
+			public void run() {
+				for (Dependency dep : copy) {
+					add(dep);
+				}
+			}
+
+			@Override
+			public String toString() {
+				return "Queueing " + copy;
+			}
+		});
+	}
+
+	/* Whether a visit for key may reach anything earlier visits of the
+	 * same artifact haven't, remembering its exclusions if so.
+	 */
+	private boolean explore(long key) {
+		if (!seen.add(CoordinateInterner.withoutVariant(key))) {
+			duplicates.incrementAndGet();
+			return false;
+		}
+		int art = CoordinateInterner.artifactId(key);
+		int[] excls = interner.exclusionSet(
+			CoordinateInterner.exclusionSetId(key));
+		synchronized (explored) {
+			while (explored.size() <= art) {
+				explored.add(new int[0]);
+			}
+			int[] sets = explored.get(art);
+			int[] kept = new int[sets.length + 1];
+			int n = 0;
+			for (int set : sets) {
+				int[] other = interner.exclusionSet(set);
+				if (isSubset(other, excls)) {
+					subsumed.incrementAndGet();
+					return false;
+				}
+				/* Sets the new one is contained in can't
+				 * subsume anything it doesn't.
+				 */
+				if (!isSubset(excls, other)) {
+					kept[n++] = set;
+				}
+			}
+			kept[n++] = CoordinateInterner.exclusionSetId(key);
+			explored.set(art, Arrays.copyOf(kept, n));
+			return true;
+		}
+	}
+
+	/* Whether sorted array a is contained in sorted array b */
+	private static boolean isSubset(int[] a, int[] b) {
+		int j = 0;
+		for (int x : a) {
+			while (j < b.length && b[j] < x) {
+				j++;
+			}
+			if (j == b.length || b[j] != x) {
+				return false;
+			}
+			j++;
+		}
+		return true;
+	}
+
+	/** Number of dependencies queued for a visit */
+	public long getVisits() {
+		return visits.get();
+	}
+
+	/**
+	 * Number of dependencies skipped because the same artifact was
+	 * already queued with the same exclusions.
+	 */
+	public long getDuplicates() {
+		return duplicates.get();
+	}
+
+	/**
+	 * Number of dependencies skipped because a visit of the same
+	 * artifact with fewer exclusions was already queued.
+	 */
+	public long getSubsumed() {
+		return subsumed.get();
+	}
+
+	/**
+	 * Runs <code>task</code> on the fork pool. {@link #await} waits for
+	 * it like for any queued dependency.
+	 */
+	public void fork(Task task) {
+		submit(forkExecutor, task);
+	}
+
+	private void submit(ExecutorService pool, final Task task) {
+		synchronized (lock) {
+			if (failure != null) {
+				return;
+			}
+			pending++;
+		}
+		try {
+			pool.execute(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						if (!failed()) {
+							task.run();
+						}
+					} catch (MojoExecutionException e) {
+						fail(e);
+					} catch (Throwable t) {
+						fail(new MojoExecutionException(
+							task.toString(), t));
+					} finally {
+						done();
+					}
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			done();
+		}
+	}
+
+	/**
+	 * Blocks until every queued dependency has been visited and every
+	 * forked task has run, then shuts the pools down.
+	 */
+	public void await() throws MojoExecutionException {
+		try {
+			synchronized (lock) {
+				while (pending > 0) {
+					lock.wait();
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new MojoExecutionException(
+				"Interrupted while resolving dependencies", e);
+		} finally {
+			executor.shutdownNow();
+			forkExecutor.shutdownNow();
+		}
+		synchronized (lock) {
+			if (failure != null) {
+				throw failure;
+			}
+		}
+	}
+
+	/**
+	 * Gives up on the walk, dropping whatever is still queued and
+	 * shutting the pools down, without waiting for running tasks.
+	 */
+	public void cancel() {
+		fail(new MojoExecutionException("Walk cancelled"));
+		executor.shutdownNow();
+		forkExecutor.shutdownNow();
+	}
+
+	private boolean failed() {
+		synchronized (lock) {
+			return failure != null;
+		}
+	}
+
+	private void fail(MojoExecutionException e) {
+		synchronized (lock) {
+			if (failure == null) {
+				failure = e;
+			}
+		}
+	}
+
+	private void done() {
+		synchronized (lock) {
+			pending--;
+			if (pending == 0) {
+				lock.notifyAll();
+			}
+		}
+	}
+}
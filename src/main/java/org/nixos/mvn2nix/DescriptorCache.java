@@ -0,0 +1,463 @@
+/*
+ * Copyright (c) 2026 The mvn2nix-maven-plugin authors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.nixos.mvn2nix;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.aether.RepositorySystem;
+import org.eclipse.aether.RepositorySystemSession;
+import org.eclipse.aether.artifact.Artifact;
+import org.eclipse.aether.artifact.DefaultArtifact;
+import org.eclipse.aether.graph.Dependency;
+import org.eclipse.aether.repository.RemoteRepository;
+import org.eclipse.aether.resolution.ArtifactDescriptorException;
+import org.eclipse.aether.resolution.ArtifactDescriptorRequest;
+import org.eclipse.aether.resolution.ArtifactDescriptorResult;
+import org.eclipse.aether.resolution.ArtifactRequest;
+import org.eclipse.aether.resolution.ArtifactResolutionException;
+import org.eclipse.aether.resolution.ArtifactResult;
+import org.eclipse.aether.transfer.ArtifactNotFoundException;
+import org.eclipse.aether.transfer.ArtifactTransferException;
+
+/**
+ * Reads artifact descriptors at most once per groupId:artifactId:version.
+ *
+ * All artifacts with the same coordinates share a POM, whatever their
+ * extension or classifier, so the jar, pom, sources, tests etc. of a
+ * version all get the same <code>ArtifactDescriptorResult</code>.
+ * Concurrent requests for a descriptor that is still being read wait for
+ * that read rather than starting their own.
+ *
+ * A cache must only be used with one list of remote repositories, though
+ * repositories may be added to the end of the list while it is in use. It
+ * may be backed by a longer-lived cache, which is consulted before reading
+ * a descriptor and given every released descriptor that is read, keyed by
+ * the repositories in the list at the time and by the session's system and
+ * user properties, which decide what profiles descriptors are built with.
+ *
+ * With a {@link RepositoryRouter}, descriptors are first looked for in the
+ * order the router suggests, and again in all repositories if that fails.
+ *
+ * Descriptors of POMs can be read without building their model, see
+ * {@link PomSummary}. When that isn't enough to tell the descriptor, the
+ * model is built as usual.
+ */
+final class DescriptorCache
+{
+	private final RepositorySystem repoSystem;
+
+	private final RepositorySystemSession session;
+
+	private final List<RemoteRepository> repos;
+
+	private final BoundedCache<String, ArtifactDescriptorResult> shared;
+
+	/* Stands for the session's properties in keys of the shared cache */
+	private final String propertiesKey;
+
+	private final Metrics metrics;
+
+	private final RepositoryRouter router;
+
+	private final AtomicLong fallbacks = new AtomicLong();
+
+	/* Longest chain of parents followed without building a model */
+	private static final int MAX_PARENTS = 32;
+
+	private final boolean lightweightPoms;
+
+	/* Whether each POM seen and all its ancestors are simple */
+	private final ConcurrentMap<String, Boolean> simple =
+		new ConcurrentHashMap<String, Boolean>();
+
+	private final AtomicLong lightweight = new AtomicLong();
+
+	private final Retries retries;
+
+	private final AtomicLong retried = new AtomicLong();
+
+	private final ConcurrentMap<String, FutureTask<ArtifactDescriptorResult>>
+		results = new ConcurrentHashMap<String,
+			FutureTask<ArtifactDescriptorResult>>();
+
+	private final AtomicLong hits = new AtomicLong();
+
+	private final AtomicLong misses = new AtomicLong();
+
+	private final AtomicLong sharedHits = new AtomicLong();
+
+	DescriptorCache(RepositorySystem repoSystem,
+		RepositorySystemSession session,
+		List<RemoteRepository> repos,
+		BoundedCache<String, ArtifactDescriptorResult> shared,
+		RepositoryRouter router,
+		boolean lightweightPoms,
+		int retries,
+		long backoffMillis,
+		Metrics metrics) {
+		this.repoSystem = repoSystem;
+		this.retries = new Retries(retries, backoffMillis);
+		this.lightweightPoms = lightweightPoms;
+		this.router = router;
+		this.metrics = metrics;
+		this.session = session;
+		this.repos = repos;
+		this.shared = shared;
+		this.propertiesKey = shared != null ?
+			propertiesKey(session) : null;
+	}
+
+	/* A digest of the properties of session */
+	static String propertiesKey(RepositorySystemSession session) {
+		MessageDigest md;
+		try {
+			md = MessageDigest.getInstance("SHA-1");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+		update(md, session.getSystemProperties());
+		update(md, session.getUserProperties());
+		return LocalChecksums.toHex(md.digest());
+	}
+
+	private static void update(MessageDigest md, Map<String, String> props) {
+		for (Map.Entry<String, String> e :
+				new TreeMap<String, String>(props).entrySet()) {
+			md.update((e.getKey() + '=' + e.getValue() + '\n')
+				.getBytes(StandardCharsets.UTF_8));
+		}
+		md.update((byte) 0);
+	}
+
+	/* The key of a descriptor in the backing cache */
+	private String sharedKey(List<RemoteRepository> repos, String key) {
+		StringBuilder res = new StringBuilder(propertiesKey).append('|');
+		for (RemoteRepository repo : repos) {
+			res.append(repo.getId()).append('=')
+				.append(repo.getUrl()).append(',');
+		}
+		return res.append(key).toString();
+	}
+
+	private ArtifactDescriptorResult load(Artifact art, String key)
+		throws ArtifactDescriptorException {
+		boolean cacheable = shared != null && !art.isSnapshot();
+		/* The repositories as of now, for both the key and the read */
+		List<RemoteRepository> repos =
+			new ArrayList<RemoteRepository>(this.repos);
+		String sharedKey = cacheable ? sharedKey(repos, key) : null;
+		if (cacheable) {
+			ArtifactDescriptorResult res = shared.get(sharedKey);
+			if (res != null) {
+				sharedHits.incrementAndGet();
+				return res;
+			}
+		}
+		ArtifactDescriptorResult res = null;
+		List<RemoteRepository> order = repos;
+		if (router != null) {
+			order = router.order(art.getGroupId(), repos);
+			if (!order.equals(repos)) {
+				try {
+					res = read(art, order);
+				} catch (ArtifactDescriptorException e) {
+					res = null;
+				}
+				/* Missing descriptors may be ignored rather than
+				 * fail, depending on the session's policy.
+				 */
+				if (res == null || res.getRepository() == null) {
+					fallbacks.incrementAndGet();
+					res = null;
+					order = repos;
+				}
+			}
+		}
+		if (res == null) {
+			res = readRetrying(art, order);
+		}
+		if (router != null &&
+			res.getRepository() instanceof RemoteRepository) {
+			router.learn(art.getGroupId(),
+				order,
+				(RemoteRepository) res.getRepository());
+		}
+		if (cacheable) {
+			shared.put(sharedKey, res);
+		}
+		return res;
+	}
+
+	/* Transfers that fail for any reason but the file being missing
+	 * are retried. The session remembers which files it has already
+	 * tried to download, so retries get a session with fresh data.
+	 */
+	private ArtifactDescriptorResult readRetrying(Artifact art,
+		List<RemoteRepository> order) throws ArtifactDescriptorException {
+		RepositorySystemSession attemptSession = session;
+		for (int attempt = 0; ; attempt++) {
+			try {
+				return read(art, order, attemptSession);
+			} catch (ArtifactDescriptorException e) {
+				if (!retries.allowed(attempt) || !isTransient(e)) {
+					throw e;
+				}
+			}
+			retried.incrementAndGet();
+			try {
+				retries.pause(attempt);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new ArtifactDescriptorException(
+					new ArtifactDescriptorResult(
+						new ArtifactDescriptorRequest(art,
+							order,
+							null)),
+					"Interrupted retrying " + art);
+			}
+			attemptSession = Retries.fresh(session);
+		}
+	}
+
+	/* Whether e was caused by a failed transfer of a file that exists */
+	static boolean isTransient(Throwable e) {
+		for (Throwable t = e; t != null; t = t.getCause()) {
+			if (t instanceof ArtifactNotFoundException) {
+				return false;
+			}
+			if (t instanceof ArtifactTransferException) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private ArtifactDescriptorResult read(Artifact art,
+		List<RemoteRepository> order) throws ArtifactDescriptorException {
+		return read(art, order, session);
+	}
+
+	private ArtifactDescriptorResult read(Artifact art,
+		List<RemoteRepository> order,
+		RepositorySystemSession using)
+		throws ArtifactDescriptorException {
+		if (lightweightPoms && art.getExtension().equals("pom")) {
+			ArtifactDescriptorResult res = readPom(art, order);
+			if (res != null) {
+				return res;
+			}
+		}
+		long start = metrics.start();
+		try {
+			return repoSystem.readArtifactDescriptor(using,
+				new ArtifactDescriptorRequest(art, order, null));
+		} finally {
+			metrics.phase("readArtifactDescriptor", start);
+		}
+	}
+
+	private static String key(Artifact art) {
+		return art.getGroupId() + ':' + art.getArtifactId() + ':' +
+			art.getVersion();
+	}
+
+	private ArtifactResult resolvePom(Artifact art,
+		List<RemoteRepository> order) {
+		Artifact pom = new DefaultArtifact(art.getGroupId(),
+			art.getArtifactId(),
+			"",
+			"pom",
+			art.getVersion());
+		try {
+			return repoSystem.resolveArtifact(session,
+				new ArtifactRequest(pom, order, null));
+		} catch (ArtifactResolutionException e) {
+			return null;
+		}
+	}
+
+	private static PomSummary summarize(ArtifactResult res) {
+		if (res == null || res.getArtifact().getFile() == null) {
+			return null;
+		}
+		try {
+			return PomSummary.read(res.getArtifact().getFile());
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	/* The descriptor of the POM art if it and all its ancestors are
+	 * simple, which makes it consist of just the parent.
+	 */
+	private ArtifactDescriptorResult readPom(Artifact art,
+		List<RemoteRepository> order) {
+		long start = metrics.start();
+		try {
+			ArtifactResult top = resolvePom(art, order);
+			PomSummary pom = summarize(top);
+			if (pom == null || !pom.isSimple()) {
+				return null;
+			}
+
+			List<String> chain = new ArrayList<String>();
+			Artifact parent = pom.getParent();
+			while (parent != null) {
+				String key = key(parent);
+				Boolean known = simple.get(key);
+				if (known != null) {
+					if (!known) {
+						return null;
+					}
+					break;
+				}
+				if (chain.size() == MAX_PARENTS ||
+					chain.contains(key)) {
+					return null;
+				}
+				PomSummary s = summarize(resolvePom(parent, order));
+				if (s == null) {
+					return null;
+				}
+				if (!s.isSimple()) {
+					simple.put(key, false);
+					return null;
+				}
+				chain.add(key);
+				parent = s.getParent();
+			}
+			for (String key : chain) {
+				simple.put(key, true);
+			}
+
+			ArtifactDescriptorResult res = new ArtifactDescriptorResult(
+				new ArtifactDescriptorRequest(art, order, null));
+			res.setArtifact(art);
+			res.setRepository(top.getRepository());
+			if (pom.getParent() != null) {
+				/* As added by the parent POM propagating
+				 * descriptor reader delegate
+				 */
+				res.addDependency(new Dependency(pom.getParent(),
+					"compile"));
+			}
+			lightweight.incrementAndGet();
+			return res;
+		} finally {
+			metrics.phase("readPom", start);
+		}
+	}
+
+	public ArtifactDescriptorResult read(final Artifact art)
+		throws ArtifactDescriptorException {
+		final String key = art.getGroupId() + ':' +
+			art.getArtifactId() + ':' + art.getVersion();
+		FutureTask<ArtifactDescriptorResult> task = results.get(key);
+		if (task == null) {
+			FutureTask<ArtifactDescriptorResult> newTask =
+				new FutureTask<ArtifactDescriptorResult>(
+					new Callable<ArtifactDescriptorResult>() {
+						@Override
+						public ArtifactDescriptorResult call()
+							throws ArtifactDescriptorException {
+							return load(art, key);
+						}
+					});
+			task = results.putIfAbsent(key, newTask);
+			if (task == null) {
+				task = newTask;
+				misses.incrementAndGet();
+				task.run();
+			} else {
+				hits.incrementAndGet();
+			}
+		} else {
+			hits.incrementAndGet();
+		}
+
+		try {
+			return task.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new ArtifactDescriptorException(
+				new ArtifactDescriptorResult(
+					new ArtifactDescriptorRequest(art, repos, null)),
+				"Interrupted");
+		} catch (ExecutionException e) {
+			/* Let a later request try again */
+			results.remove(key, task);
+			Throwable cause = e.getCause();
+			if (cause instanceof ArtifactDescriptorException) {
+				throw (ArtifactDescriptorException) cause;
+			}
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			throw new IllegalStateException(cause);
+		}
+	}
+
+	/** Number of reads answered from the cache */
+	public long getHits() {
+		return hits.get();
+	}
+
+	/** Number of descriptors not found in this cache */
+	public long getMisses() {
+		return misses.get();
+	}
+
+	/** Number of descriptors read without building a model */
+	public long getLightweight() {
+		return lightweight.get();
+	}
+
+	/** Number of descriptor reads retried after a failed transfer */
+	public long getRetried() {
+		return retried.get();
+	}
+
+	/** Number of reads the router's order didn't find */
+	public long getFallbacks() {
+		return fallbacks.get();
+	}
+
+	/** Number of misses answered by the backing cache */
+	public long getSharedHits() {
+		return sharedHits.get();
+	}
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) 2026 The mvn2nix-maven-plugin authors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.nixos.mvn2nix;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+
+import org.eclipse.aether.transfer.TransferCancelledException;
+import org.eclipse.aether.transfer.TransferEvent;
+import org.eclipse.aether.transfer.TransferListener;
+import org.eclipse.aether.transfer.TransferResource;
+
+/**
+ * A transfer listener that holds back a download while the same resource
+ * is already being downloaded, passing all events on to another listener.
+ *
+ * Aether downloads into a temporary file named after the target, so two
+ * threads reading descriptors that share a parent POM can otherwise
+ * download it at the same time, into the same file, and fail or leave a
+ * corrupt file behind. Once the first download has finished the second
+ * one goes ahead on its own.
+ */
+final class DownloadGate implements TransferListener
+{
+	private final TransferListener next;
+
+	private final ConcurrentMap<String, CountDownLatch> inFlight =
+		new ConcurrentHashMap<String, CountDownLatch>();
+
+	/* The latch each download holds, by resource */
+	private final ConcurrentMap<TransferResource, CountDownLatch> held =
+		new ConcurrentHashMap<TransferResource, CountDownLatch>();
+
+	/** A gate passing events on to <code>next</code>, which may be null */
+	DownloadGate(TransferListener next) {
+		this.next = next;
+	}
+
+	private static String key(TransferResource res) {
+		return res.getFile() != null ? res.getFile().getPath() :
+			res.getRepositoryUrl() + res.getResourceName();
+	}
+
+	private void enter(TransferEvent event)
+		throws TransferCancelledException {
+		if (event.getRequestType() != TransferEvent.RequestType.GET) {
+			return;
+		}
+		TransferResource res = event.getResource();
+		String key = key(res);
+		CountDownLatch mine = new CountDownLatch(1);
+		while (true) {
+			CountDownLatch other = inFlight.putIfAbsent(key, mine);
+			if (other == null) {
+				held.put(res, mine);
+				return;
+			}
+			try {
+				other.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new TransferCancelledException(
+					"Interrupted waiting for " + key);
+			}
+		}
+	}
+
+	private void leave(TransferEvent event) {
+		TransferResource res = event.getResource();
+		CountDownLatch mine = held.remove(res);
+		if (mine != null) {
+			inFlight.remove(key(res), mine);
+			mine.countDown();
+		}
+	}
+
+	@Override
+	public void transferInitiated(TransferEvent event)
+		throws TransferCancelledException {
+		enter(event);
+		if (next != null) {
+			try {
+				next.transferInitiated(event);
+			} catch (TransferCancelledException e) {
+				leave(event);
+				throw e;
+			}
+		}
+	}
+
+	@Override
+	public void transferStarted(TransferEvent event)
+		throws TransferCancelledException {
+		if (next != null) {
+			next.transferStarted(event);
+		}
+	}
+
+	@Override
+	public void transferProgressed(TransferEvent event)
+		throws TransferCancelledException {
+		if (next != null) {
+			next.transferProgressed(event);
+		}
+	}
+
+	@Override
+	public void transferCorrupted(TransferEvent event)
+		throws TransferCancelledException {
+		if (next != null) {
+			next.transferCorrupted(event);
+		}
+	}
+
+	@Override
+	public void transferSucceeded(TransferEvent event) {
+		try {
+			if (next != null) {
+				next.transferSucceeded(event);
+			}
+		} finally {
+			leave(event);
+		}
+	}
+
+	@Override
+	public void transferFailed(TransferEvent event) {
+		try {
+			if (next != null) {
+				next.transferFailed(event);
+			}
+		} finally {
+			leave(event);
+		}
+	}
+}
@@ -0,0 +1,463 @@
+/*
+ * Copyright (c) 2026 The mvn2nix-maven-plugin authors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.nixos.mvn2nix;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.json.Json;
+import javax.json.JsonArray;
+import javax.json.JsonArrayBuilder;
+import javax.json.JsonObject;
+import javax.json.JsonObjectBuilder;
+import javax.json.JsonReader;
+import javax.json.JsonString;
+import javax.json.JsonValue;
+import javax.json.JsonWriter;
+import javax.json.stream.JsonGenerator;
+
+import org.eclipse.aether.artifact.Artifact;
+import org.eclipse.aether.graph.Dependency;
+import org.eclipse.aether.graph.Exclusion;
+
+/**
+ * Writes the artifact entries of the <code>dependencies</code> array.
+ *
+ * Entries may be written concurrently; each one is written as a whole.
+ * Every entry takes a position from {@link #reserve}, normally when its
+ * artifact is visited, and entries are written in the order of their
+ * positions rather than in the order they are completed. Given an output
+ * generator, an entry goes straight to it once all entries before it have
+ * been written, and is held back until then otherwise. Without one they
+ * are spooled until the generator is passed to {@link #finish}.
+ *
+ * An ordered writer always spools them and writes them ordered by
+ * coordinates in {@link #finish} instead, for when the order of visits
+ * itself varies from run to run. A sorted writer is ordered and also puts
+ * the <code>dependencies</code> and <code>exclusions</code> arrays of
+ * reused entries into canonical order, so that identical inputs always
+ * produce byte-identical output.
+ *
+ * Entries may instead be written into {@link ShardedOutput} shards, in
+ * which case they are only spooled if ordered.
+ *
+ * Every entry may also be recorded in a {@link Journal} as it is written.
+ */
+final class EntryWriter implements Closeable
+{
+	/**
+	 * Writes the members of one entry object.
+	 */
+	interface Body
+	{
+		void write(JsonGenerator gen);
+	}
+
+	/** Entries held in memory before a sorted run is spilled to disk */
+	private static final int SORT_BUFFER_ENTRIES = 10000;
+
+	private final JsonGenerator out;
+
+	private final ShardedOutput shards;
+
+	private final SortedSpool spool;
+
+	private final boolean sorted;
+
+	private final boolean ordered;
+
+	/* May be null */
+	private volatile Journal journal;
+
+	/* Hands out the positions of entries */
+	private final AtomicLong sequence = new AtomicLong();
+
+	/* Guards next and held */
+	private final Object turn = new Object();
+
+	/* Position of the next entry to write when not spooling */
+	private long next = 0;
+
+	/* Entries completed before their turn, by position */
+	private final TreeMap<Long, Object[]> held =
+		new TreeMap<Long, Object[]>();
+
+	/**
+	 * A writer for <code>out</code>, or one spooling every entry until
+	 * {@link #finish} if <code>out</code> is null.
+	 */
+	EntryWriter(JsonGenerator out, boolean sorted) {
+		this(out, null, sorted, sorted);
+	}
+
+	/**
+	 * Like {@link #EntryWriter(JsonGenerator, boolean)}, ordering the
+	 * entries by coordinates if <code>ordered</code> even if they aren't
+	 * otherwise sorted.
+	 */
+	EntryWriter(JsonGenerator out, boolean sorted, boolean ordered) {
+		this(out, null, sorted, sorted || ordered);
+	}
+
+	private EntryWriter(JsonGenerator out,
+		ShardedOutput shards,
+		boolean sorted,
+		boolean ordered) {
+		this.out = out;
+		this.shards = shards;
+		this.sorted = sorted;
+		this.ordered = ordered;
+		this.spool = ordered || (out == null && shards == null) ?
+			new SortedSpool(SORT_BUFFER_ENTRIES) : null;
+	}
+
+	/**
+	 * A writer into <code>shards</code>.
+	 */
+	static EntryWriter sharded(ShardedOutput shards,
+		boolean sorted,
+		boolean ordered) {
+		return new EntryWriter(null, shards, sorted, sorted || ordered);
+	}
+
+	/* Where an entry keyed by key goes when it isn't spooled */
+	private JsonGenerator target(String key) throws IOException {
+		if (shards == null) {
+			return out;
+		}
+		return shards.generator(key.substring(0, key.indexOf(':')));
+	}
+
+	/**
+	 * Records every entry written from now on in <code>journal</code>.
+	 */
+	void journalTo(Journal journal) {
+		this.journal = journal;
+	}
+
+	public boolean isSorted() {
+		return sorted;
+	}
+
+	private String spoolKey(String key, long position) {
+		if (ordered) {
+			return key;
+		}
+		return String.format("%016x", position);
+	}
+
+	/**
+	 * The position of an entry to be written later. Every position
+	 * handed out must be written, or later entries are held back for
+	 * good.
+	 */
+	public long reserve() {
+		return sequence.getAndIncrement();
+	}
+
+	/**
+	 * Writes an entry whose members are produced by <code>body</code>
+	 * at the next free position.
+	 */
+	public void write(String key, Body body) throws IOException {
+		write(key, reserve(), body);
+	}
+
+	/**
+	 * Writes an entry whose members are produced by <code>body</code>
+	 * at <code>position</code>. <code>key</code> identifies the entry
+	 * and determines its position in ordered output instead.
+	 */
+	public void write(String key, long position, Body body)
+		throws IOException {
+		if (spool == null && journal == null) {
+			synchronized (turn) {
+				if (position == next) {
+					JsonGenerator gen = target(key);
+					synchronized (gen) {
+						gen.writeStartObject();
+						body.write(gen);
+						gen.writeEnd();
+					}
+					next++;
+					writeHeld();
+					return;
+				}
+			}
+		}
+		StringWriter buf = new StringWriter();
+		try (JsonGenerator gen = Json.createGenerator(buf)) {
+			gen.writeStartObject();
+			body.write(gen);
+			gen.writeEnd();
+		}
+		String entry = buf.toString();
+		if (journal != null) {
+			journal.append(entry);
+		}
+		if (spool != null) {
+			spool.add(spoolKey(key, position), entry);
+			return;
+		}
+		try (JsonReader reader = Json.createReader(
+				new StringReader(entry))) {
+			writeInTurn(key, position, reader.readObject());
+		}
+	}
+
+	/**
+	 * Writes an already built entry at the next free position.
+	 */
+	public void write(String key, JsonObject entry) throws IOException {
+		write(key, reserve(), entry);
+	}
+
+	/**
+	 * Writes an already built entry at <code>position</code>.
+	 */
+	public void write(String key, long position, JsonObject entry)
+		throws IOException {
+		if (journal != null) {
+			StringWriter buf = new StringWriter();
+			try (JsonWriter writer = Json.createWriter(buf)) {
+				writer.writeObject(entry);
+			}
+			journal.append(buf.toString());
+		}
+		if (spool == null) {
+			writeInTurn(key, position, entry);
+			return;
+		}
+		StringWriter buf = new StringWriter();
+		try (JsonWriter writer = Json.createWriter(buf)) {
+			writer.writeObject(sorted ? canonical(entry) : entry);
+		}
+		spool.add(spoolKey(key, position), buf.toString());
+	}
+
+	/* Writes entry once every entry before position has been written */
+	private void writeInTurn(String key, long position, JsonObject entry)
+		throws IOException {
+		synchronized (turn) {
+			held.put(position, new Object[] { key, entry });
+			writeHeld();
+		}
+	}
+
+	/* Writes the held entries whose turn it is; must hold turn */
+	private void writeHeld() throws IOException {
+		Object[] e;
+		while ((e = held.remove(next)) != null) {
+			JsonGenerator gen = target((String) e[0]);
+			synchronized (gen) {
+				gen.write((JsonObject) e[1]);
+			}
+			next++;
+		}
+	}
+
+	/**
+	 * Writes out all spooled entries to <code>gen</code>, which must be
+	 * the generator given on construction if there was one, or to their
+	 * shards. Must be called once every entry has been written.
+	 */
+	public void finish(final JsonGenerator gen) throws IOException {
+		if (spool == null) {
+			return;
+		}
+		spool.drain(new SortedSpool.Sink() {
+			@Override
+			public void accept(String value) throws IOException {
+				JsonObject entry;
+				try (JsonReader reader = Json.createReader(
+						new StringReader(value))) {
+					entry = reader.readObject();
+				}
+				if (shards == null) {
+					gen.write(entry);
+					return;
+				}
+				JsonGenerator shard = shards.generator(
+					entry.getString("groupId"));
+				synchronized (shard) {
+					shard.write(entry);
+				}
+			}
+		});
+	}
+
+	@Override
+	public void close() {
+		if (spool != null) {
+			spool.close();
+		}
+	}
+
+	/**
+	 * The position of an artifact entry in sorted output.
+	 */
+	static String key(Artifact art, String version) {
+		return key(art.getGroupId(),
+			art.getArtifactId(),
+			art.getExtension(),
+			art.getClassifier(),
+			version);
+	}
+
+	private static String key(String... parts) {
+		StringBuilder res = new StringBuilder();
+		for (String p : parts) {
+			res.append(p).append(':');
+		}
+		return res.toString();
+	}
+
+	private static final String[] DEPENDENCY_FIELDS = { "groupId",
+		"artifactId", "extension", "classifier", "version", "scope",
+		"optional" };
+
+	private static final String[] EXCLUSION_FIELDS = { "groupId",
+		"artifactId", "extension", "classifier" };
+
+	/* Must agree with the keys of the Dependency and Exclusion objects
+	 * the same JSON was written from.
+	 */
+	private static String key(JsonObject obj, String[] fields) {
+		String[] parts = new String[fields.length];
+		for (int i = 0; i < fields.length; i++) {
+			JsonValue v = obj.get(fields[i]);
+			if (v instanceof JsonString) {
+				parts[i] = ((JsonString) v).getString();
+			} else {
+				parts[i] = String.valueOf(v);
+			}
+		}
+		return key(parts);
+	}
+
+	private static String key(Dependency dep) {
+		Artifact art = dep.getArtifact();
+		return key(art.getGroupId(),
+			art.getArtifactId(),
+			art.getExtension(),
+			art.getClassifier(),
+			art.getVersion(),
+			dep.getScope(),
+			String.valueOf(dep.isOptional()));
+	}
+
+	private static String key(Exclusion excl) {
+		return key(excl.getGroupId(),
+			excl.getArtifactId(),
+			excl.getExtension(),
+			excl.getClassifier());
+	}
+
+	/**
+	 * <code>deps</code> in canonical order.
+	 */
+	static List<Dependency> sortDependencies(Collection<Dependency> deps) {
+		List<Dependency> res = new ArrayList<Dependency>(deps);
+		Collections.sort(res, new Comparator<Dependency>() {
+			@Override
+			public int compare(Dependency a, Dependency b) {
+				return key(a).compareTo(key(b));
+			}
+		});
+		return res;
+	}
+
+	/**
+	 * <code>excls</code> in canonical order.
+	 */
+	static List<Exclusion> sortExclusions(Collection<Exclusion> excls) {
+		List<Exclusion> res = new ArrayList<Exclusion>(excls);
+		Collections.sort(res, new Comparator<Exclusion>() {
+			@Override
+			public int compare(Exclusion a, Exclusion b) {
+				return key(a).compareTo(key(b));
+			}
+		});
+		return res;
+	}
+
+	private static void sort(List<JsonObject> objs, final String[] fields) {
+		Collections.sort(objs, new Comparator<JsonObject>() {
+			@Override
+			public int compare(JsonObject a, JsonObject b) {
+				return key(a, fields).compareTo(key(b, fields));
+			}
+		});
+	}
+
+	/* Copy of entry with its dependencies and their exclusions sorted */
+	private static JsonObject canonical(JsonObject entry) {
+		JsonArray deps = entry.getJsonArray("dependencies");
+		if (deps == null) {
+			return entry;
+		}
+		List<JsonObject> sortedDeps = new ArrayList<JsonObject>();
+		for (JsonObject dep : deps.getValuesAs(JsonObject.class)) {
+			JsonArray excls = dep.getJsonArray("exclusions");
+			if (excls != null) {
+				List<JsonObject> sortedExcls =
+					new ArrayList<JsonObject>(excls
+						.getValuesAs(JsonObject.class));
+				sort(sortedExcls, EXCLUSION_FIELDS);
+				dep = replace(dep, "exclusions", sortedExcls);
+			}
+			sortedDeps.add(dep);
+		}
+		sort(sortedDeps, DEPENDENCY_FIELDS);
+		return replace(entry, "dependencies", sortedDeps);
+	}
+
+	private static JsonObject replace(JsonObject obj,
+		String name,
+		List<JsonObject> values) {
+		JsonArrayBuilder arr = Json.createArrayBuilder();
+		for (JsonObject v : values) {
+			arr.add(v);
+		}
+		JsonObjectBuilder res = Json.createObjectBuilder();
+		for (Map.Entry<String, JsonValue> e : obj.entrySet()) {
+			if (e.getKey().equals(name)) {
+				res.add(name, arr);
+			} else {
+				res.add(e.getKey(), e.getValue());
+			}
+		}
+		return res.build();
+	}
+}
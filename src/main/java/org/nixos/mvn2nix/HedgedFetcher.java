@@ -0,0 +1,242 @@
+/*
+ * Copyright (c) 2026 The mvn2nix-maven-plugin authors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.nixos.mvn2nix;
+
+import java.io.Closeable;
+import java.net.URI;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.aether.spi.connector.transport.GetTask;
+import org.eclipse.aether.spi.connector.transport.Transporter;
+
+/**
+ * Fetches small files, such as checksums, retrying transfers that fail
+ * for any reason but the file being missing, and hedging against a slow
+ * repository.
+ *
+ * Given an equivalent mirror, a request that takes longer than the
+ * repository usually does, going by the given quantile of its latencies
+ * so far, is sent to the mirror too, and whichever answers first wins.
+ * The other request is then cancelled.
+ */
+final class HedgedFetcher implements Closeable
+{
+	/* Latencies needed before their quantile is trusted */
+	private static final long MIN_SAMPLES = 20;
+
+	/* Hedging delay until then */
+	private static final long DEFAULT_DELAY_MILLIS = 1000;
+
+	private final Retries retries;
+
+	private final double quantile;
+
+	private final long minDelayMillis;
+
+	private final Metrics metrics;
+
+	private ExecutorService executor;
+
+	private final AtomicLong retried = new AtomicLong();
+
+	private final AtomicLong hedged = new AtomicLong();
+
+	private final AtomicLong hedgeWins = new AtomicLong();
+
+	/**
+	 * A fetcher trying each request up to <code>retries</code> more
+	 * times, waiting <code>backoffMillis</code> before the first retry
+	 * and twice as long before each further one, up to
+	 * {@link Retries#MAX_BACKOFF_MILLIS}. Requests are hedged
+	 * once they take longer than the <code>quantile</code> of their
+	 * repository's latency, but no sooner than
+	 * <code>minDelayMillis</code>.
+	 */
+	HedgedFetcher(int retries,
+		long backoffMillis,
+		double quantile,
+		long minDelayMillis,
+		Metrics metrics) {
+		this.retries = new Retries(retries, backoffMillis);
+		this.quantile = quantile;
+		this.minDelayMillis = minDelayMillis;
+		this.metrics = metrics;
+	}
+
+	/**
+	 * The contents of <code>location</code> in the repository at
+	 * <code>base</code>, hedged against the same location in the one at
+	 * <code>hedgeBase</code> if <code>hedge</code> isn't null.
+	 */
+	public byte[] get(URI location,
+		Transporter transport,
+		String base,
+		Transporter hedge,
+		String hedgeBase) throws Exception {
+		for (int attempt = 0; ; attempt++) {
+			try {
+				if (hedge == null) {
+					return fetch(location, transport, base);
+				}
+				return hedged(location, transport, base,
+					hedge, hedgeBase);
+			} catch (Exception e) {
+				if (!retries.allowed(attempt) ||
+					transport.classify(e) ==
+						Transporter.ERROR_NOT_FOUND) {
+					throw e;
+				}
+			}
+			retried.incrementAndGet();
+			retries.pause(attempt);
+		}
+	}
+
+	private byte[] fetch(URI location, Transporter transport, String base)
+		throws Exception {
+		GetTask task = new GetTask(location);
+		long start = metrics.start();
+		try {
+			transport.get(task);
+		} catch (Exception e) {
+			metrics.request(base, start, 0, true);
+			throw e;
+		}
+		metrics.request(base, start, task.getDataBytes().length, false);
+		return task.getDataBytes();
+	}
+
+	private synchronized ExecutorService executor() {
+		if (executor == null) {
+			executor = Executors.newCachedThreadPool(
+				new ThreadFactory() {
+					@Override
+					public Thread newThread(Runnable r) {
+						Thread t = new Thread(r,
+							"mvn2nix-hedge");
+						t.setDaemon(true);
+						return t;
+					}
+				});
+		}
+		return executor;
+	}
+
+	/* How long to wait for the repository at base before hedging */
+	long delayMillis(String base) {
+		long delay = metrics.latencyQuantile(base, quantile, MIN_SAMPLES);
+		if (delay < 0) {
+			delay = DEFAULT_DELAY_MILLIS;
+		}
+		return Math.max(minDelayMillis, delay);
+	}
+
+	private byte[] hedged(final URI location,
+		final Transporter transport,
+		final String base,
+		final Transporter hedge,
+		final String hedgeBase) throws Exception {
+		CompletionService<byte[]> done =
+			new ExecutorCompletionService<byte[]>(executor());
+		Future<byte[]> first = done.submit(new Callable<byte[]>() {
+			@Override
+			public byte[] call() throws Exception {
+				return fetch(location, transport, base);
+			}
+		});
+		Future<byte[]> res = done.poll(delayMillis(base),
+			TimeUnit.MILLISECONDS);
+		if (res != null) {
+			return result(res);
+		}
+
+		hedged.incrementAndGet();
+		Future<byte[]> second = done.submit(new Callable<byte[]>() {
+			@Override
+			public byte[] call() throws Exception {
+				return fetch(location, hedge, hedgeBase);
+			}
+		});
+		Exception failure = null;
+		for (int i = 0; i < 2; i++) {
+			res = done.take();
+			try {
+				byte[] data = result(res);
+				if (res == second) {
+					hedgeWins.incrementAndGet();
+					first.cancel(true);
+				} else {
+					second.cancel(true);
+				}
+				return data;
+			} catch (Exception e) {
+				if (failure == null || res == first) {
+					failure = e;
+				}
+			}
+		}
+		throw failure;
+	}
+
+	private static byte[] result(Future<byte[]> f) throws Exception {
+		try {
+			return f.get();
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof Exception) {
+				throw (Exception) e.getCause();
+			}
+			throw e;
+		}
+	}
+
+	/** Number of retries made */
+	public long getRetried() {
+		return retried.get();
+	}
+
+	/** Number of requests that were hedged */
+	public long getHedged() {
+		return hedged.get();
+	}
+
+	/** Number of hedged requests the mirror answered first */
+	public long getHedgeWins() {
+		return hedgeWins.get();
+	}
+
+	@Override
+	public synchronized void close() {
+		if (executor != null) {
+			executor.shutdownNow();
+		}
+	}
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright (c) 2026 The mvn2nix-maven-plugin authors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.nixos.mvn2nix;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * An append-only log of the entries written so far, one JSON object per
+ * line, from which an interrupted run can be resumed.
+ *
+ * Each entry is handed to the operating system as soon as it is
+ * appended, so it survives the process dying. Syncing it to the disk,
+ * which only matters if the machine goes down, is batched. A torn last
+ * line, as left by a crash in the middle of an append, is cut off when
+ * the journal is reopened.
+ */
+final class Journal implements Closeable
+{
+	/** Entries appended between syncs at most */
+	private static final int SYNC_ENTRIES = 256;
+
+	/** Time between syncs at most */
+	private static final long SYNC_NANOS = 1000000000L;
+
+	private final FileChannel log;
+
+	private int unsynced = 0;
+
+	private long lastSync = System.nanoTime();
+
+	/**
+	 * Opens (creating if needed) <code>file</code> for appending.
+	 */
+	Journal(File file) throws IOException {
+		log = FileChannel.open(file.toPath(),
+			StandardOpenOption.CREATE,
+			StandardOpenOption.READ,
+			StandardOpenOption.WRITE);
+		try {
+			long end = completeLength(log);
+			log.truncate(end);
+			log.position(end);
+		} catch (IOException e) {
+			log.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * The journal kept for the output file <code>output</code>.
+	 */
+	static File file(File output) {
+		return new File(output.getPath() + ".journal");
+	}
+
+	/* Length up to and including the last line feed */
+	private static long completeLength(FileChannel ch) throws IOException {
+		ByteBuffer buf = ByteBuffer.allocate(4096);
+		long end = ch.size();
+		while (end > 0) {
+			long start = Math.max(0, end - buf.capacity());
+			buf.clear();
+			buf.limit((int) (end - start));
+			while (buf.hasRemaining()) {
+				if (ch.read(buf, start + buf.position()) < 0) {
+					break;
+				}
+			}
+			for (int i = buf.position() - 1; i >= 0; i--) {
+				if (buf.get(i) == '\n') {
+					return start + i + 1;
+				}
+			}
+			end = start;
+		}
+		return 0;
+	}
+
+	/**
+	 * Appends <code>entry</code>, which must not contain line feeds.
+	 */
+	public synchronized void append(String entry) throws IOException {
+		ByteBuffer buf = ByteBuffer.wrap(
+			(entry + '\n').getBytes(StandardCharsets.UTF_8));
+		while (buf.hasRemaining()) {
+			log.write(buf);
+		}
+		unsynced++;
+		if (unsynced >= SYNC_ENTRIES ||
+			System.nanoTime() - lastSync >= SYNC_NANOS) {
+			sync();
+		}
+	}
+
+	private void sync() throws IOException {
+		log.force(false);
+		unsynced = 0;
+		lastSync = System.nanoTime();
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		try {
+			if (unsynced > 0) {
+				sync();
+			}
+		} finally {
+			log.close();
+		}
+	}
+}
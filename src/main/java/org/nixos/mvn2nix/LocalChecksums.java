@@ -0,0 +1,143 @@
+/*
+ * Copyright (c) 2026 The mvn2nix-maven-plugin authors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.nixos.mvn2nix;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Computes SHA-1 checksums of files in the local repository.
+ */
+final class LocalChecksums
+{
+	private static final int HASH_LENGTH = 40;
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+	private LocalChecksums() {
+	}
+
+	/**
+	 * Returns the SHA-1 of <code>file</code>, taken from its
+	 * <code>.sha1</code> sidecar if there is a usable one and computed
+	 * from its contents otherwise.
+	 */
+	public static String sha1(File file) throws IOException {
+		String hash = readSidecar(new File(file.getPath() + ".sha1"));
+		return hash != null ? hash : digest(file);
+	}
+
+	/**
+	 * Reads a checksum file the same way the remote one would have
+	 * been read, or returns <code>null</code> if it is missing or
+	 * doesn't start with a SHA-1.
+	 */
+	static String readSidecar(File sidecar) throws IOException {
+		if (!sidecar.isFile() || sidecar.length() < HASH_LENGTH) {
+			return null;
+		}
+		ByteBuffer buf = ByteBuffer.allocate(HASH_LENGTH);
+		try (FileChannel ch = FileChannel.open(sidecar.toPath(),
+				StandardOpenOption.READ)) {
+			while (buf.hasRemaining()) {
+				if (ch.read(buf) < 0) {
+					break;
+				}
+			}
+		}
+		String hash = new String(buf.array(),
+			0,
+			buf.position(),
+			Charset.forName("UTF-8"));
+		if (hash.length() != HASH_LENGTH) {
+			return null;
+		}
+		for (int i = 0; i < HASH_LENGTH; i++) {
+			if (Character.digit(hash.charAt(i), 16) < 0) {
+				return null;
+			}
+		}
+		return hash;
+	}
+
+	/**
+	 * Streams <code>file</code> through a SHA-1 digest without holding
+	 * more than one buffer of it in memory.
+	 */
+	static String digest(File file) throws IOException {
+		return digest(file, "SHA-1")[0];
+	}
+
+	/**
+	 * Streams <code>file</code> once through a digest for each of
+	 * <code>algorithms</code>, returning the checksums in the same order.
+	 */
+	static String[] digest(File file, String... algorithms)
+		throws IOException {
+		MessageDigest[] mds = new MessageDigest[algorithms.length];
+		for (int i = 0; i < algorithms.length; i++) {
+			try {
+				mds[i] = MessageDigest.getInstance(algorithms[i]);
+			} catch (NoSuchAlgorithmException e) {
+				throw new IOException("Your jvm doesn't support " +
+					algorithms[i], e);
+			}
+		}
+		ByteBuffer buf = ByteBuffer.allocateDirect(BUFFER_SIZE);
+		try (FileChannel ch = FileChannel.open(file.toPath(),
+				StandardOpenOption.READ)) {
+			while (ch.read(buf) >= 0) {
+				buf.flip();
+				for (MessageDigest md : mds) {
+					buf.mark();
+					md.update(buf);
+					buf.reset();
+				}
+				buf.clear();
+			}
+		}
+		String[] res = new String[mds.length];
+		for (int i = 0; i < mds.length; i++) {
+			res[i] = toHex(mds[i].digest());
+		}
+		return res;
+	}
+
+	static String toHex(byte[] bytes) {
+		char[] res = new char[bytes.length * 2];
+		for (int i = 0; i < bytes.length; i++) {
+			res[2 * i] = HEX[(bytes[i] >> 4) & 0xf];
+			res[2 * i + 1] = HEX[bytes[i] & 0xf];
+		}
+		return new String(res);
+	}
+}
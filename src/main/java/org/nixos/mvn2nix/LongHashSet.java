@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2026 The mvn2nix-maven-plugin authors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.nixos.mvn2nix;
+
+/**
+ * A thread-safe set of <code>long</code>s using open addressing, so that
+ * each element costs a slot in a primitive array rather than a boxed key
+ * and a map entry.
+ */
+final class LongHashSet
+{
+	private static final long EMPTY = 0;
+
+	private long[] slots = new long[64];
+
+	/* EMPTY marks free slots, so whether it is a member is kept apart */
+	private boolean hasEmpty = false;
+
+	private int size = 0;
+
+	private static int hash(long key, int mask) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32)) & mask;
+	}
+
+	/**
+	 * Adds <code>key</code>, returning whether it wasn't already there.
+	 */
+	public synchronized boolean add(long key) {
+		if (key == EMPTY) {
+			if (hasEmpty) {
+				return false;
+			}
+			hasEmpty = true;
+			size++;
+			return true;
+		}
+		if (!insert(slots, key)) {
+			return false;
+		}
+		size++;
+		if (size * 2 > slots.length) {
+			long[] bigger = new long[slots.length * 2];
+			for (long k : slots) {
+				if (k != EMPTY) {
+					insert(bigger, k);
+				}
+			}
+			slots = bigger;
+		}
+		return true;
+	}
+
+	public synchronized boolean contains(long key) {
+		if (key == EMPTY) {
+			return hasEmpty;
+		}
+		int mask = slots.length - 1;
+		for (int i = hash(key, mask); ; i = (i + 1) & mask) {
+			if (slots[i] == key) {
+				return true;
+			}
+			if (slots[i] == EMPTY) {
+				return false;
+			}
+		}
+	}
+
+	public synchronized int size() {
+		return size;
+	}
+
+	private static boolean insert(long[] table, long key) {
+		int mask = table.length - 1;
+		for (int i = hash(key, mask); ; i = (i + 1) & mask) {
+			if (table[i] == key) {
+				return false;
+			}
+			if (table[i] == EMPTY) {
+				table[i] = key;
+				return true;
+			}
+		}
+	}
+}
@@ -0,0 +1,360 @@
+/*
+ * Copyright (c) 2026 The mvn2nix-maven-plugin authors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.nixos.mvn2nix;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.json.Json;
+import javax.json.stream.JsonGenerator;
+
+import org.eclipse.aether.transfer.TransferCancelledException;
+import org.eclipse.aether.transfer.TransferEvent;
+import org.eclipse.aether.transfer.TransferListener;
+
+/**
+ * Timings and counters for one resolution.
+ *
+ * Phases are timed per call, so their totals add up time spent on all
+ * threads and can exceed the wall-clock time of the run. Requests to each
+ * repository, whether made by Aether or directly through a transporter,
+ * are recorded per repository URL in a histogram of power-of-two
+ * millisecond buckets.
+ *
+ * All methods are safe to call from any thread.
+ */
+final class Metrics
+{
+	/* Bucket i counts durations below 2^i ms; the last one takes the
+	 * rest.
+	 */
+	private static final int BUCKETS = 21;
+
+	/** Count, total, maximum and histogram of a set of durations */
+	static final class Timer
+	{
+		private final AtomicLong count = new AtomicLong();
+
+		private final AtomicLong total = new AtomicLong();
+
+		private final AtomicLong max = new AtomicLong();
+
+		private final AtomicLongArray buckets =
+			new AtomicLongArray(BUCKETS);
+
+		public void record(long nanos) {
+			count.incrementAndGet();
+			total.addAndGet(nanos);
+			long old;
+			while ((old = max.get()) < nanos &&
+				!max.compareAndSet(old, nanos)) {
+			}
+			long millis = TimeUnit.NANOSECONDS.toMillis(nanos);
+			int bucket = 64 - Long.numberOfLeadingZeros(millis);
+			buckets.incrementAndGet(Math.min(bucket, BUCKETS - 1));
+		}
+
+		public long getCount() {
+			return count.get();
+		}
+
+		public long getTotalMillis() {
+			return TimeUnit.NANOSECONDS.toMillis(total.get());
+		}
+
+		/**
+		 * The upper bound, in ms, of the bucket holding the
+		 * <code>fraction</code> quantile.
+		 */
+		public long quantileBelow(double fraction) {
+			long target = (long) Math.ceil(count.get() * fraction);
+			long seen = 0;
+			for (int i = 0; i < BUCKETS - 1; i++) {
+				seen += buckets.get(i);
+				if (seen >= target) {
+					return 1L << i;
+				}
+			}
+			return TimeUnit.NANOSECONDS.toMillis(max.get());
+		}
+
+		void write(JsonGenerator gen) {
+			gen.write("count", count.get());
+			gen.write("total-ms", getTotalMillis());
+			gen.write("max-ms",
+				TimeUnit.NANOSECONDS.toMillis(max.get()));
+			gen.writeStartArray("histogram");
+			for (int i = 0; i < BUCKETS; i++) {
+				long n = buckets.get(i);
+				if (n == 0) {
+					continue;
+				}
+				gen.writeStartObject();
+				if (i < BUCKETS - 1) {
+					gen.write("below-ms", 1L << i);
+				}
+				gen.write("count", n);
+				gen.writeEnd();
+			}
+			gen.writeEnd();
+		}
+	}
+
+	/** What was asked of one repository */
+	static final class Repository
+	{
+		public final Timer latency = new Timer();
+
+		public final AtomicLong bytes = new AtomicLong();
+
+		public final AtomicLong failures = new AtomicLong();
+	}
+
+	private final long started = System.nanoTime();
+
+	private final ConcurrentMap<String, Timer> phases =
+		new ConcurrentHashMap<String, Timer>();
+
+	private final ConcurrentMap<String, Repository> repositories =
+		new ConcurrentHashMap<String, Repository>();
+
+	private final Map<String, Long> counts =
+		new LinkedHashMap<String, Long>();
+
+	private static <V> V getOrCreate(ConcurrentMap<String, V> map,
+		String key, V fresh) {
+		V old = map.putIfAbsent(key, fresh);
+		return old == null ? fresh : old;
+	}
+
+	/** A start time to pass to {@link #phase} or {@link #request} */
+	public long start() {
+		return System.nanoTime();
+	}
+
+	/** Records a call to <code>phase</code> that began at start */
+	public void phase(String phase, long start) {
+		long nanos = System.nanoTime() - start;
+		Timer timer = phases.get(phase);
+		if (timer == null) {
+			timer = getOrCreate(phases, phase, new Timer());
+		}
+		timer.record(nanos);
+	}
+
+	/** Records a request to the repository at url that began at start */
+	public void request(String url, long start, long bytes,
+		boolean failed) {
+		record(url, System.nanoTime() - start, bytes, failed);
+	}
+
+	private void record(String url, long nanos, long bytes,
+		boolean failed) {
+		Repository repo = repositories.get(url);
+		if (repo == null) {
+			repo = getOrCreate(repositories, url, new Repository());
+		}
+		repo.latency.record(nanos);
+		repo.bytes.addAndGet(bytes);
+		if (failed) {
+			repo.failures.incrementAndGet();
+		}
+	}
+
+	/**
+	 * The upper bound, in ms, of the bucket holding the
+	 * <code>fraction</code> quantile of the latencies of the repository
+	 * at url, or -1 if it has seen fewer than <code>minSamples</code>
+	 * requests.
+	 */
+	public long latencyQuantile(String url, double fraction,
+		long minSamples) {
+		Repository repo = repositories.get(url);
+		if (repo == null || repo.latency.getCount() < minSamples) {
+			return -1;
+		}
+		return repo.latency.quantileBelow(fraction);
+	}
+
+	/** Records a final count, reported in the order they are set */
+	public synchronized void count(String name, long value) {
+		counts.put(name, value);
+	}
+
+	/**
+	 * A listener recording every transfer Aether makes, passing all
+	 * events on to <code>next</code> if it isn't null.
+	 */
+	public TransferListener listener(final TransferListener next) {
+		return new TransferListener() {
+			@Override
+			public void transferInitiated(TransferEvent event)
+				throws TransferCancelledException {
+				if (next != null) {
+					next.transferInitiated(event);
+				}
+			}
+
+			@Override
+			public void transferStarted(TransferEvent event)
+				throws TransferCancelledException {
+				if (next != null) {
+					next.transferStarted(event);
+				}
+			}
+
+			@Override
+			public void transferProgressed(TransferEvent event)
+				throws TransferCancelledException {
+				if (next != null) {
+					next.transferProgressed(event);
+				}
+			}
+
+			@Override
+			public void transferCorrupted(TransferEvent event)
+				throws TransferCancelledException {
+				if (next != null) {
+					next.transferCorrupted(event);
+				}
+			}
+
+			@Override
+			public void transferSucceeded(TransferEvent event) {
+				record(event, false);
+				if (next != null) {
+					next.transferSucceeded(event);
+				}
+			}
+
+			@Override
+			public void transferFailed(TransferEvent event) {
+				record(event, true);
+				if (next != null) {
+					next.transferFailed(event);
+				}
+			}
+
+			private void record(TransferEvent event, boolean failed) {
+				long millis = System.currentTimeMillis() -
+					event.getResource().getTransferStartTime();
+				Metrics.this.record(
+					event.getResource().getRepositoryUrl(),
+					TimeUnit.MILLISECONDS.toNanos(
+						Math.max(0, millis)),
+					event.getTransferredBytes(),
+					failed);
+			}
+		};
+	}
+
+	private long totalBytes() {
+		long bytes = 0;
+		for (Repository repo : repositories.values()) {
+			bytes += repo.bytes.get();
+		}
+		return bytes;
+	}
+
+	/** A few lines summing up the run, for the log */
+	public synchronized String[] summary() {
+		StringBuilder timing = new StringBuilder("Timing: ");
+		timing.append(TimeUnit.NANOSECONDS.toMillis(
+			System.nanoTime() - started)).append(" ms wall");
+		for (Map.Entry<String, Timer> e :
+				new TreeMap<String, Timer>(phases).entrySet()) {
+			timing.append(", ").append(e.getKey()).append(' ')
+				.append(e.getValue().getCount()).append("x ")
+				.append(e.getValue().getTotalMillis())
+				.append(" ms");
+		}
+		StringBuilder network = new StringBuilder("Network: ");
+		network.append(totalBytes()).append(" bytes");
+		for (Map.Entry<String, Repository> e :
+				new TreeMap<String, Repository>(repositories)
+					.entrySet()) {
+			Repository repo = e.getValue();
+			network.append(", ").append(e.getKey()).append(' ')
+				.append(repo.latency.getCount())
+				.append(" requests (p50 < ")
+				.append(repo.latency.quantileBelow(0.5))
+				.append(" ms, p99 < ")
+				.append(repo.latency.quantileBelow(0.99))
+				.append(" ms, ")
+				.append(repo.failures.get())
+				.append(" failed)");
+		}
+		return new String[] { timing.toString(), network.toString() };
+	}
+
+	/** Writes everything recorded to <code>file</code> as JSON */
+	public synchronized void write(File file) throws IOException {
+		try (FileOutputStream out = new FileOutputStream(file);
+			JsonGenerator gen = Json.createGenerator(out)) {
+			gen.writeStartObject();
+			gen.write("wall-ms", TimeUnit.NANOSECONDS.toMillis(
+				System.nanoTime() - started));
+			gen.write("bytes", totalBytes());
+
+			gen.writeStartObject("counts");
+			for (Map.Entry<String, Long> e : counts.entrySet()) {
+				gen.write(e.getKey(), e.getValue());
+			}
+			gen.writeEnd();
+
+			gen.writeStartObject("phases");
+			for (Map.Entry<String, Timer> e :
+					new TreeMap<String, Timer>(phases)
+						.entrySet()) {
+				gen.writeStartObject(e.getKey());
+				e.getValue().write(gen);
+				gen.writeEnd();
+			}
+			gen.writeEnd();
+
+			gen.writeStartObject("repositories");
+			for (Map.Entry<String, Repository> e :
+					new TreeMap<String, Repository>(
+						repositories).entrySet()) {
+				Repository repo = e.getValue();
+				gen.writeStartObject(e.getKey());
+				gen.write("bytes", repo.bytes.get());
+				gen.write("failures", repo.failures.get());
+				repo.latency.write(gen);
+				gen.writeEnd();
+			}
+			gen.writeEnd();
+
+			gen.writeEnd();
+		}
+	}
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright (c) 2026 The mvn2nix-maven-plugin authors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.nixos.mvn2nix;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A directory laid out like a remote repository, holding copies of the
+ * files the output refers to along with their <code>.sha1</code>
+ * checksums, so that they needn't be downloaded again from the URLs.
+ *
+ * Files only appear under their final name once complete and checked
+ * against their SHA-1: they are written to a temporary file next to it
+ * and then renamed into place.
+ */
+final class Mirror
+{
+	private final File dir;
+
+	private final AtomicLong downloaded = new AtomicLong();
+
+	private final AtomicLong copied = new AtomicLong();
+
+	private final AtomicLong present = new AtomicLong();
+
+	Mirror(File dir) {
+		this.dir = dir;
+	}
+
+	/**
+	 * Where the file at <code>location</code> in a repository goes in
+	 * the mirror.
+	 */
+	public File file(URI location) throws IOException {
+		String path = location.getPath();
+		if (location.isAbsolute() || path.startsWith("/") ||
+			path.equals("..") || path.startsWith("../") ||
+			path.contains("/../") || path.endsWith("/..")) {
+			throw new IOException("Not a repository path: " +
+				location);
+		}
+		return new File(dir, path);
+	}
+
+	/**
+	 * Whether the mirror already has the file at <code>location</code>.
+	 * Unless the file can't change, its contents must match
+	 * <code>sha1</code>.
+	 */
+	public boolean contains(URI location, String sha1, boolean immutable)
+		throws IOException {
+		File f = file(location);
+		if (!f.isFile()) {
+			return false;
+		}
+		if (!immutable &&
+			!LocalChecksums.digest(f).equalsIgnoreCase(sha1)) {
+			return false;
+		}
+		present.incrementAndGet();
+		return true;
+	}
+
+	/**
+	 * A new temporary file to download <code>location</code> into,
+	 * to be passed to {@link #commit} or deleted.
+	 */
+	public File newTempFile(URI location) throws IOException {
+		File f = file(location);
+		File parent = f.getParentFile();
+		Files.createDirectories(parent.toPath());
+		return File.createTempFile(f.getName() + ".", ".part", parent);
+	}
+
+	/**
+	 * Moves the downloaded <code>tmp</code> to <code>location</code>,
+	 * provided its contents match <code>sha1</code>. <code>tmp</code> is
+	 * gone afterwards either way.
+	 */
+	public File commit(File tmp, URI location, String sha1)
+		throws IOException {
+		try {
+			File f = install(tmp, location, sha1);
+			downloaded.incrementAndGet();
+			return f;
+		} finally {
+			Files.deleteIfExists(tmp.toPath());
+		}
+	}
+
+	/**
+	 * Copies <code>source</code>, e.g. from the local repository, to
+	 * <code>location</code>, provided its contents match
+	 * <code>sha1</code>. The bytes are transferred between the files by
+	 * the operating system without passing through the JVM's heap.
+	 */
+	public File copy(File source, URI location, String sha1)
+		throws IOException {
+		File tmp = newTempFile(location);
+		try {
+			try (FileChannel in = FileChannel.open(source.toPath(),
+					StandardOpenOption.READ);
+				FileChannel out = FileChannel.open(tmp.toPath(),
+					StandardOpenOption.WRITE)) {
+				long size = in.size();
+				long pos = 0;
+				while (pos < size) {
+					pos += in.transferTo(pos, size - pos, out);
+				}
+			}
+			File f = install(tmp, location, sha1);
+			copied.incrementAndGet();
+			return f;
+		} finally {
+			Files.deleteIfExists(tmp.toPath());
+		}
+	}
+
+	private File install(File tmp, URI location, String sha1)
+		throws IOException {
+		String actual = LocalChecksums.digest(tmp);
+		if (!actual.equalsIgnoreCase(sha1)) {
+			throw new IOException("SHA-1 mismatch for " + location +
+				": expected " + sha1 + ", got " + actual);
+		}
+		File f = file(location);
+		File sidecar = new File(f.getPath() + ".sha1");
+		File sidecarTmp = File.createTempFile(sidecar.getName() + ".",
+			".part",
+			f.getParentFile());
+		try {
+			Files.write(sidecarTmp.toPath(),
+				sha1.getBytes(StandardCharsets.UTF_8));
+			Files.move(tmp.toPath(),
+				f.toPath(),
+				StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+			Files.move(sidecarTmp.toPath(),
+				sidecar.toPath(),
+				StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(sidecarTmp.toPath());
+		}
+		return f;
+	}
+
+	/** Number of files downloaded into the mirror */
+	public long getDownloaded() {
+		return downloaded.get();
+	}
+
+	/** Number of files copied into it from elsewhere on disk */
+	public long getCopied() {
+		return copied.get();
+	}
+
+	/** Number of files it already had */
+	public long getPresent() {
+		return present.get();
+	}
+}
@@ -24,20 +24,41 @@
 package org.nixos.mvn2nix;
 
 import java.util.List;
+import java.util.Map;
 import java.util.ArrayList;
 import java.util.Set;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Collection;
-import java.util.Iterator;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.Semaphore;
+import java.io.BufferedReader;
+import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.io.FileOutputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
 import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
 import java.net.URI;
 import java.net.URISyntaxException;
 
 import javax.json.Json;
+import javax.json.JsonObject;
 import javax.json.stream.JsonGenerator;
 
+import org.apache.maven.execution.MavenExecutionRequest;
+import org.apache.maven.execution.MavenSession;
 import org.apache.maven.plugin.AbstractMojo;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugins.annotations.Mojo;
@@ -47,9 +68,12 @@ import org.apache.maven.project.MavenProject;
 import org.apache.maven.repository.internal.ArtifactDescriptorReaderDelegate;
 import org.apache.maven.model.Plugin;
 
+import org.eclipse.aether.ConfigurationProperties;
 import org.eclipse.aether.RepositorySystem;
+import org.eclipse.aether.SessionData;
+import org.eclipse.aether.DefaultRepositoryCache;
 import org.eclipse.aether.DefaultRepositorySystemSession;
-import org.eclipse.aether.resolution.ArtifactDescriptorRequest;
+import org.eclipse.aether.DefaultSessionData;
 import org.eclipse.aether.resolution.ArtifactDescriptorResult;
 import org.eclipse.aether.resolution.ArtifactDescriptorException;
 import org.eclipse.aether.graph.Dependency;
@@ -61,14 +85,15 @@ import org.eclipse.aether.metadata.DefaultMetadata;
 import org.eclipse.aether.resolution.VersionResult;
 import org.eclipse.aether.resolution.VersionRequest;
 import org.eclipse.aether.resolution.VersionResolutionException;
+import org.eclipse.aether.repository.LocalArtifactRequest;
+import org.eclipse.aether.repository.LocalArtifactResult;
 import org.eclipse.aether.repository.RemoteRepository;
 import org.eclipse.aether.spi.connector.layout.RepositoryLayoutProvider;
 import org.eclipse.aether.spi.connector.layout.RepositoryLayout;
 import org.eclipse.aether.spi.connector.transport.GetTask;
 import org.eclipse.aether.spi.connector.transport.Transporter;
 import org.eclipse.aether.spi.connector.transport.TransporterProvider;
-import org.eclipse.aether.transfer.NoRepositoryLayoutException;
-import org.eclipse.aether.transfer.NoTransporterException;
+import org.eclipse.aether.transfer.TransferListener;
 
 /**
  * A Mojo to generate JSON for use with nix's Maven repository generation
@@ -97,10 +122,104 @@ public class Mvn2NixMojo extends AbstractMojo
 	@Parameter(property="reactorProjects", readonly=true)
 	private List reactorProjects;
 
+	@Parameter(property="session", readonly=true)
+	private MavenSession mavenSession;
+
 	@Parameter(property="mvn2nixOutputFile",
 		defaultValue="project-info.json")
 	private String outputFile;
 
+	@Parameter(property="mvn2nixThreads", defaultValue="1")
+	private int threads;
+
+	@Parameter(property="mvn2nixChecksumThreads", defaultValue="1")
+	private int checksumThreads;
+
+	@Parameter(property="mvn2nixLocalChecksums", defaultValue="false")
+	private boolean localChecksums;
+
+	@Parameter(property="mvn2nixChecksumCache", defaultValue="true")
+	private boolean useChecksumCache;
+
+	@Parameter(property="mvn2nixSortOutput", defaultValue="false")
+	private boolean sortOutput;
+
+	@Parameter(property="mvn2nixShards", defaultValue="0")
+	private int shardCount;
+
+	@Parameter(property="mvn2nixIncremental", defaultValue="false")
+	private boolean incremental;
+
+	@Parameter(property="mvn2nixJournal", defaultValue="false")
+	private boolean useJournal;
+
+	@Parameter(property="mvn2nixCrossBuildCache", defaultValue="false")
+	private boolean crossBuildCache;
+
+	@Parameter(property="mvn2nixCrossBuildCacheSize",
+		defaultValue="100000")
+	private int crossBuildCacheSize;
+
+	@Parameter(property="mvn2nixCacheDirectory",
+		defaultValue="${user.home}/.m2/mvn2nix-cache")
+	private File cacheDirectory;
+
+	@Parameter(property="mvn2nixRouting", defaultValue="false")
+	private boolean routing;
+
+	@Parameter(property="mvn2nixPersistRoutes", defaultValue="false")
+	private boolean persistRoutes;
+
+	@Parameter(property="mvn2nixLightweightPoms", defaultValue="true")
+	private boolean lightweightPoms;
+
+	@Parameter(property="mvn2nixMetrics", defaultValue="false")
+	private boolean writeMetrics;
+
+	@Parameter(property="mvn2nixSha256", defaultValue="false")
+	private boolean sha256;
+
+	@Parameter(property="mvn2nixDownloads", defaultValue="4")
+	private int maxDownloads;
+
+	@Parameter(property="mvn2nixMirror")
+	private File mirrorDirectory;
+
+	@Parameter(property="mvn2nixRequestTimeout", defaultValue="0")
+	private int requestTimeout;
+
+	@Parameter(property="mvn2nixRetries", defaultValue="0")
+	private int retries;
+
+	@Parameter(property="mvn2nixRetryBackoff", defaultValue="500")
+	private long retryBackoff;
+
+	@Parameter(property="mvn2nixHedgeMirrors")
+	private String hedgeMirrors;
+
+	@Parameter(property="mvn2nixHedgePercentile", defaultValue="95")
+	private int hedgePercentile;
+
+	@Parameter(property="mvn2nixHedgeMinDelay", defaultValue="50")
+	private long hedgeMinDelay;
+
+	@Parameter(property="mvn2nixHostConcurrency", defaultValue="0")
+	private int hostConcurrency;
+
+	@Parameter(property="mvn2nixWorkspace", defaultValue="false")
+	private boolean workspaceMode;
+
+	@Parameter(property="mvn2nixServe", defaultValue="0")
+	private int servePort;
+
+	private Metrics metrics;
+
+	/* Null unless mvn2nixHostConcurrency is set */
+	private ConcurrencyLimiter limiter;
+
+	/* The limit of each host until it has shown what it can sustain */
+	private static final int INITIAL_HOST_CONCURRENCY = 4;
+
 	private Exclusion mavenExclusionToExclusion(
 			org.apache.maven.model.Exclusion excl) {
 		return new Exclusion(excl.getGroupId(),
@@ -136,7 +255,7 @@ public class Mvn2NixMojo extends AbstractMojo
 			art.getVersion());
 	}
 
-	private void emitArtifactBody(Artifact art, Collection<Dependency> deps,
+	void emitArtifactBody(Artifact art, Collection<Dependency> deps,
 		JsonGenerator gen) {
 		gen.write("artifactId", art.getArtifactId());
 		gen.write("groupId", art.getGroupId());
@@ -145,6 +264,9 @@ public class Mvn2NixMojo extends AbstractMojo
 		gen.write("extension", art.getExtension());
 
 		if (deps != null) {
+			if (sortOutput) {
+				deps = EntryWriter.sortDependencies(deps);
+			}
 			gen.writeStartArray("dependencies");
 			for (Dependency dep : deps) {
 				gen.writeStartObject();
@@ -154,8 +276,12 @@ public class Mvn2NixMojo extends AbstractMojo
 				gen.write("scope", dep.getScope());
 				gen.write("optional", dep.isOptional());
 
+				Collection<Exclusion> excls = dep.getExclusions();
+				if (sortOutput) {
+					excls = EntryWriter.sortExclusions(excls);
+				}
 				gen.writeStartArray("exclusions");
-				for (Exclusion excl : dep.getExclusions()) {
+				for (Exclusion excl : excls) {
 					gen.writeStartObject();
 					gen.write("artifactId",
 						excl.getArtifactId());
@@ -179,13 +305,511 @@ public class Mvn2NixMojo extends AbstractMojo
 	{
 		public String url;
 		public String hash;
+		/* Only when asked for */
+		public String sha256;
+	}
+
+	/* What walks share: connections, caches and everything else that
+	 * doesn't depend on the output. In workspace mode the modules of a
+	 * build share one, otherwise each walk has its own.
+	 */
+	private final class Workspace
+	{
+		public final boolean shared;
+		public final TransporterPool connections;
+		/* The checksum caches may be null */
+		public final ChecksumCache sha1Cache;
+		public final ChecksumCache sha256Cache;
+		/* May be null */
+		public final Mirror mirror;
+		public final Semaphore downloads;
+		public final HedgedFetcher fetcher;
+		public final Map<String, RemoteRepository> hedges;
+		/* May be null unless shared */
+		public final BoundedCache<String, String> checksums;
+		/* May be null */
+		public final CrossBuildCache crossBuild;
+		/* May be null */
+		public final RepositoryRouter router;
+		public final ConcurrentMap<String,
+			FutureTask<ArtifactDownloadInfo>> metadata =
+			new ConcurrentHashMap<String,
+				FutureTask<ArtifactDownloadInfo>>();
+		/* Artifacts looked at, if shared */
+		public final ConcurrentMap<String,
+			FutureTask<ArtifactDownloadInfo>> artifacts =
+			new ConcurrentHashMap<String,
+				FutureTask<ArtifactDownloadInfo>>();
+		/* Modules with the same repositories share these */
+		private final ConcurrentMap<String, DescriptorCache> descriptors =
+			new ConcurrentHashMap<String, DescriptorCache>();
+		private final ConcurrentMap<String, SnapshotMetadata> snapshots =
+			new ConcurrentHashMap<String, SnapshotMetadata>();
+
+		Workspace(boolean shared) throws MojoExecutionException {
+			this.shared = shared;
+			crossBuild = crossBuildCache ?
+				CrossBuildCache.get(crossBuildCacheSize) : null;
+			if (crossBuild != null) {
+				checksums = crossBuild.checksums;
+			} else if (shared) {
+				checksums = new BoundedCache<String, String>(
+					crossBuildCacheSize);
+			} else {
+				checksums = null;
+			}
+			router = routing ? openRouter() : null;
+			connections = new TransporterPool(repoSession,
+				layoutProvider,
+				transporterProvider,
+				limiter,
+				metrics);
+			sha1Cache = openChecksumCache();
+			sha256Cache = sha256 ? openSha256Cache() : null;
+			mirror = mirrorDirectory != null ?
+				new Mirror(mirrorDirectory) : null;
+			downloads = new Semaphore(Math.max(1, maxDownloads));
+			hedges = hedgeRepositories();
+			fetcher = new HedgedFetcher(retries,
+				retryBackoff,
+				hedgePercentile / 100.0,
+				hedgeMinDelay,
+				metrics);
+		}
+
+		private String key(List<RemoteRepository> repos) {
+			StringBuilder key = new StringBuilder();
+			for (RemoteRepository repo : repos) {
+				key.append(repo.getId()).append('=')
+					.append(repo.getUrl()).append(',');
+			}
+			return key.toString();
+		}
+
+		public DescriptorCache descriptors(List<RemoteRepository> repos) {
+			DescriptorCache cache = shared ?
+				descriptors.get(key(repos)) : null;
+			if (cache != null) {
+				return cache;
+			}
+			cache = new DescriptorCache(repoSystem,
+				repoSession,
+				repos,
+				crossBuild != null ? crossBuild.descriptors : null,
+				router,
+				lightweightPoms,
+				retries,
+				retryBackoff,
+				metrics);
+			if (shared) {
+				DescriptorCache other =
+					descriptors.putIfAbsent(key(repos), cache);
+				if (other != null) {
+					return other;
+				}
+			}
+			return cache;
+		}
+
+		public SnapshotMetadata snapshots(List<RemoteRepository> repos) {
+			SnapshotMetadata res = shared ?
+				snapshots.get(key(repos)) : null;
+			if (res != null) {
+				return res;
+			}
+			res = new SnapshotMetadata(repoSystem,
+				repoSession,
+				repos,
+				retries,
+				retryBackoff);
+			if (shared) {
+				SnapshotMetadata other =
+					snapshots.putIfAbsent(key(repos), res);
+				if (other != null) {
+					return other;
+				}
+			}
+			return res;
+		}
+
+		/* Forgets everything learnt about snapshots, keeping only what
+		 * can't change.
+		 */
+		public void forgetWalks() {
+			descriptors.clear();
+			snapshots.clear();
+			metadata.clear();
+			artifacts.clear();
+		}
+
+		public void close() {
+			fetcher.close();
+			connections.close();
+			if (sha1Cache != null) {
+				try {
+					sha1Cache.close();
+				} catch (IOException e) {
+					getLog().warn("Closing checksum cache",
+						e);
+				}
+			}
+			if (sha256Cache != null) {
+				try {
+					sha256Cache.close();
+				} catch (IOException e) {
+					getLog().warn("Closing SHA-256 cache",
+						e);
+				}
+			}
+		}
+	}
+
+	/* The state of one walk over the dependency graph */
+	private class Resolution
+	{
+		public List<RemoteRepository> repos;
+		/* Closed with the resolution unless shared */
+		public Workspace workspace;
+		public DescriptorCache descriptors;
+		public TransporterPool connections;
+		/* The checksum caches may be null */
+		public ChecksumCache sha1Cache;
+		public ChecksumCache sha256Cache;
+		/* May be null */
+		public Mirror mirror;
+		/* Limits the artifacts downloaded at once to hash or mirror
+		 * them.
+		 */
+		public Semaphore downloads;
+		public HedgedFetcher fetcher;
+		/* Equivalent mirrors to hedge checksum fetches against, by
+		 * the id of the repository they mirror.
+		 */
+		public Map<String, RemoteRepository> hedges;
+		public BoundedCache<String, String> sharedChecksums;
+		public CrossBuildCache shared;
+		/* May be null */
+		public RepositoryRouter router;
+		public SnapshotMetadata snapshots;
+		/* Shared by the entries of one snapshot in one repository */
+		public ConcurrentMap<String, FutureTask<ArtifactDownloadInfo>>
+			metadata;
+		public PreviousOutput previous;
+		public Set<Artifact> printed;
+		public EntryWriter entries;
+		/* Null unless the output is sharded */
+		public ShardedOutput shards;
+		/* May be null */
+		public Journal journal;
+		public DependencyWalker walker;
+
+		/* Entries are spooled until finish if out is null and the
+		 * output isn't sharded.
+		 */
+		Resolution(PreviousOutput previous, JsonGenerator out)
+			throws MojoExecutionException {
+			this(previous, out, null);
+		}
+
+		/* Uses the connections and caches of workspace, unless it is
+		 * null.
+		 */
+		Resolution(PreviousOutput previous,
+			JsonGenerator out,
+			Workspace workspace) throws MojoExecutionException {
+			this(previous, out, workspace, repositories());
+		}
+
+		Resolution(PreviousOutput previous,
+			JsonGenerator out,
+			Workspace workspace,
+			List<RemoteRepository> repositories)
+			throws MojoExecutionException {
+			this.workspace = workspace != null ? workspace :
+				new Workspace(false);
+			/* Later modules may add repositories while the walk
+			 * is running.
+			 */
+			repos = new CopyOnWriteArrayList<RemoteRepository>(
+				repositories);
+			shared = this.workspace.crossBuild;
+			router = this.workspace.router;
+			descriptors = this.workspace.descriptors(repos);
+			snapshots = this.workspace.snapshots(repos);
+			metadata = this.workspace.metadata;
+			connections = this.workspace.connections;
+			sha1Cache = this.workspace.sha1Cache;
+			sha256Cache = this.workspace.sha256Cache;
+			mirror = this.workspace.mirror;
+			downloads = this.workspace.downloads;
+			hedges = this.workspace.hedges;
+			fetcher = this.workspace.fetcher;
+			sharedChecksums = this.workspace.checksums;
+			this.previous = previous;
+			printed = Collections.newSetFromMap(
+				new ConcurrentHashMap<Artifact, Boolean>());
+			/* Entries are ordered by coordinates, as the order of
+			 * visits depends on the number of threads and on the
+			 * timing of reactor modules.
+			 */
+			if (shardCount > 0) {
+				try {
+					shards = new ShardedOutput(
+						new File(outputFile),
+						shardCount);
+				} catch (IOException e) {
+					throw new MojoExecutionException(
+						"Creating shards of " +
+							outputFile,
+						e);
+				}
+				entries = EntryWriter.sharded(shards,
+					sortOutput,
+					true);
+			} else {
+				entries = new EntryWriter(out,
+					sortOutput,
+					true);
+			}
+			if (useJournal) {
+				File file = Journal.file(new File(outputFile));
+				try {
+					journal = new Journal(file);
+				} catch (IOException e) {
+					throw new MojoExecutionException(
+						"Opening " + file,
+						e);
+				}
+				entries.journalTo(journal);
+			}
+
+			final Resolution r = this;
+			walker = new DependencyWalker(threads,
+				checksumThreads,
+				new DependencyWalker.Visitor() {
+					@Override
+					public void visit(Dependency dep,
+						DependencyWalker walker)
+						throws MojoExecutionException {
+						handleDependency(dep, r, walker);
+					}
+				});
+		}
+
+		public void addRepositories(List<RemoteRepository> more) {
+			for (RemoteRepository repo : more) {
+				if (!repos.contains(repo)) {
+					repos.add(repo);
+				}
+			}
+		}
+
+		public void walk(Collection<Dependency> roots) {
+			prefetchSnapshots(roots, this);
+			walker.addAll(roots);
+		}
+
+		/* Waits for the walk and writes all entries to gen */
+		public void finish(JsonGenerator gen)
+			throws MojoExecutionException {
+			walker.await();
+			long start = metrics.start();
+			try {
+				entries.finish(gen);
+				if (shards != null) {
+					shards.finish();
+				}
+			} catch (IOException e) {
+				throw new MojoExecutionException(
+					"Writing " + outputFile,
+					e);
+			}
+			metrics.phase("emit", start);
+
+			if (previous != null) {
+				getLog().info("Reused " + previous.getReused() +
+					" of " + previous.size() +
+					" entries from " + (useJournal ?
+						"earlier runs" : outputFile));
+			}
+			getLog().info("Walk: " + walker.getVisits() +
+				" visits, " + walker.getDuplicates() +
+				" duplicates, " + walker.getSubsumed() +
+				" skipped as subsumed");
+			getLog().info("Descriptors: " +
+				(descriptors.getMisses() -
+					descriptors.getSharedHits()) +
+				" read, " +
+				(descriptors.getHits() +
+					descriptors.getSharedHits()) +
+				" cached, " + descriptors.getLightweight() +
+				" without building a model");
+			getLog().info("Transporters: " +
+				connections.getCreated() + " created, " +
+				connections.getReused() + " reused");
+			if (mirror != null) {
+				getLog().info("Mirror: " +
+					mirror.getDownloaded() + " downloaded, " +
+					mirror.getCopied() + " copied, " +
+					mirror.getPresent() + " present in " +
+					mirrorDirectory);
+			}
+			if (fetcher.getRetried() +
+				descriptors.getRetried() +
+				snapshots.getRetried() > 0 ||
+				!hedges.isEmpty()) {
+				getLog().info("Requests: " +
+					fetcher.getRetried() + " checksum, " +
+					descriptors.getRetried() + " descriptor and " +
+					snapshots.getRetried() +
+					" metadata retries, " +
+					fetcher.getHedged() + " hedged, " +
+					fetcher.getHedgeWins() +
+					" answered first by a mirror");
+			}
+			if (limiter != null) {
+				StringBuilder hosts = new StringBuilder();
+				for (Map.Entry<String, long[]> e :
+					limiter.getLimits().entrySet()) {
+					hosts.append(hosts.length() == 0 ?
+						"Hosts: " : ", ")
+						.append(e.getKey())
+						.append(" limit ")
+						.append(e.getValue()[0])
+						.append(" (peak ")
+						.append(e.getValue()[1])
+						.append(", ")
+						.append(e.getValue()[2])
+						.append(" overloaded)");
+				}
+				if (hosts.length() > 0) {
+					getLog().info(hosts.toString());
+				}
+			}
+			if (snapshots.getRequested() > 0) {
+				getLog().info("Snapshots: " +
+					snapshots.getRequested() +
+					" metadata resolved in " +
+					snapshots.getBatches() + " batches");
+			}
+			if (router != null) {
+				getLog().info("Routing: " + router.getRouted() +
+					" routed, " + router.getSkipped() +
+					" known misses skipped, " +
+					descriptors.getFallbacks() +
+					" fallbacks, " + router.size() +
+					" routes");
+				if (persistRoutes) {
+					try {
+						router.save(cacheDirectory);
+					} catch (IOException e) {
+						getLog().warn("Saving routes to " +
+							cacheDirectory, e);
+					}
+				}
+			}
+			if (shared != null) {
+				getLog().info("Cross-build cache: " +
+					shared.descriptors.size() +
+					" descriptors, " +
+					shared.checksums.size() + " checksums");
+			}
+			for (String line : metrics.summary()) {
+				getLog().info(line);
+			}
+
+			if (writeMetrics) {
+				writeMetrics();
+			}
+		}
+
+		private void writeMetrics() {
+			metrics.count("edges", walker.getVisits() +
+				walker.getDuplicates() + walker.getSubsumed());
+			metrics.count("visits", walker.getVisits());
+			metrics.count("duplicates", walker.getDuplicates());
+			metrics.count("subsumed", walker.getSubsumed());
+			metrics.count("entries", printed.size());
+			if (previous != null) {
+				metrics.count("reused", previous.getReused());
+			}
+			metrics.count("descriptors-read",
+				descriptors.getMisses() -
+					descriptors.getSharedHits());
+			metrics.count("descriptors-cached",
+				descriptors.getHits() +
+					descriptors.getSharedHits());
+			metrics.count("descriptors-lightweight",
+				descriptors.getLightweight());
+			metrics.count("transporters", connections.getCreated());
+			metrics.count("snapshot-metadata",
+				snapshots.getRequested());
+			metrics.count("snapshot-batches", snapshots.getBatches());
+			metrics.count("retries", fetcher.getRetried() +
+				descriptors.getRetried() +
+				snapshots.getRetried());
+			metrics.count("hedged", fetcher.getHedged());
+			metrics.count("hedge-wins", fetcher.getHedgeWins());
+			if (mirror != null) {
+				metrics.count("mirror-downloaded",
+					mirror.getDownloaded());
+				metrics.count("mirror-copied", mirror.getCopied());
+				metrics.count("mirror-present", mirror.getPresent());
+			}
+			if (router != null) {
+				metrics.count("routed", router.getRouted());
+				metrics.count("known-misses-skipped",
+					router.getSkipped());
+				metrics.count("routing-fallbacks",
+					descriptors.getFallbacks());
+			}
+
+			File file = new File(new File(outputFile)
+				.getAbsoluteFile().getParentFile(),
+				"mvn2nix-metrics.json");
+			try {
+				metrics.write(file);
+			} catch (IOException e) {
+				getLog().warn("Writing " + file, e);
+			}
+		}
+
+		/* Closes the resolution without finishing its walk */
+		public void abandon() {
+			walker.cancel();
+			close();
+		}
+
+		public void close() {
+			entries.close();
+			if (journal != null) {
+				try {
+					journal.close();
+				} catch (IOException e) {
+					getLog().warn("Closing journal", e);
+				}
+			}
+			if (shards != null) {
+				shards.close();
+			}
+			if (!workspace.shared) {
+				workspace.close();
+			}
+		}
 	}
 
-	private ArtifactDownloadInfo getDownloadInfoImpl(String base,
+	/* The checksum is only looked up in and added to the caches if
+	 * cacheable.
+	 */
+	private ArtifactDownloadInfo getDownloadInfoImpl(RemoteRepository repo,
 		URI fileLoc,
 		List<RepositoryLayout.Checksum> checksums,
 		String desc,
-		Transporter transport) throws MojoExecutionException {
+		File local,
+		Transporter transport,
+		Resolution r,
+		boolean cacheable) throws MojoExecutionException {
+		String base = repo.getUrl();
 
 		URI abs;
 		try {
@@ -198,30 +822,88 @@ public class Mvn2NixMojo extends AbstractMojo
 
 		ArtifactDownloadInfo res = new ArtifactDownloadInfo();
 		res.url = abs.toString();
+		if (cacheable && r.sharedChecksums != null) {
+			res.hash = r.sharedChecksums.get(res.url);
+			if (res.hash != null) {
+				return res;
+			}
+		}
+		if (cacheable && r.sha1Cache != null) {
+			res.hash = r.sha1Cache.get(res.url);
+		}
+		if (res.hash != null) {
+			if (r.sharedChecksums != null) {
+				r.sharedChecksums.put(res.url, res.hash);
+			}
+			return res;
+		}
+
+		if (local != null) {
+			long start = metrics.start();
+			try {
+				res.hash = LocalChecksums.sha1(local);
+			} catch (IOException e) {
+				getLog().debug("Hashing " + local, e);
+			} finally {
+				metrics.phase("hashLocal", start);
+			}
+		}
+		if (res.hash == null) {
+			res.hash = fetchSha1(checksums, desc, repo, transport, r);
+		}
 
-		GetTask task = null;
+		if (cacheable && r.sharedChecksums != null) {
+			r.sharedChecksums.put(res.url, res.hash);
+		}
+		if (cacheable && r.sha1Cache != null) {
+			try {
+				r.sha1Cache.put(res.url, res.hash);
+			} catch (IOException e) {
+				getLog().warn("Caching SHA-1 for " + desc, e);
+			}
+		}
+		return res;
+	}
+
+	private String fetchSha1(List<RepositoryLayout.Checksum> checksums,
+		String desc,
+		RemoteRepository repo,
+		Transporter transport,
+		Resolution r) throws MojoExecutionException {
+		URI location = null;
 		for (RepositoryLayout.Checksum ck : checksums) {
 			if (ck.getAlgorithm().equals("SHA-1")) {
-				task = new GetTask(ck.getLocation());
+				location = ck.getLocation();
 				break;
 			}
 		}
 
-		if (task == null) {
+		if (location == null) {
 			throw new MojoExecutionException(
 				"No SHA-1 for " + desc);
 		}
 
+		RemoteRepository hedge = r.hedges.get(repo.getId());
+		byte[] data;
+		long start = metrics.start();
 		try {
-			transport.get(task);
+			data = r.fetcher.get(location,
+				transport,
+				repo.getUrl(),
+				hedge != null ?
+					r.connections.getTransporter(hedge) :
+					null,
+				hedge != null ? hedge.getUrl() : null);
 		} catch (Exception e) {
 			throw new MojoExecutionException(
 				"Downloading SHA-1 for " + desc,
 				e);
+		} finally {
+			metrics.phase("fetchSha1", start);
 		}
 
 		try {
-			res.hash = new String(task.getDataBytes(),
+			return new String(data,
 					0,
 					40,
 					"UTF-8");
@@ -230,51 +912,564 @@ public class Mvn2NixMojo extends AbstractMojo
 				"Your jvm doesn't support UTF-8, fix that",
 				e);
 		}
-		return res;
 	}
 
-	private ArtifactDownloadInfo getDownloadInfo(Artifact art,
+	/* The local copy of art, if it is known to have been downloaded
+	 * from repo.
+	 */
+	private File findLocal(Artifact art, RemoteRepository repo) {
+		LocalArtifactResult res = repoSession.getLocalRepositoryManager()
+			.find(repoSession, new LocalArtifactRequest(art,
+				Collections.singletonList(repo),
+				null));
+		return res.isAvailable() ? res.getFile() : null;
+	}
+
+	/* Each walk visits an artifact once, but the projects of a shared
+	 * workspace may all reach it, so there it is looked at once for
+	 * all of them, snapshots included.
+	 */
+	private ArtifactDownloadInfo getDownloadInfo(final Artifact art,
+			final RepositoryLayout layout,
+			final RemoteRepository repo,
+			final Transporter transport,
+			final Resolution r) throws MojoExecutionException {
+		if (!r.workspace.shared) {
+			return fetchDownloadInfo(art, layout, repo, transport, r);
+		}
+		FutureTask<ArtifactDownloadInfo> task =
+			new FutureTask<ArtifactDownloadInfo>(
+				new Callable<ArtifactDownloadInfo>() {
+			@Override
+			public ArtifactDownloadInfo call()
+				throws MojoExecutionException {
+				return fetchDownloadInfo(art,
+					layout,
+					repo,
+					transport,
+					r);
+			}
+		});
+		return runOnce(r.workspace.artifacts,
+			repo.getId() + '@' + repo.getUrl() + ' ' + art,
+			task,
+			art.toString());
+	}
+
+	/* Runs task unless another task is already known by key in tasks,
+	 * returning the result of whichever it is.
+	 */
+	private static ArtifactDownloadInfo runOnce(
+		ConcurrentMap<String, FutureTask<ArtifactDownloadInfo>> tasks,
+		String key,
+		FutureTask<ArtifactDownloadInfo> task,
+		String desc) throws MojoExecutionException {
+		FutureTask<ArtifactDownloadInfo> other =
+			tasks.putIfAbsent(key, task);
+		if (other == null) {
+			task.run();
+		} else {
+			task = other;
+		}
+		try {
+			return task.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new MojoExecutionException(
+				"Interrupted fetching " + desc,
+				e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof MojoExecutionException) {
+				throw (MojoExecutionException) e.getCause();
+			}
+			throw new MojoExecutionException(
+				"Fetching " + desc,
+				e.getCause());
+		}
+	}
+
+	private ArtifactDownloadInfo fetchDownloadInfo(Artifact art,
 			RepositoryLayout layout,
-			String base,
-			Transporter transport) throws MojoExecutionException {
+			RemoteRepository repo,
+			Transporter transport,
+			Resolution r) throws MojoExecutionException {
 		URI fileLoc = layout.getLocation(art, false);
 		List<RepositoryLayout.Checksum> checksums =
 			layout.getChecksums(art, false, fileLoc);
-		return getDownloadInfoImpl(base,
+		File local = localChecksums ? findLocal(art, repo) : null;
+		/* Snapshot contents can change under the same URL */
+		ArtifactDownloadInfo res = getDownloadInfoImpl(repo,
 			fileLoc,
 			checksums,
 			art.toString(),
-			transport);
+			local,
+			transport,
+			r,
+			!art.isSnapshot());
+		if (r.mirror != null) {
+			/* The mirrored copy has been checked, so it can be
+			 * hashed instead of downloading the artifact again.
+			 */
+			local = mirror(res,
+				fileLoc,
+				art.toString(),
+				local != null ? local : findLocal(art, repo),
+				repo.getUrl(),
+				transport,
+				r,
+				!art.isSnapshot());
+		}
+		if (sha256) {
+			res.sha256 = getSha256(res,
+				fileLoc,
+				art.toString(),
+				local,
+				repo.getUrl(),
+				transport,
+				r,
+				!art.isSnapshot());
+		}
+		return res;
+	}
+
+	/* Hashes the file info describes, downloading it unless there is a
+	 * local copy to hash. The download goes to a temporary file and is
+	 * checked against the SHA-1 on the way through the digest.
+	 */
+	private String getSha256(ArtifactDownloadInfo info,
+		URI fileLoc,
+		String desc,
+		File local,
+		String base,
+		Transporter transport,
+		Resolution r,
+		boolean cacheable) throws MojoExecutionException {
+		if (cacheable && r.sha256Cache != null) {
+			String hash = r.sha256Cache.get(info.url);
+			if (hash != null) {
+				return hash;
+			}
+		}
+
+		String hash = null;
+		if (local != null) {
+			long start = metrics.start();
+			try {
+				hash = LocalChecksums.digest(local, "SHA-256")[0];
+			} catch (IOException e) {
+				getLog().debug("Hashing " + local, e);
+			} finally {
+				metrics.phase("hashLocal", start);
+			}
+		}
+		if (hash == null) {
+			hash = downloadSha256(info, fileLoc, desc, base,
+				transport, r);
+		}
+
+		if (cacheable && r.sha256Cache != null) {
+			try {
+				r.sha256Cache.put(info.url, hash);
+			} catch (IOException e) {
+				getLog().warn("Caching SHA-256 for " + desc, e);
+			}
+		}
+		return hash;
+	}
+
+	/* Puts the file info describes into the mirror, copying the local
+	 * copy if there is one that matches and downloading it otherwise.
+	 */
+	private File mirror(ArtifactDownloadInfo info,
+		URI fileLoc,
+		String desc,
+		File local,
+		String base,
+		Transporter transport,
+		Resolution r,
+		boolean immutable) throws MojoExecutionException {
+		long start = metrics.start();
+		try {
+			if (r.mirror.contains(fileLoc, info.hash, immutable)) {
+				return r.mirror.file(fileLoc);
+			}
+			if (local != null) {
+				try {
+					return r.mirror.copy(local,
+						fileLoc,
+						info.hash);
+				} catch (IOException e) {
+					getLog().debug("Copying " + local, e);
+				}
+			}
+
+			try {
+				r.downloads.acquire();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new MojoExecutionException(
+					"Interrupted downloading " + desc,
+					e);
+			}
+			File tmp = null;
+			try {
+				tmp = r.mirror.newTempFile(fileLoc);
+				GetTask task = new GetTask(fileLoc)
+					.setDataFile(tmp);
+				long get = metrics.start();
+				try {
+					transport.get(task);
+				} catch (Exception e) {
+					metrics.request(base, get, 0, true);
+					throw new MojoExecutionException(
+						"Downloading " + desc,
+						e);
+				}
+				metrics.request(base, get, tmp.length(), false);
+				File res = r.mirror.commit(tmp, fileLoc, info.hash);
+				tmp = null;
+				return res;
+			} finally {
+				r.downloads.release();
+				if (tmp != null) {
+					tmp.delete();
+				}
+			}
+		} catch (IOException e) {
+			throw new MojoExecutionException(
+				"Mirroring " + desc,
+				e);
+		} finally {
+			metrics.phase("mirror", start);
+		}
+	}
+
+	private String downloadSha256(ArtifactDownloadInfo info,
+		URI fileLoc,
+		String desc,
+		String base,
+		Transporter transport,
+		Resolution r) throws MojoExecutionException {
+		File tmp = null;
+		try {
+			r.downloads.acquire();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new MojoExecutionException(
+				"Interrupted downloading " + desc,
+				e);
+		}
+		try {
+			tmp = File.createTempFile("mvn2nix", ".part");
+			GetTask task = new GetTask(fileLoc).setDataFile(tmp);
+			long start = metrics.start();
+			try {
+				transport.get(task);
+			} catch (Exception e) {
+				metrics.request(base, start, 0, true);
+				throw new MojoExecutionException(
+					"Downloading " + desc,
+					e);
+			} finally {
+				metrics.phase("fetchArtifact", start);
+			}
+			metrics.request(base, start, tmp.length(), false);
+
+			start = metrics.start();
+			String[] hashes;
+			try {
+				hashes = LocalChecksums.digest(tmp,
+					"SHA-1",
+					"SHA-256");
+			} finally {
+				metrics.phase("hashSha256", start);
+			}
+			if (!hashes[0].equalsIgnoreCase(info.hash)) {
+				throw new MojoExecutionException(
+					"SHA-1 mismatch for " + desc +
+						": expected " + info.hash +
+						", downloaded " + hashes[0]);
+			}
+			return hashes[1];
+		} catch (IOException e) {
+			throw new MojoExecutionException(
+				"Hashing " + desc,
+				e);
+		} finally {
+			r.downloads.release();
+			if (tmp != null) {
+				tmp.delete();
+			}
+		}
 	}
 
 	private ArtifactDownloadInfo getDownloadInfo(Metadata m,
 			RepositoryLayout layout,
-			String base,
-			Transporter transport) throws MojoExecutionException {
+			RemoteRepository repo,
+			Transporter transport,
+			Resolution r) throws MojoExecutionException {
 		URI fileLoc = layout.getLocation(m, false);
 		List<RepositoryLayout.Checksum> checksums =
 			layout.getChecksums(m, false, fileLoc);
-		return getDownloadInfoImpl(base,
+		return getDownloadInfoImpl(repo,
 			fileLoc,
 			checksums,
 			m.toString(),
-			transport);
+			null,
+			transport,
+			r,
+			false);
+	}
+
+	/* Every entry of a snapshot refers to the same metadata, so fetch
+	 * its checksum once. If the metadata was downloaded during this
+	 * build, hash that copy rather than asking the repository again.
+	 */
+	private ArtifactDownloadInfo getMetadataInfo(final Artifact art,
+			final String unresolvedVersion,
+			final RemoteRepository repo,
+			final Resolution r) throws MojoExecutionException {
+		FutureTask<ArtifactDownloadInfo> task =
+			new FutureTask<ArtifactDownloadInfo>(
+				new Callable<ArtifactDownloadInfo>() {
+			@Override
+			public ArtifactDownloadInfo call()
+				throws MojoExecutionException {
+				Metadata m = new DefaultMetadata(
+					art.getGroupId(),
+					art.getArtifactId(),
+					unresolvedVersion,
+					SnapshotMetadata.FILE_NAME,
+					Metadata.Nature.RELEASE_OR_SNAPSHOT);
+				RepositoryLayout layout =
+					r.connections.getLayout(repo);
+				Transporter transport =
+					r.connections.getTransporter(repo);
+				URI fileLoc = layout.getLocation(m, false);
+				String fresh =
+					r.snapshots.getFreshSha1(repo, art);
+				ArtifactDownloadInfo res;
+				if (fresh == null) {
+					res = getDownloadInfo(m,
+						layout,
+						repo,
+						transport,
+						r);
+				} else {
+					res = new ArtifactDownloadInfo();
+					try {
+						res.url = URIBuilder.build(
+							repo.getUrl(),
+							fileLoc).toString();
+					} catch (URISyntaxException e) {
+						throw new MojoExecutionException(
+							"Parsing repository URI",
+							e);
+					}
+					res.hash = fresh;
+				}
+				if (r.mirror != null) {
+					mirror(res,
+						fileLoc,
+						m.toString(),
+						null,
+						repo.getUrl(),
+						transport,
+						r,
+						false);
+				}
+				return res;
+			}
+		});
+		return runOnce(r.metadata,
+			SnapshotMetadata.key(repo, art),
+			task,
+			"metadata of " + art);
+	}
+
+	/* Resolves the metadata of all snapshots among deps in one go */
+	private void prefetchSnapshots(Collection<Dependency> deps,
+			Resolution r) {
+		List<Artifact> arts = new ArrayList<Artifact>();
+		for (Dependency dep : deps) {
+			if (dep.getArtifact().isSnapshot()) {
+				arts.add(dep.getArtifact());
+			}
+		}
+		if (!arts.isEmpty()) {
+			r.snapshots.prefetch(arts);
+		}
+	}
+
+	private void emitEntry(Artifact art,
+		String unresolvedVersion,
+		RemoteRepository metadataRepo,
+		ArtifactDescriptorResult res,
+		long position,
+		Resolution r) throws MojoExecutionException {
+		ArtifactDownloadInfo metadataInfo = null;
+		if (metadataRepo != null) {
+			metadataInfo = getMetadataInfo(art,
+				unresolvedVersion,
+				metadataRepo,
+				r);
+		}
+
+		RemoteRepository remote = null;
+		ArtifactDownloadInfo info = null;
+		final List<ArtifactDownloadInfo> relocations =
+			new ArrayList<ArtifactDownloadInfo>();
+		if (res.getRepository() instanceof RemoteRepository) {
+			remote = (RemoteRepository) res.getRepository();
+			RepositoryLayout layout =
+				r.connections.getLayout(remote);
+			Transporter transport =
+				r.connections.getTransporter(remote);
+			info = getDownloadInfo(art,
+					layout,
+					remote,
+					transport,
+					r);
+
+			for (Artifact rel : res.getRelocations()) {
+				Artifact relPom = new DefaultArtifact(
+					rel.getGroupId(),
+					rel.getArtifactId(),
+					rel.getClassifier(),
+					"pom",
+					rel.getVersion());
+				relocations.add(getDownloadInfo(art,
+					layout,
+					remote,
+					transport,
+					r));
+			}
+		}
+
+		final Artifact resolved = art;
+		final String unresolved = unresolvedVersion;
+		final ArtifactDescriptorResult descriptor = res;
+		final ArtifactDownloadInfo metadata = metadataInfo;
+		final RemoteRepository from = remote;
+		final ArtifactDownloadInfo download = info;
+		long start = metrics.start();
+		try {
+			r.entries.write(EntryWriter.key(art, unresolvedVersion),
+				position,
+				new EntryWriter.Body() {
+				@Override
+				public void write(JsonGenerator gen) {
+					emitArtifactBody(resolved,
+						descriptor.getDependencies(),
+						gen);
+					if (metadata != null) {
+						gen.write("unresolved-version",
+								unresolved);
+						gen.write("repository-id",
+								descriptor.getRepository()
+									.getId());
+						gen.writeStartObject("metadata");
+						gen.write("url", metadata.url);
+						gen.write("sha1", metadata.hash);
+						gen.writeEnd();
+					}
+					if (from != null) {
+						gen.write("authenticated",
+							from.getAuthentication() != null);
+						gen.write("url", download.url);
+						gen.write("sha1", download.hash);
+						if (download.sha256 != null) {
+							gen.write("sha256",
+								download.sha256);
+						}
+
+						gen.writeStartArray("relocations");
+						for (ArtifactDownloadInfo rel :
+								relocations) {
+							gen.writeStartObject();
+							gen.write("url", rel.url);
+							gen.write("sha1", rel.hash);
+							if (rel.sha256 != null) {
+								gen.write("sha256",
+									rel.sha256);
+							}
+							gen.writeEnd();
+						}
+						gen.writeEnd();
+					}
+				}
+			});
+		} catch (IOException e) {
+			throw new MojoExecutionException(
+				"Writing entry for " + art,
+				e);
+		} finally {
+			metrics.phase("emit", start);
+		}
 	}
 
 	private void handleDependency(Dependency dep,
-		List<RemoteRepository> repos,
-		Set<Dependency> work,
-		Set<Artifact> printed,
-		JsonGenerator gen) throws MojoExecutionException {
+		final Resolution r,
+		DependencyWalker walker) throws MojoExecutionException {
 		Artifact art = dep.getArtifact();
 
-		ArtifactDownloadInfo metadataInfo = null;
+		if (r.previous != null && !art.isSnapshot()) {
+			JsonObject entry = r.previous.get(art);
+			/* Entries written with a different mvn2nixSha256 would
+			 * differ from freshly resolved ones, so they need
+			 * resolving again, and so do all of them when they have
+			 * to be mirrored.
+			 */
+			if (entry != null && entry.containsKey("url") &&
+				entry.containsKey("sha256") != sha256) {
+				entry = null;
+			}
+			if (r.mirror != null) {
+				entry = null;
+			}
+			if (entry != null) {
+				Artifact artKey = new DefaultArtifact(
+					art.getGroupId(),
+					art.getArtifactId(),
+					art.getClassifier(),
+					art.getExtension(),
+					art.getVersion());
+				if (r.printed.add(artKey)) {
+					r.previous.markReused();
+					long start = metrics.start();
+					try {
+						r.entries.write(EntryWriter.key(art,
+							art.getVersion()),
+							r.entries.reserve(),
+							entry);
+					} catch (IOException e) {
+						throw new MojoExecutionException(
+							"Writing entry for " + art,
+							e);
+					} finally {
+						metrics.phase("emit", start);
+					}
+				}
+				enqueueDependencies(dep,
+					art,
+					art.getVersion(),
+					PreviousOutput.getDependencies(entry),
+					r,
+					walker);
+				return;
+			}
+		}
+
 		String unresolvedVersion = art.getVersion();
+		RemoteRepository metadataRepo = null;
 		if (art.isSnapshot()) {
+			/* Usually prefetched along with its siblings */
+			r.snapshots.prefetch(Collections.singletonList(art));
 			VersionRequest vReq = new VersionRequest(art,
-				repos,
+				r.repos,
 				null);
 			VersionResult res;
+			long start = metrics.start();
 			try {
 				res = repoSystem.resolveVersion(
 					repoSession,
@@ -284,6 +1479,8 @@ public class Mvn2NixMojo extends AbstractMojo
 					"Resolving version of " +
 						art.toString(),
 					e);
+			} finally {
+				metrics.phase("resolveVersion", start);
 			}
 
 			if (!res.getVersion().equals(art.getVersion())) {
@@ -295,58 +1492,14 @@ public class Mvn2NixMojo extends AbstractMojo
 					res.getVersion());
 				if (res.getRepository() instanceof
 						RemoteRepository) {
-					RemoteRepository repo =
-						(RemoteRepository) res
-							.getRepository();
-					Metadata m =
-						new DefaultMetadata(
-							art.getGroupId(),
-							art.getArtifactId(),
-							unresolvedVersion,
-							"maven-metadata.xml",
-							Metadata.Nature.RELEASE_OR_SNAPSHOT);
-					RepositoryLayout layout;
-					try {
-						layout = layoutProvider
-							.newRepositoryLayout(
-								repoSession,
-								repo);
-					} catch (NoRepositoryLayoutException e) {
-						throw new MojoExecutionException(
-							"Getting repository layout",
-							e);
-					}
-					String base = repo.getUrl();
-					/* TODO: Open the transporters all at
-					 * once */
-					try (Transporter transport =
-						transporterProvider
-							.newTransporter(
-								repoSession,
-								repo)) {
-						metadataInfo = getDownloadInfo(
-								m,
-								layout,
-								base,
-								transport);
-					} catch (NoTransporterException e) {
-						throw new
-							MojoExecutionException(
-							"No transporter for " +
-								art.toString(),
-							e);
-					}
+					metadataRepo = (RemoteRepository) res
+						.getRepository();
 				}
 			}
 		}
-		ArtifactDescriptorRequest req = new ArtifactDescriptorRequest(
-			art,
-			repos,
-			null);
 		ArtifactDescriptorResult res;
 		try {
-			res = repoSystem.readArtifactDescriptor(repoSession,
-				req);
+			res = r.descriptors.read(art);
 		} catch (ArtifactDescriptorException e) {
 			throw new MojoExecutionException(
 				"getting descriptor for " + art.toString(),
@@ -359,82 +1512,53 @@ public class Mvn2NixMojo extends AbstractMojo
 			art.getClassifier(),
 			art.getExtension(),
 			unresolvedVersion);
-		if (printed.add(artKey)) {
-			gen.writeStartObject();
-			emitArtifactBody(art,
-				res.getDependencies(),
-				gen);
-			if (metadataInfo != null) {
-				gen.write("unresolved-version",
-						unresolvedVersion);
-				gen.write("repository-id",
-						res.getRepository().getId());
-				gen.writeStartObject("metadata");
-				gen.write("url", metadataInfo.url);
-				gen.write("sha1", metadataInfo.hash);
-				gen.writeEnd();
-			}
-			if (res.getRepository() instanceof RemoteRepository) {
-				RemoteRepository repo = (RemoteRepository) res
-					.getRepository();
-				gen.write("authenticated",
-					repo.getAuthentication() != null);
-				RepositoryLayout layout;
-				try {
-					layout = layoutProvider
-						.newRepositoryLayout(
-							repoSession,
-							repo);
-				} catch (NoRepositoryLayoutException e) {
-					throw new MojoExecutionException(
-						"Getting repository layout",
-						e);
+		if (r.printed.add(artKey)) {
+			/* Checksums are only needed for the output, so fetch
+			 * them off the walker threads and let the walk carry
+			 * on in the meantime.
+			 */
+			final Artifact resolved = art;
+			final String unresolved = unresolvedVersion;
+			final RemoteRepository metadataFrom = metadataRepo;
+			final ArtifactDescriptorResult descriptor = res;
+			/* Keeps the entry where the walk reached it, however
+			 * long its checksums take.
+			 */
+			final long position = r.entries.reserve();
+			walker.fork(new DependencyWalker.Task() {
+				@Override
+				public void run()
+					throws MojoExecutionException {
+					emitEntry(resolved,
+						unresolved,
+						metadataFrom,
+						descriptor,
+						position,
+						r);
 				}
 
-				String base = repo.getUrl();
-				/* TODO: Open the transporters all at once */
-				try (Transporter transport =
-					transporterProvider.newTransporter(
-						repoSession
-						, repo)) {
-					ArtifactDownloadInfo info =
-						getDownloadInfo(art,
-								layout,
-								base,
-								transport);
-					gen.write("url", info.url);
-					gen.write("sha1", info.hash);
-
-					gen.writeStartArray("relocations");
-					for (Artifact rel :
-							res.getRelocations()) {
-						Artifact relPom =
-							new DefaultArtifact(
-							rel.getGroupId(),
-							rel.getArtifactId(),
-							rel.getClassifier(),
-							"pom",
-							rel.getVersion());
-						gen.writeStartObject();
-						info = getDownloadInfo(art,
-							layout,
-							base,
-							transport);
-						gen.write("url", info.url);
-						gen.write("sha1", info.hash);
-						gen.writeEnd();
-					}
-					gen.writeEnd();
-				} catch (NoTransporterException e) {
-					throw new MojoExecutionException(
-						"No transporter for " +
-							art.toString(),
-						e);
+				@Override
+				public String toString() {
+					return "Fetching checksums for " +
+						resolved;
 				}
-			}
-			gen.writeEnd();
+			});
 		}
 
+		enqueueDependencies(dep,
+			art,
+			unresolvedVersion,
+			res.getDependencies(),
+			r,
+			walker);
+	}
+
+	private void enqueueDependencies(Dependency dep,
+		Artifact art,
+		String unresolvedVersion,
+		List<Dependency> deps,
+		Resolution r,
+		DependencyWalker walker) {
 		if (!art.getExtension().equals("pom")) {
 			Artifact pomArt = new DefaultArtifact(art.getGroupId(),
 				art.getArtifactId(),
@@ -445,10 +1569,11 @@ public class Mvn2NixMojo extends AbstractMojo
 				"compile",
 				new Boolean(false),
 				dep.getExclusions());
-			work.add(pomDep);
+			walker.add(pomDep);
 		}
 
-		for (Dependency subDep : res.getDependencies()) {
+		List<Dependency> newDeps = new ArrayList<Dependency>();
+		for (Dependency subDep : deps) {
 			if (subDep.isOptional()) {
 				continue;
 			}
@@ -482,13 +1607,214 @@ public class Mvn2NixMojo extends AbstractMojo
 				dep.getScope(),
 				dep.getOptional(),
 				excls);
-			work.add(newDep);
+			newDeps.add(newDep);
 		}
+		prefetchSnapshots(newDeps, r);
+		for (Dependency newDep : newDeps) {
+			walker.add(newDep);
+		}
+	}
+
+	static final String BUILD_KEY =
+		Mvn2NixMojo.class.getName() + ".build";
+
+	/* What the executions of this mojo in one build share. It lives in
+	 * the repository session rather than in a static field, so nothing
+	 * leaks from one build into the next when several builds share a
+	 * JVM. Reactor modules may contribute concurrently.
+	 */
+	private static final class ReactorBuild
+	{
+		/* The roots of each module, by project id */
+		public final ConcurrentMap<String, Set<Dependency>> roots =
+			new ConcurrentHashMap<String, Set<Dependency>>();
+
+		/* The rest is guarded by the ReactorBuild */
+		public final Set<String> contributed = new HashSet<String>();
+
+		/* Started by the first module if others are still to come */
+		public Resolution resolution;
+
+		/* Modules still adding their roots to the resolution */
+		public int walking;
+
+		/* Shared by all modules in workspace mode */
+		public Workspace workspace;
+
+		/* Shared by all modules in workspace mode */
+		public ConcurrencyLimiter limiter;
 	}
 
-	static Set<Dependency> work = new HashSet<Dependency>();
-	static Set<Dependency> seen = new HashSet<Dependency>();
-	static Set<Artifact> printed = new HashSet<Artifact>();
+	private ReactorBuild reactorBuild() {
+		SessionData data = repoSession.getData();
+		ReactorBuild build = new ReactorBuild();
+		if (data.set(BUILD_KEY, null, build)) {
+			closeAtSessionEnd(build);
+		}
+		return (ReactorBuild) data.get(BUILD_KEY);
+	}
+
+	/* If a module fails, is skipped or doesn't run this goal, the build
+	 * never completes. Its resolution or workspace is then closed when
+	 * the session ends, rather than left running in a JVM that may
+	 * outlive the build.
+	 */
+	private void closeAtSessionEnd(final ReactorBuild build) {
+		if (mavenSession == null) {
+			return;
+		}
+		final SessionData data = repoSession.getData();
+		MavenExecutionRequest req = mavenSession.getRequest();
+		req.setExecutionListener(new SessionEndListener(
+			req.getExecutionListener(),
+			new Runnable() {
+				@Override
+				public void run() {
+					if (data.set(BUILD_KEY, build, null)) {
+						abandon(build);
+					}
+				}
+			}));
+	}
+
+	private void abandon(ReactorBuild build) {
+		synchronized (build) {
+			if (build.contributed.isEmpty()) {
+				return;
+			}
+			List<String> missing = new ArrayList<String>();
+			for (Object o : reactorProjects) {
+				String id = ((MavenProject) o).getId();
+				if (!build.contributed.contains(id)) {
+					missing.add(id);
+				}
+			}
+			getLog().warn((workspaceMode ?
+					"Closing the workspace" :
+					"No output written") +
+				", as " + missing + " did not run mvn2nix");
+			if (build.resolution != null) {
+				build.resolution.abandon();
+			}
+			if (build.workspace != null) {
+				build.workspace.close();
+			}
+		}
+	}
+
+	private PreviousOutput loadPreviousOutput() {
+		PreviousOutput previous = incremental ?
+			loadIncremental() : null;
+		File journal = Journal.file(new File(outputFile));
+		if (!useJournal || !journal.isFile()) {
+			return previous;
+		}
+		try {
+			PreviousOutput resumed =
+				PreviousOutput.withJournal(previous, journal);
+			getLog().info("Resuming from " + journal + " with " +
+				resumed.size() + " entries");
+			return resumed;
+		} catch (IOException e) {
+			getLog().warn("Ignoring " + journal, e);
+			return previous;
+		}
+	}
+
+	private PreviousOutput loadIncremental() {
+		File prev = new File(outputFile);
+		if (!prev.isFile()) {
+			getLog().info("No previous " + outputFile +
+				", generating from scratch");
+			return null;
+		}
+		try {
+			return PreviousOutput.load(prev);
+		} catch (IOException e) {
+			getLog().warn("Ignoring previous " + outputFile, e);
+			return null;
+		}
+	}
+
+	private RepositoryRouter openRouter() {
+		RepositoryRouter router = new RepositoryRouter();
+		if (persistRoutes) {
+			try {
+				router.load(cacheDirectory);
+				getLog().debug("Loaded " + router.size() +
+					" routes from " + cacheDirectory);
+			} catch (IOException e) {
+				getLog().warn("Ignoring saved routes in " +
+					cacheDirectory, e);
+			}
+		}
+		return router;
+	}
+
+	private ChecksumCache openSha256Cache() {
+		if (!useChecksumCache) {
+			return null;
+		}
+		try {
+			return ChecksumCache.openSha256(cacheDirectory);
+		} catch (IOException e) {
+			getLog().warn("Not using SHA-256 cache in " +
+				cacheDirectory, e);
+			return null;
+		}
+	}
+
+	/* Parses mvn2nixHedgeMirrors, a comma-separated list of id=url. No
+	 * credentials are sent to the mirrors, only the proxy their URL
+	 * calls for.
+	 */
+	private Map<String, RemoteRepository> hedgeRepositories()
+		throws MojoExecutionException {
+		Map<String, RemoteRepository> res =
+			new HashMap<String, RemoteRepository>();
+		if (hedgeMirrors == null) {
+			return res;
+		}
+		for (String entry : hedgeMirrors.split(",")) {
+			entry = entry.trim();
+			if (entry.isEmpty()) {
+				continue;
+			}
+			int eq = entry.indexOf('=');
+			if (eq <= 0 || eq == entry.length() - 1) {
+				throw new MojoExecutionException(
+					"Expected id=url in mvn2nixHedgeMirrors, " +
+						"got " + entry);
+			}
+			String id = entry.substring(0, eq).trim();
+			RemoteRepository mirror = new RemoteRepository.Builder(
+				id + "-hedge",
+				"default",
+				entry.substring(eq + 1).trim()).build();
+			mirror = new RemoteRepository.Builder(mirror)
+				.setProxy(repoSession.getProxySelector()
+					.getProxy(mirror))
+				.build();
+			res.put(id, mirror);
+		}
+		return res;
+	}
+
+	private ChecksumCache openChecksumCache() {
+		if (!useChecksumCache) {
+			return null;
+		}
+		try {
+			ChecksumCache cache = ChecksumCache.open(cacheDirectory);
+			getLog().debug("Loaded " + cache.size() +
+				" cached checksums from " + cacheDirectory);
+			return cache;
+		} catch (IOException e) {
+			getLog().warn("Not using checksum cache in " +
+				cacheDirectory, e);
+			return null;
+		}
+	}
 
 	@Override
 	public void execute() throws MojoExecutionException
@@ -499,8 +1825,46 @@ public class Mvn2NixMojo extends AbstractMojo
 		repoSession.setConfigProperty(
 			ArtifactDescriptorReaderDelegate.class.getName(),
 			d);
+		metrics = new Metrics();
+		ReactorBuild build = reactorBuild();
+		TransferListener listener =
+			metrics.listener(repoSession.getTransferListener());
+		if (hostConcurrency > 0) {
+			/* Hosts are the same for all modules of a workspace */
+			synchronized (build) {
+				if (!workspaceMode) {
+					limiter = newLimiter();
+				} else {
+					if (build.limiter == null) {
+						build.limiter = newLimiter();
+					}
+					limiter = build.limiter;
+				}
+			}
+			listener = limiter.listener(listener);
+		}
+		repoSession.setTransferListener(new DownloadGate(listener));
+		if (requestTimeout > 0) {
+			repoSession.setConfigProperty(
+				ConfigurationProperties.REQUEST_TIMEOUT,
+				requestTimeout);
+			repoSession.setConfigProperty(
+				ConfigurationProperties.CONNECT_TIMEOUT,
+				requestTimeout);
+		}
 		repoSession.setReadOnly();
 
+		if (servePort > 0) {
+			if (servesRequests()) {
+				serve();
+			} else {
+				getLog().info("Requests are served by " +
+					"the execution root");
+			}
+			return;
+		}
+
+		Set<Dependency> roots = new LinkedHashSet<Dependency>();
 		MavenProject parent = project.getParent();
 		while(parent != null){
 		    Artifact art = new DefaultArtifact(parent.getGroupId(),
@@ -508,7 +1872,7 @@ public class Mvn2NixMojo extends AbstractMojo
 		                                       "pom",
 		                                       parent.getVersion());
 		    Dependency dep = new Dependency(art, "compile");
-		    work.add(dep);
+		    roots.add(dep);
 		    parent = parent.getParent();
 		}
 		for (Plugin p : project.getBuildPlugins()) {
@@ -518,57 +1882,422 @@ public class Mvn2NixMojo extends AbstractMojo
 				"jar",
 				p.getVersion());
 			Dependency dep = new Dependency(art, "compile");
-			work.add(dep);
+			roots.add(dep);
 			for (org.apache.maven.model.Dependency subDep :
 					p.getDependencies()) {
-				work.add(mavenDependencyToDependency(subDep));
+				roots.add(mavenDependencyToDependency(subDep));
 			}
 		}
 		for (org.apache.maven.model.Dependency dep :
 				project.getDependencies()) {
-			work.add(mavenDependencyToDependency(dep));
+			roots.add(mavenDependencyToDependency(dep));
 		}
-		if (reactorProjects.get(reactorProjects.size() -1) == project) {
-			/* This is the last project, now all the dependencies have been accumulated
-			 * and we can generate project info.
-			 */
 
-			try (JsonGenerator gen = Json.createGenerator(new FileOutputStream(outputFile))) {
-				gen.writeStartObject();
+		if (workspaceMode) {
+			writeWorkspaceOutput(build, roots);
+			return;
+		}
 
-				gen.writeStartObject("project");
-				emitArtifactBody(
-				                 mavenArtifactToArtifact(project.getArtifact()),
-				                 work,
-				                 gen);
-				gen.writeEnd();
+		/* Modules may get here in any order and at the same time
+		 * under mvn -T, so the output is written by whichever one
+		 * completes the reactor. Until then, a resolution started by
+		 * the first module walks each module's roots as they come in.
+		 */
+		build.roots.put(project.getId(), roots);
+		Resolution r;
+		boolean last;
+		synchronized (build) {
+			build.contributed.add(project.getId());
+			last = isComplete(build);
+			if (!last && build.resolution == null) {
+				build.resolution = new Resolution(
+					loadPreviousOutput(), null);
+			}
+			r = build.resolution;
+			if (r != null) {
+				r.addRepositories(repositories());
+				build.walking++;
+			}
+			if (last) {
+				/* Any later execution in this build starts
+				 * afresh
+				 */
+				repoSession.getData().set(BUILD_KEY, null);
+			}
+		}
+		/* Walking starts with fetching snapshot metadata, which other
+		 * modules mustn't have to wait for.
+		 */
+		if (r != null) {
+			try {
+				r.walk(roots);
+			} finally {
+				synchronized (build) {
+					build.walking--;
+					build.notifyAll();
+				}
+			}
+		}
+		if (!last) {
+			return;
+		}
+		if (r != null) {
+			awaitWalks(build);
+		}
+
+		/* This is the last project, now all the dependencies have been
+		 * accumulated and we can generate project info.
+		 */
+		MavenProject top = (MavenProject)
+			reactorProjects.get(reactorProjects.size() - 1);
+		writeOutput(top, reactorRoots(build), r, null);
+	}
 
+	/* The roots of all modules, in reactor order however the modules
+	 * were run.
+	 */
+	private Set<Dependency> reactorRoots(ReactorBuild build) {
+		Set<Dependency> res = new LinkedHashSet<Dependency>();
+		for (Object o : reactorProjects) {
+			Set<Dependency> roots =
+				build.roots.get(((MavenProject) o).getId());
+			if (roots != null) {
+				res.addAll(roots);
+			}
+		}
+		return res;
+	}
+
+	/* Waits until every module has added its roots to the resolution */
+	private static void awaitWalks(ReactorBuild build)
+		throws MojoExecutionException {
+		synchronized (build) {
+			while (build.walking > 0) {
+				try {
+					build.wait();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new MojoExecutionException(
+						"Interrupted waiting for modules",
+						e);
+				}
+			}
+		}
+	}
+
+	/* Whether every module of the reactor has contributed to build */
+	private boolean isComplete(ReactorBuild build) {
+		for (Object o : reactorProjects) {
+			if (!build.contributed.contains(
+					((MavenProject) o).getId())) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/* Writes this module's own output, using the connections and
+	 * caches of the workspace all modules of the build share. The last
+	 * module to finish closes the workspace.
+	 */
+	private void writeWorkspaceOutput(ReactorBuild build,
+		Set<Dependency> roots) throws MojoExecutionException {
+		if (!new File(outputFile).isAbsolute()) {
+			outputFile = new File(project.getBasedir(), outputFile)
+				.getPath();
+		}
+		Workspace ws;
+		synchronized (build) {
+			if (build.workspace == null) {
+				build.workspace = new Workspace(true);
+			}
+			ws = build.workspace;
+		}
+		try {
+			writeOutput(project, roots, null, ws);
+		} finally {
+			synchronized (build) {
+				build.contributed.add(project.getId());
+				if (isComplete(build)) {
+					ws.close();
+					getLog().info("Workspace: " +
+						build.contributed.size() +
+						" projects resolved");
+					repoSession.getData().set(BUILD_KEY, null);
+				}
+			}
+		}
+	}
+
+	/* Writes the output for top, walking roots with a new resolution
+	 * unless r has walked them already.
+	 */
+	private void writeOutput(MavenProject top,
+		Set<Dependency> roots,
+		Resolution r,
+		Workspace ws) throws MojoExecutionException {
+		PreviousOutput previous = r == null ? loadPreviousOutput() : null;
+		try (JsonGenerator gen = Json.createGenerator(new FileOutputStream(outputFile))) {
+			gen.writeStartObject();
+
+			gen.writeStartObject("project");
+			emitArtifactBody(
+			                 mavenArtifactToArtifact(top.getArtifact()),
+			                 roots,
+			                 gen);
+			gen.writeEnd();
+
+			if (shardCount > 0) {
+				if (r == null) {
+					r = new Resolution(previous, null, ws);
+					r.walk(roots);
+				}
+				r.finish(null);
+				gen.writeStartObject("shards");
+				for (Map.Entry<String, String> e :
+						r.shards.getFiles().entrySet()) {
+					gen.write(e.getKey(), e.getValue());
+				}
+				gen.writeEnd();
+			} else {
 				gen.writeStartArray("dependencies");
-				List<RemoteRepository> repos =
-				    new ArrayList<RemoteRepository>(
-				                                    project.getRemoteProjectRepositories());
-				repos.addAll(project.getRemotePluginRepositories());
-				while (!work.isEmpty()) {
-				    Iterator<Dependency> it = work.iterator();
-				    Dependency dep = it.next();
-				    it.remove();
-
-				    if (seen.add(dep)) {
-				        handleDependency(dep,
-				                         repos,
-				                         work,
-				                         printed,
-				                         gen);
-				    }
+				if (r == null) {
+					r = new Resolution(previous, gen, ws);
+					r.walk(roots);
 				}
+				r.finish(gen);
 				gen.writeEnd();
+			}
 
-				gen.writeEnd();
-			} catch (FileNotFoundException e) {
-				throw new MojoExecutionException(
-				                                 "Opening " + outputFile,
-				                                 e);
+			gen.writeEnd();
+		} catch (FileNotFoundException e) {
+			throw new MojoExecutionException(
+			                                 "Opening " + outputFile,
+			                                 e);
+		} finally {
+			if (r != null) {
+				r.close();
+			}
+		}
+		/* Nothing to resume once the output is complete */
+		if (useJournal) {
+			Journal.file(new File(outputFile)).delete();
+		}
+	}
+
+	/* How long a client has to send its request */
+	private static final int REQUEST_TIMEOUT_MILLIS = 60000;
+
+	/* Whether this module serves requests for the whole reactor: the
+	 * execution root, or the first module if the root isn't built.
+	 */
+	private boolean servesRequests() {
+		for (Object o : reactorProjects) {
+			if (((MavenProject) o).isExecutionRoot()) {
+				return o == project;
+			}
+		}
+		return reactorProjects.isEmpty() ||
+			reactorProjects.get(0) == project;
+	}
+
+	/* Answers resolution requests on a local port until asked to shut
+	 * down, see ResolveRequest. Requests are served one at a time, each
+	 * walk using all the threads it is configured to. Connections and
+	 * the caches of released artifacts stay warm between requests,
+	 * while snapshots are looked at afresh for each.
+	 */
+	private void serve() throws MojoExecutionException {
+		/* Neither makes sense for answers on a socket */
+		if (shardCount > 0 || useJournal) {
+			throw new MojoExecutionException(
+				"mvn2nixShards and mvn2nixJournal can't be " +
+				"used with mvn2nixServe");
+		}
+		if ("false".equals(repoSession.getUserProperties()
+				.get("mvn2nixCrossBuildCache"))) {
+			getLog().warn("Keeping descriptors and checksums " +
+				"between requests despite " +
+				"mvn2nixCrossBuildCache=false");
+		}
+		crossBuildCache = true;
+		DefaultRepositorySystemSession base = repoSession;
+		File tokenFile = new File(cacheDirectory,
+			"serve-" + servePort + ".token");
+		String token;
+		try {
+			token = ResolveRequest.writeToken(tokenFile);
+		} catch (IOException e) {
+			throw new MojoExecutionException(
+				"Writing token to " + tokenFile,
+				e);
+		}
+		ServerSocket server;
+		try {
+			server = new ServerSocket(servePort,
+				50,
+				InetAddress.getByName(null));
+		} catch (IOException e) {
+			tokenFile.delete();
+			throw new MojoExecutionException(
+				"Listening on port " + servePort,
+				e);
+		}
+		getLog().info("Serving resolution requests on " +
+			server.getLocalSocketAddress() + " with the token in " +
+			tokenFile);
+		Workspace ws = new Workspace(true);
+		try {
+			boolean running = true;
+			while (running) {
+				Socket socket = server.accept();
+				try {
+					socket.setSoTimeout(REQUEST_TIMEOUT_MILLIS);
+					running = serveRequest(socket,
+						token,
+						base,
+						ws);
+				} catch (IOException | RuntimeException e) {
+					/* One bad request mustn't take the
+					 * server down.
+					 */
+					getLog().warn("Answering " +
+						socket.getRemoteSocketAddress(), e);
+				} finally {
+					ws.forgetWalks();
+					repoSession = base;
+					try {
+						socket.close();
+					} catch (IOException e) {
+						getLog().debug("Closing socket", e);
+					}
+				}
+			}
+		} catch (IOException e) {
+			throw new MojoExecutionException(
+				"Accepting requests on port " + servePort,
+				e);
+		} finally {
+			ws.close();
+			tokenFile.delete();
+			try {
+				server.close();
+			} catch (IOException e) {
+				getLog().debug("Closing server socket", e);
+			}
+		}
+	}
+
+	/* Answers the request on socket, returning false if it asked the
+	 * server to shut down.
+	 */
+	private boolean serveRequest(Socket socket,
+		String token,
+		DefaultRepositorySystemSession base,
+		Workspace ws) throws IOException {
+		BufferedReader in = new BufferedReader(new InputStreamReader(
+			socket.getInputStream(), "UTF-8"));
+		JsonGenerator gen = Json.createGenerator(new OutputStreamWriter(
+			socket.getOutputStream(), "UTF-8"));
+		ResolveRequest req;
+		try {
+			req = ResolveRequest.parse(ResolveRequest.readLine(in));
+		} catch (IllegalArgumentException e) {
+			gen.writeStartObject().write("error", e.getMessage())
+				.writeEnd().close();
+			return true;
+		}
+		if (!req.hasToken(token)) {
+			getLog().warn("Rejecting request from " +
+				socket.getRemoteSocketAddress() +
+				" without the right token");
+			gen.writeStartObject().write("error",
+				"Missing or wrong token").writeEnd().close();
+			return true;
+		}
+		if (req.shutdown) {
+			gen.writeStartObject().write("shutdown", true)
+				.writeEnd().close();
+			getLog().info("Shutting down on request");
+			return false;
+		}
+
+		/* The session remembers which metadata it has checked, so a
+		 * new one lets the update policy decide whether snapshots
+		 * are checked again.
+		 */
+		DefaultRepositorySystemSession session =
+			new DefaultRepositorySystemSession(base);
+		session.setData(new DefaultSessionData());
+		session.setCache(new DefaultRepositoryCache());
+		session.setReadOnly();
+		repoSession = session;
+		List<RemoteRepository> repos = repositories();
+		repos.addAll(req.resolutionRepositories(repoSystem, session));
+
+		long start = System.nanoTime();
+		Resolution r = null;
+		try {
+			/* Entries are spooled, so a failed walk can still be
+			 * answered with an error.
+			 */
+			r = new Resolution(null, null, ws, repos);
+			r.walk(req.roots);
+			r.walker.await();
+
+			gen.writeStartObject();
+			gen.writeStartObject("project");
+			emitArtifactBody(req.project, req.roots, gen);
+			gen.writeEnd();
+			gen.writeStartArray("dependencies");
+			r.finish(gen);
+			gen.writeEnd();
+			gen.writeEnd();
+			gen.close();
+			getLog().info("Answered " + req.roots.size() +
+				" roots with " + r.printed.size() +
+				" entries in " +
+				(System.nanoTime() - start) / 1000000 + " ms");
+		} catch (MojoExecutionException e) {
+			getLog().warn("Resolving " + req.roots, e);
+			gen.writeStartObject().write("error", e.getMessage() +
+				(e.getCause() != null ?
+					": " + e.getCause().getMessage() : ""))
+				.writeEnd().close();
+		} finally {
+			if (r != null) {
+				r.close();
 			}
 		}
+		return true;
+	}
+
+	private ConcurrencyLimiter newLimiter() {
+		return new ConcurrencyLimiter(
+			Math.min(INITIAL_HOST_CONCURRENCY, hostConcurrency),
+			hostConcurrency,
+			new ConcurrencyLimiter.Listener() {
+			@Override
+			public void limitChanged(String host,
+				int previous,
+				int limit) {
+				String msg = "Concurrency limit for " + host +
+					(limit < previous ? " lowered" :
+						" raised") +
+					" from " + previous + " to " + limit;
+				if (limit < previous) {
+					getLog().info(msg);
+				} else {
+					getLog().debug(msg);
+				}
+			}
+		});
+	}
+
+	private List<RemoteRepository> repositories() {
+		List<RemoteRepository> res = new ArrayList<RemoteRepository>(
+			project.getRemoteProjectRepositories());
+		res.addAll(project.getRemotePluginRepositories());
+		return res;
 	}
 }
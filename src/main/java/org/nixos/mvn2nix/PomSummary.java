@@ -0,0 +1,164 @@
+/*
+ * Copyright (c) 2026 The mvn2nix-maven-plugin authors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.nixos.mvn2nix;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.codehaus.plexus.util.ReaderFactory;
+import org.codehaus.plexus.util.xml.pull.MXParser;
+import org.codehaus.plexus.util.xml.pull.XmlPullParser;
+import org.codehaus.plexus.util.xml.pull.XmlPullParserException;
+
+import org.eclipse.aether.artifact.Artifact;
+import org.eclipse.aether.artifact.DefaultArtifact;
+
+/**
+ * What a single streaming pass over a POM can tell without building its
+ * model: the coordinates of its parent, and whether anything in it could
+ * contribute dependencies or a relocation to its descriptor.
+ *
+ * A POM without such content whose ancestors are all without it too has
+ * a descriptor consisting of nothing but its parent, whatever inheritance,
+ * interpolation, profile activation or imports would make of the rest.
+ *
+ * POMs are parsed with the same pull parser Maven reads them with.
+ */
+final class PomSummary
+{
+	private final Artifact parent;
+
+	private final boolean simple;
+
+	private PomSummary(Artifact parent, boolean simple) {
+		this.parent = parent;
+		this.simple = simple;
+	}
+
+	/**
+	 * The parent POM, or <code>null</code> if there is none.
+	 */
+	public Artifact getParent() {
+		return parent;
+	}
+
+	/**
+	 * Whether the POM itself declares no dependencies, in profiles or
+	 * otherwise, no relocation, and a parent with literal coordinates.
+	 */
+	public boolean isSimple() {
+		return simple;
+	}
+
+	public static PomSummary read(File pom) throws IOException {
+		try (Reader in = ReaderFactory.newXmlReader(pom)) {
+			return read(in);
+		} catch (XmlPullParserException e) {
+			throw new IOException("Parsing " + pom, e);
+		}
+	}
+
+	static PomSummary read(Reader in)
+		throws IOException, XmlPullParserException {
+		XmlPullParser xml = new MXParser();
+		xml.setInput(in);
+		List<String> path = new ArrayList<String>();
+		String groupId = null;
+		String artifactId = null;
+		String version = null;
+		boolean simple = true;
+		for (int event = xml.next();
+			event != XmlPullParser.END_DOCUMENT;
+			event = xml.next()) {
+			if (event == XmlPullParser.END_TAG) {
+				path.remove(path.size() - 1);
+				continue;
+			}
+			if (event != XmlPullParser.START_TAG) {
+				continue;
+			}
+			String name = xml.getName();
+			path.add(name);
+			/* Nothing deeper matters */
+			if (path.size() > 5) {
+				continue;
+			}
+			String where = join(path);
+			if (where.equals("project/dependencies/dependency") ||
+				where.equals("project/profiles/profile/" +
+					"dependencies/dependency") ||
+				where.equals("project/distributionManagement/" +
+					"relocation")) {
+				simple = false;
+				break;
+			}
+			if (!where.startsWith("project/parent/") ||
+				path.size() != 3) {
+				continue;
+			}
+			String text = xml.nextText().trim();
+			path.remove(path.size() - 1);
+			if (name.equals("groupId")) {
+				groupId = text;
+			} else if (name.equals("artifactId")) {
+				artifactId = text;
+			} else if (name.equals("version")) {
+				version = text;
+			}
+		}
+
+		if (!simple) {
+			return new PomSummary(null, false);
+		}
+		Artifact parent = null;
+		if (groupId != null || artifactId != null || version != null) {
+			if (!literal(groupId) || !literal(artifactId) ||
+				!literal(version)) {
+				return new PomSummary(null, false);
+			}
+			parent = new DefaultArtifact(groupId,
+				artifactId,
+				"pom",
+				version);
+		}
+		return new PomSummary(parent, true);
+	}
+
+	private static boolean literal(String s) {
+		return s != null && !s.isEmpty() && !s.contains("${");
+	}
+
+	private static String join(List<String> path) {
+		StringBuilder res = new StringBuilder();
+		for (String p : path) {
+			if (res.length() > 0) {
+				res.append('/');
+			}
+			res.append(p);
+		}
+		return res.toString();
+	}
+}
@@ -0,0 +1,236 @@
+/*
+ * Copyright (c) 2026 The mvn2nix-maven-plugin authors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.nixos.mvn2nix;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.json.Json;
+import javax.json.JsonArray;
+import javax.json.JsonArrayBuilder;
+import javax.json.JsonException;
+import javax.json.JsonObject;
+import javax.json.JsonReader;
+import javax.json.JsonValue;
+
+import org.eclipse.aether.artifact.Artifact;
+import org.eclipse.aether.artifact.DefaultArtifact;
+import org.eclipse.aether.graph.Dependency;
+import org.eclipse.aether.graph.Exclusion;
+
+/**
+ * The artifact entries of a previously generated
+ * <code>project-info.json</code>, indexed by coordinates.
+ *
+ * Each entry records the artifact's descriptor dependencies along with its
+ * URL and checksum, which is everything needed to both re-emit it and
+ * continue the walk past it without going to the network. Entries for
+ * snapshots are not indexed, since they may have changed since the file
+ * was written.
+ *
+ * Sharded output is read from the shards its index refers to. Entries
+ * may also be read from a {@link Journal}.
+ */
+final class PreviousOutput
+{
+	private final Map<String, JsonObject> entries;
+
+	private final AtomicInteger reused = new AtomicInteger();
+
+	private PreviousOutput(Map<String, JsonObject> entries) {
+		this.entries = entries;
+	}
+
+	/**
+	 * Reads the entries of <code>file</code>.
+	 */
+	public static PreviousOutput load(File file) throws IOException {
+		JsonObject doc = read(file);
+		Map<String, JsonObject> entries =
+			new HashMap<String, JsonObject>();
+		index(doc, entries);
+
+		Set<String> files = new HashSet<String>();
+		try {
+			JsonObject shards = doc.getJsonObject("shards");
+			if (shards != null) {
+				for (String groupId : shards.keySet()) {
+					files.add(shards.getString(groupId));
+				}
+			}
+		} catch (ClassCastException e) {
+			throw new IOException("Parsing " + file, e);
+		}
+		for (String name : files) {
+			index(read(new File(file.getAbsoluteFile().getParentFile(),
+					name)),
+				entries);
+		}
+		return new PreviousOutput(entries);
+	}
+
+	/**
+	 * The entries of <code>previous</code>, which may be null, and
+	 * those recorded in <code>journal</code>. A torn last line is
+	 * ignored.
+	 */
+	public static PreviousOutput withJournal(PreviousOutput previous,
+		File journal) throws IOException {
+		Map<String, JsonObject> entries =
+			new HashMap<String, JsonObject>();
+		if (previous != null) {
+			entries.putAll(previous.entries);
+		}
+		JsonArrayBuilder deps = Json.createArrayBuilder();
+		try (BufferedReader in = Files.newBufferedReader(
+				journal.toPath(),
+				StandardCharsets.UTF_8)) {
+			for (String line = in.readLine(); line != null;
+					line = in.readLine()) {
+				try (JsonReader reader = Json.createReader(
+						new StringReader(line))) {
+					deps.add(reader.readObject());
+				} catch (JsonException | ClassCastException e) {
+					/* Cut short by a crash */
+					break;
+				}
+			}
+		}
+		index(Json.createObjectBuilder()
+				.add("dependencies", deps)
+				.build(),
+			entries);
+		return new PreviousOutput(entries);
+	}
+
+	private static JsonObject read(File file) throws IOException {
+		try (InputStream in = new FileInputStream(file);
+			JsonReader reader = Json.createReader(in)) {
+			return reader.readObject();
+		} catch (JsonException | ClassCastException e) {
+			throw new IOException("Parsing " + file, e);
+		}
+	}
+
+	private static void index(JsonObject doc,
+		Map<String, JsonObject> entries) {
+		JsonArray deps = doc.getJsonArray("dependencies");
+		if (deps == null) {
+			return;
+		}
+		for (JsonObject entry : deps.getValuesAs(JsonObject.class)) {
+			if (entry.containsKey("unresolved-version")) {
+				continue;
+			}
+			Artifact art = toArtifact(entry);
+			if (art.isSnapshot()) {
+				continue;
+			}
+			entries.put(key(art), entry);
+		}
+	}
+
+	private static String key(Artifact art) {
+		return art.getGroupId() + ':' + art.getArtifactId() + ':' +
+			art.getExtension() + ':' + art.getClassifier() + ':' +
+			art.getVersion();
+	}
+
+	private static Artifact toArtifact(JsonObject obj) {
+		return new DefaultArtifact(obj.getString("groupId"),
+			obj.getString("artifactId"),
+			obj.getString("classifier", ""),
+			obj.getString("extension", "jar"),
+			obj.getString("version"));
+	}
+
+	/**
+	 * Returns the recorded entry for <code>art</code>, or
+	 * <code>null</code> if it has to be resolved afresh.
+	 */
+	public JsonObject get(Artifact art) {
+		return entries.get(key(art));
+	}
+
+	/**
+	 * Notes that an entry has been carried over into the new output.
+	 */
+	public void markReused() {
+		reused.incrementAndGet();
+	}
+
+	/**
+	 * The descriptor dependencies recorded in <code>entry</code>.
+	 */
+	public static List<Dependency> getDependencies(JsonObject entry) {
+		List<Dependency> res = new ArrayList<Dependency>();
+		JsonArray deps = entry.getJsonArray("dependencies");
+		if (deps == null) {
+			return res;
+		}
+		for (JsonObject dep : deps.getValuesAs(JsonObject.class)) {
+			List<Exclusion> excls = new ArrayList<Exclusion>();
+			JsonArray exclArray = dep.getJsonArray("exclusions");
+			if (exclArray != null) {
+				for (JsonObject excl :
+					exclArray.getValuesAs(JsonObject.class)) {
+					excls.add(new Exclusion(
+						excl.getString("groupId"),
+						excl.getString("artifactId"),
+						excl.getString("classifier", ""),
+						excl.getString("extension", "")));
+				}
+			}
+			JsonValue optional = dep.get("optional");
+			res.add(new Dependency(toArtifact(dep),
+				dep.getString("scope", ""),
+				new Boolean(optional == JsonValue.TRUE),
+				excls));
+		}
+		return res;
+	}
+
+	/** Number of indexed entries */
+	public int size() {
+		return entries.size();
+	}
+
+	/** Number of entries carried over into the new output */
+	public int getReused() {
+		return reused.get();
+	}
+}
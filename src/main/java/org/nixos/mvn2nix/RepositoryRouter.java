@@ -0,0 +1,208 @@
+/*
+ * Copyright (c) 2026 The mvn2nix-maven-plugin authors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.nixos.mvn2nix;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.aether.repository.RemoteRepository;
+
+/**
+ * Remembers which remote repository serves which groupId, so that the
+ * repositories of a multi-repository build can be asked in a better order
+ * than the configured one.
+ *
+ * An artifact's repositories are ordered with the one that last served
+ * its groupId, or failing that the closest enclosing groupId, first.
+ * Repositories that were passed over for a repository later in the list
+ * are recorded as missing the groupId and are left out, for as long as
+ * the router lives. Callers should retry with all repositories if the
+ * order given doesn't find an artifact.
+ *
+ * Routes, but not misses, can be saved to and loaded from a file.
+ * Repositories are told apart by both id and URL.
+ */
+final class RepositoryRouter
+{
+	static final String FILE_NAME = "routes.txt";
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private final ConcurrentMap<String, String> routes =
+		new ConcurrentHashMap<String, String>();
+
+	private final Set<String> misses = Collections.newSetFromMap(
+		new ConcurrentHashMap<String, Boolean>());
+
+	private final AtomicLong routed = new AtomicLong();
+
+	private final AtomicLong skipped = new AtomicLong();
+
+	static String key(RemoteRepository repo) {
+		return repo.getId() + '@' + repo.getUrl();
+	}
+
+	private String route(String groupId) {
+		String g = groupId;
+		while (true) {
+			String repo = routes.get(g);
+			if (repo != null) {
+				return repo;
+			}
+			int dot = g.lastIndexOf('.');
+			if (dot < 0) {
+				return null;
+			}
+			g = g.substring(0, dot);
+		}
+	}
+
+	/**
+	 * <code>repos</code> in the order they should be asked for an
+	 * artifact of <code>groupId</code>, without those known to miss it.
+	 */
+	public List<RemoteRepository> order(String groupId,
+		List<RemoteRepository> repos) {
+		String first = route(groupId);
+		List<RemoteRepository> res =
+			new ArrayList<RemoteRepository>(repos.size());
+		if (first != null) {
+			for (RemoteRepository repo : repos) {
+				if (key(repo).equals(first)) {
+					res.add(repo);
+					routed.incrementAndGet();
+					break;
+				}
+			}
+		}
+		for (RemoteRepository repo : repos) {
+			if (res.contains(repo)) {
+				continue;
+			}
+			if (misses.contains(key(repo) + ' ' + groupId)) {
+				skipped.incrementAndGet();
+				continue;
+			}
+			res.add(repo);
+		}
+		return res.isEmpty() ? repos : res;
+	}
+
+	/**
+	 * Records that an artifact of <code>groupId</code> was served by
+	 * <code>served</code> after asking <code>tried</code> in order.
+	 */
+	public void learn(String groupId, List<RemoteRepository> tried,
+		RemoteRepository served) {
+		routes.put(groupId, key(served));
+		for (RemoteRepository repo : tried) {
+			if (repo.equals(served)) {
+				break;
+			}
+			misses.add(key(repo) + ' ' + groupId);
+		}
+	}
+
+	/** Number of orderings that put a known route first */
+	public long getRouted() {
+		return routed.get();
+	}
+
+	/** Number of times a repository was left out as a known miss */
+	public long getSkipped() {
+		return skipped.get();
+	}
+
+	public int size() {
+		return routes.size();
+	}
+
+	/**
+	 * Adds the routes saved in <code>dir</code>, if any.
+	 */
+	public void load(File dir) throws IOException {
+		File file = new File(dir, FILE_NAME);
+		if (!file.isFile()) {
+			return;
+		}
+		try (BufferedReader in = new BufferedReader(
+				new InputStreamReader(new FileInputStream(file),
+					UTF8))) {
+			String line;
+			while ((line = in.readLine()) != null) {
+				int tab = line.indexOf('\t');
+				if (tab > 0) {
+					routes.putIfAbsent(line.substring(0, tab),
+						line.substring(tab + 1));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Saves all routes to <code>dir</code>, replacing what was saved
+	 * there before.
+	 */
+	public void save(File dir) throws IOException {
+		dir.mkdirs();
+		File tmp = File.createTempFile(FILE_NAME, ".tmp", dir);
+		try {
+			try (Writer out = new BufferedWriter(new OutputStreamWriter(
+					new FileOutputStream(tmp), UTF8))) {
+				for (Map.Entry<String, String> e :
+						new TreeMap<String, String>(routes)
+							.entrySet()) {
+					out.write(e.getKey());
+					out.write('\t');
+					out.write(e.getValue());
+					out.write('\n');
+				}
+			}
+			Files.move(tmp.toPath(),
+				new File(dir, FILE_NAME).toPath(),
+				StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			tmp.delete();
+		}
+	}
+}
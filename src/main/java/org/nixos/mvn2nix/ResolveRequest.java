@@ -0,0 +1,270 @@
+/*
+ * Copyright (c) 2026 The mvn2nix-maven-plugin authors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.nixos.mvn2nix;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import javax.json.Json;
+import javax.json.JsonArray;
+import javax.json.JsonException;
+import javax.json.JsonObject;
+import javax.json.JsonString;
+import javax.json.JsonValue;
+
+import org.eclipse.aether.RepositorySystem;
+import org.eclipse.aether.RepositorySystemSession;
+import org.eclipse.aether.artifact.Artifact;
+import org.eclipse.aether.artifact.DefaultArtifact;
+import org.eclipse.aether.graph.Dependency;
+import org.eclipse.aether.repository.RemoteRepository;
+
+/**
+ * A request to the resolution server, one line of JSON such as
+ *
+ * <pre>
+ * {"token": "...",
+ *  "roots": ["org.example:app:1.0", "org.example:lib:jar:tests:1.0"],
+ *  "repositories": [{"id": "internal", "url": "https://nexus.example/"}],
+ *  "project": "org.example:app:pom:1.0"}
+ * </pre>
+ *
+ * The token is the one the server wrote to its token file when it
+ * started, which only the user running it can read. Roots are given as
+ * groupId:artifactId[:extension[:classifier]]:version and resolved in
+ * compile scope. The repositories are searched besides the server's own,
+ * without credentials unless a mirror stands in for them, and the project
+ * names the top-level entry of the answer; both may be left out. <code>{"token": "...", "shutdown": true}</code> stops the
+ * server.
+ */
+final class ResolveRequest
+{
+	/* Describes the answer when the request doesn't name a project */
+	static final String DEFAULT_PROJECT = "org.nixos.mvn2nix:request:pom:0";
+
+	/** Longest request line accepted, in characters */
+	static final int MAX_LENGTH = 1 << 20;
+
+	final String token;
+
+	final Artifact project;
+
+	final List<Dependency> roots;
+
+	final List<RemoteRepository> repositories;
+
+	final boolean shutdown;
+
+	private ResolveRequest(String token,
+		Artifact project,
+		List<Dependency> roots,
+		List<RemoteRepository> repositories,
+		boolean shutdown) {
+		this.token = token;
+		this.project = project;
+		this.roots = roots;
+		this.repositories = repositories;
+		this.shutdown = shutdown;
+	}
+
+	/**
+	 * Parses a request, throwing <code>IllegalArgumentException</code>
+	 * with a message fit for the client if it isn't valid.
+	 */
+	static ResolveRequest parse(String line) {
+		if (line == null || line.trim().isEmpty()) {
+			throw new IllegalArgumentException("Empty request");
+		}
+		JsonObject req;
+		try {
+			req = Json.createReader(new StringReader(line)).readObject();
+		} catch (JsonException e) {
+			throw new IllegalArgumentException(
+				"Request is not a JSON object: " + e.getMessage());
+		}
+		try {
+			String token = req.getString("token", null);
+			if (req.getBoolean("shutdown", false)) {
+				return new ResolveRequest(token,
+					null,
+					Collections.<Dependency>emptyList(),
+					Collections.<RemoteRepository>emptyList(),
+					true);
+			}
+			JsonArray rootsJson = req.getJsonArray("roots");
+			if (rootsJson == null || rootsJson.isEmpty()) {
+				throw new IllegalArgumentException(
+					"Request has no roots");
+			}
+			List<Dependency> roots = new ArrayList<Dependency>();
+			for (JsonValue v : rootsJson) {
+				roots.add(new Dependency(artifact(v), "compile"));
+			}
+			List<RemoteRepository> repos =
+				new ArrayList<RemoteRepository>();
+			JsonArray reposJson = req.getJsonArray("repositories");
+			if (reposJson != null) {
+				for (JsonValue v : reposJson) {
+					repos.add(repository(v));
+				}
+			}
+			Artifact project = new DefaultArtifact(
+				req.getString("project", DEFAULT_PROJECT));
+			return new ResolveRequest(token,
+				project,
+				roots,
+				repos,
+				false);
+		} catch (ClassCastException e) {
+			throw new IllegalArgumentException(
+				"Unexpected type in request: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Reads a request line from <code>in</code>, or returns null at the
+	 * end of input. Lines longer than <code>MAX_LENGTH</code> are
+	 * rejected with an <code>IllegalArgumentException</code> once that
+	 * much has been read, rather than buffered.
+	 */
+	static String readLine(Reader in) throws IOException {
+		StringBuilder line = new StringBuilder();
+		int c;
+		while ((c = in.read()) != -1 && c != '\n') {
+			if (line.length() == MAX_LENGTH) {
+				throw new IllegalArgumentException(
+					"Request longer than " + MAX_LENGTH +
+					" characters");
+			}
+			line.append((char) c);
+		}
+		if (c == -1 && line.length() == 0) {
+			return null;
+		}
+		int end = line.length();
+		if (end > 0 && line.charAt(end - 1) == '\r') {
+			line.setLength(end - 1);
+		}
+		return line.toString();
+	}
+
+	/**
+	 * The repositories of the request with the mirrors and proxies of
+	 * <code>session</code> applied. Credentials are looked up by id,
+	 * which the client picks, so only repositories replaced by a mirror
+	 * keep theirs: a client naming one of the server's repositories
+	 * with a url of its own mustn't be sent its credentials.
+	 */
+	List<RemoteRepository> resolutionRepositories(RepositorySystem system,
+		RepositorySystemSession session) {
+		List<RemoteRepository> res = new ArrayList<RemoteRepository>();
+		for (RemoteRepository repo : system.newResolutionRepositories(
+				session,
+				repositories)) {
+			if (repo.getMirroredRepositories().isEmpty() &&
+				repo.getAuthentication() != null) {
+				repo = new RemoteRepository.Builder(repo)
+					.setAuthentication(null)
+					.build();
+			}
+			res.add(repo);
+		}
+		return res;
+	}
+
+	/** Whether the request carries <code>expected</code> as its token */
+	boolean hasToken(String expected) {
+		/* Compared in constant time, so as not to give it away */
+		return token != null && MessageDigest.isEqual(
+			token.getBytes(StandardCharsets.UTF_8),
+			expected.getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Writes a new random token to <code>file</code>, readable and
+	 * writable by its owner only, and returns it.
+	 */
+	static String writeToken(File file) throws IOException {
+		byte[] bytes = new byte[32];
+		new SecureRandom().nextBytes(bytes);
+		StringBuilder token = new StringBuilder();
+		for (byte b : bytes) {
+			token.append(String.format("%02x", b & 0xff));
+		}
+		Path path = file.getAbsoluteFile().toPath();
+		Files.createDirectories(path.getParent());
+		Files.deleteIfExists(path);
+		try {
+			Files.createFile(path, PosixFilePermissions.asFileAttribute(
+				PosixFilePermissions.fromString("rw-------")));
+		} catch (UnsupportedOperationException e) {
+			/* Not a POSIX file system */
+			Files.createFile(path);
+			file.setReadable(false, false);
+			file.setWritable(false, false);
+			file.setReadable(true, true);
+			file.setWritable(true, true);
+		}
+		try (OutputStream out = Files.newOutputStream(path)) {
+			out.write(token.toString().getBytes(
+				StandardCharsets.UTF_8));
+		}
+		return token.toString();
+	}
+
+	private static Artifact artifact(JsonValue v) {
+		if (v.getValueType() != JsonValue.ValueType.STRING) {
+			throw new IllegalArgumentException(
+				"Roots must be strings, got " + v);
+		}
+		/* Rejects malformed coordinates itself */
+		return new DefaultArtifact(((JsonString) v).getString());
+	}
+
+	private static RemoteRepository repository(JsonValue v) {
+		if (v.getValueType() != JsonValue.ValueType.OBJECT) {
+			throw new IllegalArgumentException(
+				"Repositories must be objects, got " + v);
+		}
+		JsonObject repo = (JsonObject) v;
+		String id = repo.getString("id", null);
+		String url = repo.getString("url", null);
+		if (id == null || url == null) {
+			throw new IllegalArgumentException(
+				"Repositories need an id and a url, got " + v);
+		}
+		return new RemoteRepository.Builder(id, "default", url).build();
+	}
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2026 The mvn2nix-maven-plugin authors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.nixos.mvn2nix;
+
+import org.eclipse.aether.DefaultRepositorySystemSession;
+import org.eclipse.aether.DefaultSessionData;
+import org.eclipse.aether.RepositorySystemSession;
+
+/**
+ * When to try a failed request again: up to a number of retries, waiting
+ * a backoff before the first and twice as long before each further one,
+ * but never longer than {@link #MAX_BACKOFF_MILLIS}.
+ */
+final class Retries
+{
+	/** Longest wait before a retry */
+	static final long MAX_BACKOFF_MILLIS = 30000;
+
+	private final int retries;
+
+	private final long backoffMillis;
+
+	/**
+	 * Up to <code>retries</code> retries, the first after
+	 * <code>backoffMillis</code>.
+	 */
+	Retries(int retries, long backoffMillis) {
+		this.retries = retries;
+		this.backoffMillis = backoffMillis;
+	}
+
+	/** Whether attempt, counting from 0, may be followed by another */
+	boolean allowed(int attempt) {
+		return attempt < retries;
+	}
+
+	/** How long to wait after attempt before the next one */
+	long delayMillis(int attempt) {
+		long delay = Math.max(0, backoffMillis);
+		for (int i = 0; i < attempt && delay < MAX_BACKOFF_MILLIS; i++) {
+			delay <<= 1;
+		}
+		return Math.min(delay, MAX_BACKOFF_MILLIS);
+	}
+
+	/** Waits after attempt before the next one */
+	void pause(int attempt) throws InterruptedException {
+		Thread.sleep(delayMillis(attempt));
+	}
+
+	/**
+	 * A session like <code>session</code> but with fresh data. Aether
+	 * remembers in the session data which files it failed to download,
+	 * and won't try them again with the same data.
+	 */
+	static RepositorySystemSession fresh(RepositorySystemSession session) {
+		return new DefaultRepositorySystemSession(session)
+			.setData(new DefaultSessionData());
+	}
+}
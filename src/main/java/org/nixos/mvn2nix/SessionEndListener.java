@@ -0,0 +1,181 @@
+/*
+ * Copyright (c) 2026 The mvn2nix-maven-plugin authors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.nixos.mvn2nix;
+
+import org.apache.maven.execution.ExecutionEvent;
+import org.apache.maven.execution.ExecutionListener;
+
+/**
+ * An execution listener that runs a task when the Maven session ends,
+ * passing all events on to another listener.
+ *
+ * Maven looks up the listener of the execution request for every event,
+ * so one installed by a mojo sees the end of the session even if a
+ * later module fails or is skipped. The task runs once, after the
+ * other listener has had the event.
+ */
+final class SessionEndListener implements ExecutionListener
+{
+	private final ExecutionListener next;
+
+	private Runnable task;
+
+	/**
+	 * A listener passing events on to <code>next</code>, which may be
+	 * null, and running <code>task</code> when the session ends.
+	 */
+	SessionEndListener(ExecutionListener next, Runnable task) {
+		this.next = next;
+		this.task = task;
+	}
+
+	@Override
+	public void projectDiscoveryStarted(ExecutionEvent event) {
+		if (next != null) {
+			next.projectDiscoveryStarted(event);
+		}
+	}
+
+	@Override
+	public void sessionStarted(ExecutionEvent event) {
+		if (next != null) {
+			next.sessionStarted(event);
+		}
+	}
+
+	@Override
+	public void sessionEnded(ExecutionEvent event) {
+		try {
+			if (next != null) {
+				next.sessionEnded(event);
+			}
+		} finally {
+			Runnable t;
+			synchronized (this) {
+				t = task;
+				task = null;
+			}
+			if (t != null) {
+				t.run();
+			}
+		}
+	}
+
+	@Override
+	public void projectSkipped(ExecutionEvent event) {
+		if (next != null) {
+			next.projectSkipped(event);
+		}
+	}
+
+	@Override
+	public void projectStarted(ExecutionEvent event) {
+		if (next != null) {
+			next.projectStarted(event);
+		}
+	}
+
+	@Override
+	public void projectSucceeded(ExecutionEvent event) {
+		if (next != null) {
+			next.projectSucceeded(event);
+		}
+	}
+
+	@Override
+	public void projectFailed(ExecutionEvent event) {
+		if (next != null) {
+			next.projectFailed(event);
+		}
+	}
+
+	@Override
+	public void mojoSkipped(ExecutionEvent event) {
+		if (next != null) {
+			next.mojoSkipped(event);
+		}
+	}
+
+	@Override
+	public void mojoStarted(ExecutionEvent event) {
+		if (next != null) {
+			next.mojoStarted(event);
+		}
+	}
+
+	@Override
+	public void mojoSucceeded(ExecutionEvent event) {
+		if (next != null) {
+			next.mojoSucceeded(event);
+		}
+	}
+
+	@Override
+	public void mojoFailed(ExecutionEvent event) {
+		if (next != null) {
+			next.mojoFailed(event);
+		}
+	}
+
+	@Override
+	public void forkStarted(ExecutionEvent event) {
+		if (next != null) {
+			next.forkStarted(event);
+		}
+	}
+
+	@Override
+	public void forkSucceeded(ExecutionEvent event) {
+		if (next != null) {
+			next.forkSucceeded(event);
+		}
+	}
+
+	@Override
+	public void forkFailed(ExecutionEvent event) {
+		if (next != null) {
+			next.forkFailed(event);
+		}
+	}
+
+	@Override
+	public void forkedProjectStarted(ExecutionEvent event) {
+		if (next != null) {
+			next.forkedProjectStarted(event);
+		}
+	}
+
+	@Override
+	public void forkedProjectSucceeded(ExecutionEvent event) {
+		if (next != null) {
+			next.forkedProjectSucceeded(event);
+		}
+	}
+
+	@Override
+	public void forkedProjectFailed(ExecutionEvent event) {
+		if (next != null) {
+			next.forkedProjectFailed(event);
+		}
+	}
+}
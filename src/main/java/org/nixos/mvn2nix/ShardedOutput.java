@@ -0,0 +1,189 @@
+/*
+ * Copyright (c) 2026 The mvn2nix-maven-plugin authors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.nixos.mvn2nix;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.json.Json;
+import javax.json.stream.JsonGenerator;
+
+/**
+ * Writes the artifact entries into a fixed number of shard files instead
+ * of one big <code>dependencies</code> array, so that a consumer only has
+ * to parse the shards holding the groupIds it needs.
+ *
+ * Each groupId goes to the shard picked by its hash; {@link #getFiles}
+ * maps every groupId written to its shard, for the index. A shard is a
+ * JSON object with a single <code>dependencies</code> array of entries in
+ * the usual format. Shards are written as entries arrive, into temporary
+ * files which replace the previous shards in {@link #finish}.
+ */
+final class ShardedOutput implements Closeable
+{
+	private static final String SUFFIX = ".json";
+
+	private static final String TMP_SUFFIX = ".tmp";
+
+	private final File dir;
+
+	private final JsonGenerator[] gens;
+
+	private final String[] names;
+
+	/* groupId to the number of its shard */
+	private final Map<String, Integer> groups =
+		new TreeMap<String, Integer>();
+
+	private boolean finished = false;
+
+	/**
+	 * Shards for the index <code>index</code>, <code>count</code> of
+	 * them.
+	 */
+	ShardedOutput(File index, int count) throws IOException {
+		if (count <= 0) {
+			throw new IllegalArgumentException(
+				"Need at least one shard");
+		}
+		dir = directory(index);
+		Files.createDirectories(dir.toPath());
+		gens = new JsonGenerator[count];
+		names = new String[count];
+		String format = "%0" + String.valueOf(count - 1).length() +
+			"d" + SUFFIX;
+		for (int i = 0; i < count; i++) {
+			names[i] = String.format(format, i);
+		}
+	}
+
+	/**
+	 * The directory holding the shards of <code>index</code>.
+	 */
+	static File directory(File index) {
+		String name = index.getName();
+		if (name.endsWith(SUFFIX)) {
+			name = name.substring(0, name.length() - SUFFIX.length());
+		}
+		return new File(index.getAbsoluteFile().getParentFile(),
+			name + "-shards");
+	}
+
+	private int shard(String groupId) {
+		return (groupId.hashCode() & Integer.MAX_VALUE) % gens.length;
+	}
+
+	/**
+	 * The generator of the shard holding <code>groupId</code>, inside
+	 * its <code>dependencies</code> array. Writers must synchronize on
+	 * it.
+	 */
+	public synchronized JsonGenerator generator(String groupId)
+		throws IOException {
+		if (finished) {
+			throw new IllegalStateException("Shards already finished");
+		}
+		int i = shard(groupId);
+		groups.put(groupId, i);
+		if (gens[i] == null) {
+			gens[i] = Json.createGenerator(new FileOutputStream(
+				new File(dir, names[i] + TMP_SUFFIX)));
+			gens[i].writeStartObject();
+			gens[i].writeStartArray("dependencies");
+		}
+		return gens[i];
+	}
+
+	/**
+	 * Completes the shards written and puts them in place of the
+	 * previous ones. Must be called once every entry has been written.
+	 */
+	public synchronized void finish() throws IOException {
+		finished = true;
+		for (int i = 0; i < gens.length; i++) {
+			if (gens[i] != null) {
+				synchronized (gens[i]) {
+					gens[i].writeEnd();
+					gens[i].writeEnd();
+					gens[i].close();
+				}
+			}
+		}
+		File[] old = dir.listFiles();
+		if (old != null) {
+			for (File f : old) {
+				if (f.getName().endsWith(SUFFIX)) {
+					Files.delete(f.toPath());
+				}
+			}
+		}
+		for (int i = 0; i < gens.length; i++) {
+			if (gens[i] != null) {
+				Files.move(new File(dir, names[i] + TMP_SUFFIX)
+						.toPath(),
+					new File(dir, names[i]).toPath(),
+					StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+				gens[i] = null;
+			}
+		}
+	}
+
+	/**
+	 * Every groupId written, in order, mapped to the path of its shard
+	 * relative to the index.
+	 */
+	public synchronized Map<String, String> getFiles() {
+		Map<String, String> res = new TreeMap<String, String>();
+		for (Map.Entry<String, Integer> e : groups.entrySet()) {
+			res.put(e.getKey(),
+				dir.getName() + '/' + names[e.getValue()]);
+		}
+		return res;
+	}
+
+	/**
+	 * Discards whatever wasn't finished.
+	 */
+	@Override
+	public synchronized void close() {
+		finished = true;
+		for (int i = 0; i < gens.length; i++) {
+			if (gens[i] != null) {
+				try {
+					gens[i].close();
+				} catch (RuntimeException e) {
+					/* Incomplete anyway */
+				}
+				new File(dir, names[i] + TMP_SUFFIX).delete();
+				gens[i] = null;
+			}
+		}
+	}
+}
@@ -0,0 +1,253 @@
+/*
+ * Copyright (c) 2026 The mvn2nix-maven-plugin authors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.nixos.mvn2nix;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.aether.RepositorySystem;
+import org.eclipse.aether.RepositorySystemSession;
+import org.eclipse.aether.artifact.Artifact;
+import org.eclipse.aether.metadata.DefaultMetadata;
+import org.eclipse.aether.metadata.Metadata;
+import org.eclipse.aether.repository.RemoteRepository;
+import org.eclipse.aether.resolution.MetadataRequest;
+import org.eclipse.aether.resolution.MetadataResult;
+import org.eclipse.aether.transfer.MetadataNotFoundException;
+import org.eclipse.aether.transfer.MetadataTransferException;
+
+/**
+ * Resolves the <code>maven-metadata.xml</code> of snapshots once per
+ * groupId:artifactId:baseVersion, ahead of the version resolution that
+ * needs it.
+ *
+ * The jar, pom, test-jar etc. of a snapshot all share one metadata file.
+ * Prefetching asks for the metadata of a whole batch of snapshots in one
+ * request, which Aether downloads in parallel and revalidates according
+ * to each repository's update policy. It makes the same requests as
+ * Aether's own version resolution, so the <code>resolveVersion</code>
+ * calls that follow find the metadata already checked in this session.
+ *
+ * When a metadata file was downloaded afresh, its checksum is taken from
+ * the downloaded copy instead of being asked for again.
+ *
+ * Metadata that failed to transfer for any reason but being missing is
+ * asked for again, with a session with fresh data, as the session
+ * remembers failures for the rest of the build.
+ */
+final class SnapshotMetadata
+{
+	static final String FILE_NAME = "maven-metadata.xml";
+
+	private final RepositorySystem repoSystem;
+
+	private final RepositorySystemSession session;
+
+	private final List<RemoteRepository> repos;
+
+	private final ConcurrentMap<String, FutureTask<Void>> batches =
+		new ConcurrentHashMap<String, FutureTask<Void>>();
+
+	/* SHA-1s of metadata downloaded in this session, by repository */
+	private final ConcurrentMap<String, String> fresh =
+		new ConcurrentHashMap<String, String>();
+
+	private final AtomicLong requested = new AtomicLong();
+
+	private final AtomicLong batched = new AtomicLong();
+
+	private final Retries retries;
+
+	private final AtomicLong retried = new AtomicLong();
+
+	SnapshotMetadata(RepositorySystem repoSystem,
+		RepositorySystemSession session,
+		List<RemoteRepository> repos,
+		int retries,
+		long backoffMillis) {
+		this.repoSystem = repoSystem;
+		this.session = session;
+		this.repos = repos;
+		this.retries = new Retries(retries, backoffMillis);
+	}
+
+	private static String key(Artifact art) {
+		return art.getGroupId() + ':' + art.getArtifactId() + ':' +
+			art.getBaseVersion();
+	}
+
+	/**
+	 * Identifies the metadata of <code>art</code> in
+	 * <code>repo</code>.
+	 */
+	static String key(RemoteRepository repo, Artifact art) {
+		return repo.getId() + '@' + repo.getUrl() + ' ' + key(art);
+	}
+
+	/**
+	 * Resolves the metadata of every snapshot in <code>arts</code> that
+	 * hasn't been asked for yet, in one batch, and waits for any of them
+	 * that another thread is already resolving.
+	 */
+	public void prefetch(Collection<Artifact> arts) {
+		final Map<String, Artifact> mine =
+			new ConcurrentHashMap<String, Artifact>();
+		List<FutureTask<Void>> others = new ArrayList<FutureTask<Void>>();
+		FutureTask<Void> batch = new FutureTask<Void>(
+			new Callable<Void>() {
+				@Override
+				public Void call() {
+					resolve(mine.values());
+					return null;
+				}
+			});
+		for (Artifact art : arts) {
+			if (!art.isSnapshot()) {
+				continue;
+			}
+			String key = key(art);
+			FutureTask<Void> other = batches.putIfAbsent(key, batch);
+			if (other == null) {
+				mine.put(key, art);
+			} else if (other != batch) {
+				others.add(other);
+			}
+		}
+		if (!mine.isEmpty()) {
+			batch.run();
+		}
+		for (FutureTask<Void> other : others) {
+			try {
+				other.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			} catch (ExecutionException e) {
+				/* Version resolution will find out for itself */
+			}
+		}
+	}
+
+	private void resolve(Collection<Artifact> arts) {
+		List<MetadataRequest> reqs = new ArrayList<MetadataRequest>();
+		for (Artifact art : arts) {
+			Metadata m = new DefaultMetadata(art.getGroupId(),
+				art.getArtifactId(),
+				art.getBaseVersion(),
+				FILE_NAME,
+				Metadata.Nature.SNAPSHOT);
+			for (RemoteRepository repo : repos) {
+				MetadataRequest req =
+					new MetadataRequest(m, repo, null);
+				req.setDeleteLocalCopyIfMissing(true);
+				req.setFavorLocalRepository(true);
+				reqs.add(req);
+			}
+		}
+		requested.addAndGet(arts.size());
+		batched.incrementAndGet();
+		RepositorySystemSession attemptSession = session;
+		for (int attempt = 0; ; attempt++) {
+			List<MetadataRequest> failed =
+				new ArrayList<MetadataRequest>();
+			for (MetadataResult res : repoSystem.resolveMetadata(
+					attemptSession, reqs)) {
+				if (isTransient(res.getException())) {
+					failed.add(res.getRequest());
+				} else {
+					record(res);
+				}
+			}
+			if (failed.isEmpty() || !retries.allowed(attempt)) {
+				return;
+			}
+			retried.addAndGet(failed.size());
+			try {
+				retries.pause(attempt);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+			reqs = failed;
+			attemptSession = Retries.fresh(session);
+		}
+	}
+
+	/* Whether e is a failed transfer of a file that exists */
+	static boolean isTransient(Exception e) {
+		return e instanceof MetadataTransferException &&
+			!(e instanceof MetadataNotFoundException);
+	}
+
+	/* Remembers the SHA-1 of metadata that was downloaded afresh */
+	private void record(MetadataResult res) {
+		RemoteRepository repo = res.getRequest().getRepository();
+		File file = res.isResolved() ?
+			res.getMetadata().getFile() : null;
+		if (!res.isUpdated() || repo == null || file == null) {
+			return;
+		}
+		Metadata m = res.getMetadata();
+		try {
+			fresh.put(repo.getId() + '@' + repo.getUrl() + ' ' +
+				m.getGroupId() + ':' + m.getArtifactId() +
+				':' + m.getVersion(),
+				LocalChecksums.digest(file));
+		} catch (IOException e) {
+			/* Ask the repository instead */
+		}
+	}
+
+	/**
+	 * The SHA-1 of the metadata of <code>art</code> in
+	 * <code>repo</code>, if it was downloaded in this session.
+	 */
+	public String getFreshSha1(RemoteRepository repo, Artifact art) {
+		return fresh.get(key(repo, art));
+	}
+
+	/** Number of groupId:artifactId:baseVersions resolved */
+	public long getRequested() {
+		return requested.get();
+	}
+
+	/** Number of metadata requests retried after a failed transfer */
+	public long getRetried() {
+		return retried.get();
+	}
+
+	/** Number of batches they were resolved in */
+	public long getBatches() {
+		return batched.get();
+	}
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright (c) 2026 The mvn2nix-maven-plugin authors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.nixos.mvn2nix;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Collects single-line string values under string keys and hands them
+ * back in key order, spilling sorted runs to temporary files once more
+ * than a fixed number of values are buffered so that memory use stays
+ * bounded however many values are added.
+ *
+ * Neither keys nor values may contain line breaks, and keys may not
+ * contain tabs.
+ */
+final class SortedSpool implements Closeable
+{
+	/**
+	 * Receives the spooled values in order.
+	 */
+	interface Sink
+	{
+		void accept(String value) throws IOException;
+	}
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private static final Comparator<String> LINE_ORDER =
+		new Comparator<String>() {
+			@Override
+			public int compare(String a, String b) {
+				int c = key(a).compareTo(key(b));
+				return c != 0 ? c : a.compareTo(b);
+			}
+		};
+
+	private final int maxBuffered;
+
+	private final List<String> buffer = new ArrayList<String>();
+
+	private final List<File> runs = new ArrayList<File>();
+
+	SortedSpool(int maxBuffered) {
+		this.maxBuffered = Math.max(1, maxBuffered);
+	}
+
+	private static String key(String line) {
+		return line.substring(0, line.indexOf('\t'));
+	}
+
+	private static String value(String line) {
+		return line.substring(line.indexOf('\t') + 1);
+	}
+
+	public synchronized void add(String key, String value)
+		throws IOException {
+		buffer.add(key + '\t' + value);
+		if (buffer.size() >= maxBuffered) {
+			spill();
+		}
+	}
+
+	private void spill() throws IOException {
+		Collections.sort(buffer, LINE_ORDER);
+		File run = File.createTempFile("mvn2nix-sort-", ".run");
+		run.deleteOnExit();
+		runs.add(run);
+		try (Writer w = new BufferedWriter(new OutputStreamWriter(
+				new FileOutputStream(run), UTF8))) {
+			for (String line : buffer) {
+				w.write(line);
+				w.write('\n');
+			}
+		}
+		buffer.clear();
+	}
+
+	private static final class Run
+	{
+		final BufferedReader reader;
+		String head;
+
+		Run(BufferedReader reader) throws IOException {
+			this.reader = reader;
+			this.head = reader.readLine();
+		}
+	}
+
+	/**
+	 * Passes every value added so far to <code>sink</code>, ordered by
+	 * key.
+	 */
+	public synchronized void drain(Sink sink) throws IOException {
+		Collections.sort(buffer, LINE_ORDER);
+		if (runs.isEmpty()) {
+			for (String line : buffer) {
+				sink.accept(value(line));
+			}
+			buffer.clear();
+			return;
+		}
+
+		if (!buffer.isEmpty()) {
+			spill();
+		}
+		PriorityQueue<Run> heads = new PriorityQueue<Run>(runs.size(),
+			new Comparator<Run>() {
+				@Override
+				public int compare(Run a, Run b) {
+					return LINE_ORDER.compare(a.head, b.head);
+				}
+			});
+		List<Run> open = new ArrayList<Run>();
+		try {
+			for (File f : runs) {
+				Run r = new Run(new BufferedReader(
+					new InputStreamReader(
+						new FileInputStream(f),
+						UTF8)));
+				open.add(r);
+				if (r.head != null) {
+					heads.add(r);
+				}
+			}
+			while (!heads.isEmpty()) {
+				Run r = heads.poll();
+				sink.accept(value(r.head));
+				r.head = r.reader.readLine();
+				if (r.head != null) {
+					heads.add(r);
+				}
+			}
+		} finally {
+			for (Run r : open) {
+				r.reader.close();
+			}
+		}
+	}
+
+	@Override
+	public synchronized void close() {
+		buffer.clear();
+		for (File f : runs) {
+			f.delete();
+		}
+		runs.clear();
+	}
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright (c) 2026 The mvn2nix-maven-plugin authors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.nixos.mvn2nix;
+
+import java.io.Closeable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.maven.plugin.MojoExecutionException;
+
+import org.eclipse.aether.RepositorySystemSession;
+import org.eclipse.aether.repository.RemoteRepository;
+import org.eclipse.aether.spi.connector.layout.RepositoryLayout;
+import org.eclipse.aether.spi.connector.layout.RepositoryLayoutProvider;
+import org.eclipse.aether.spi.connector.transport.Transporter;
+import org.eclipse.aether.spi.connector.transport.TransporterProvider;
+import org.eclipse.aether.transfer.NoRepositoryLayoutException;
+import org.eclipse.aether.transfer.NoTransporterException;
+
+/**
+ * Keeps one <code>RepositoryLayout</code> and one <code>Transporter</code>
+ * open per <code>RemoteRepository</code> for as long as the pool lives,
+ * so that checksum downloads reuse the transporter's connections instead
+ * of setting up a new client for every artifact.
+ *
+ * Transporters are shared between threads; closing the pool closes all
+ * of them. With a {@link ConcurrencyLimiter}, their requests are kept
+ * within the limit of the repository's host.
+ */
+final class TransporterPool implements Closeable
+{
+	private final RepositorySystemSession session;
+
+	private final RepositoryLayoutProvider layoutProvider;
+
+	private final TransporterProvider transporterProvider;
+
+	private final ConcurrentMap<RemoteRepository, RepositoryLayout> layouts =
+		new ConcurrentHashMap<RemoteRepository, RepositoryLayout>();
+
+	private final ConcurrentMap<RemoteRepository, Transporter> transporters =
+		new ConcurrentHashMap<RemoteRepository, Transporter>();
+
+	private final Metrics metrics;
+
+	private final ConcurrencyLimiter limiter;
+
+	private final AtomicInteger created = new AtomicInteger();
+
+	private final AtomicInteger reused = new AtomicInteger();
+
+	TransporterPool(RepositorySystemSession session,
+		RepositoryLayoutProvider layoutProvider,
+		TransporterProvider transporterProvider,
+		ConcurrencyLimiter limiter,
+		Metrics metrics) {
+		this.session = session;
+		this.limiter = limiter;
+		this.metrics = metrics;
+		this.layoutProvider = layoutProvider;
+		this.transporterProvider = transporterProvider;
+	}
+
+	public RepositoryLayout getLayout(RemoteRepository repo)
+		throws MojoExecutionException {
+		RepositoryLayout layout = layouts.get(repo);
+		if (layout != null) {
+			return layout;
+		}
+		long start = metrics.start();
+		try {
+			layout = layoutProvider.newRepositoryLayout(session, repo);
+		} catch (NoRepositoryLayoutException e) {
+			throw new MojoExecutionException(
+				"Getting repository layout",
+				e);
+		} finally {
+			metrics.phase("connect", start);
+		}
+		RepositoryLayout old = layouts.putIfAbsent(repo, layout);
+		return old == null ? layout : old;
+	}
+
+	public Transporter getTransporter(RemoteRepository repo)
+		throws MojoExecutionException {
+		Transporter transport = transporters.get(repo);
+		if (transport != null) {
+			reused.incrementAndGet();
+			return transport;
+		}
+		/* Transporters are expensive, so make sure only one is ever
+		 * opened per repository.
+		 */
+		synchronized (transporters) {
+			transport = transporters.get(repo);
+			if (transport != null) {
+				reused.incrementAndGet();
+				return transport;
+			}
+			long start = metrics.start();
+			try {
+				transport = transporterProvider.newTransporter(
+					session,
+					repo);
+			} catch (NoTransporterException e) {
+				throw new MojoExecutionException(
+					"No transporter for " + repo.getId(),
+					e);
+			} finally {
+				metrics.phase("connect", start);
+			}
+			if (limiter != null) {
+				transport = limiter.limit(transport,
+					repo.getUrl());
+			}
+			transporters.put(repo, transport);
+			created.incrementAndGet();
+			return transport;
+		}
+	}
+
+	/** Number of transporters opened so far */
+	public int getCreated() {
+		return created.get();
+	}
+
+	/** Number of requests served by an already open transporter */
+	public int getReused() {
+		return reused.get();
+	}
+
+	@Override
+	public void close() {
+		synchronized (transporters) {
+			for (Transporter transport : transporters.values()) {
+				transport.close();
+			}
+			transporters.clear();
+		}
+	}
+}
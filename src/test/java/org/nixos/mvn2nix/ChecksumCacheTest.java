@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2026 The mvn2nix-maven-plugin authors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.nixos.mvn2nix;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class ChecksumCacheTest {
+
+	private static final String URL =
+		"https://repo.maven.apache.org/maven2/org/assertj/assertj-core/3.16.1/assertj-core-3.16.1.jar";
+
+	private static final String SHA1 =
+		"f5b6a2a2b6ef1ee1b4a4b8ac5bc9e6d5b7a6fbb8";
+
+	@TempDir
+	File dir;
+
+	@Test
+	public void shouldPersistEntriesAcrossReopen() throws Exception {
+		try (ChecksumCache cache = ChecksumCache.open(dir)) {
+			assertNull(cache.get(URL));
+			cache.put(URL, SHA1);
+			assertEquals(SHA1, cache.get(URL));
+		}
+		try (ChecksumCache cache = ChecksumCache.open(dir)) {
+			assertEquals(1, cache.size());
+			assertEquals(SHA1, cache.get(URL));
+		}
+	}
+
+	@Test
+	public void shouldDropTruncatedTrailingRecord() throws Exception {
+		try (ChecksumCache cache = ChecksumCache.open(dir)) {
+			cache.put(URL, SHA1);
+			cache.put(URL + ".asc", SHA1);
+		}
+		File f = new File(dir, ChecksumCache.FILE_NAME);
+		try (RandomAccessFile raf = new RandomAccessFile(f, "rw")) {
+			raf.setLength(raf.length() - 10);
+		}
+		try (ChecksumCache cache = ChecksumCache.open(dir)) {
+			assertEquals(1, cache.size());
+			assertEquals(SHA1, cache.get(URL));
+			cache.put(URL + ".asc", SHA1);
+		}
+		try (ChecksumCache cache = ChecksumCache.open(dir)) {
+			assertEquals(2, cache.size());
+		}
+	}
+
+	@Test
+	public void shouldNotPersistOverlongKeys() throws Exception {
+		StringBuilder url = new StringBuilder(URL);
+		while (url.length() <= ChecksumCache.MAX_KEY_LENGTH) {
+			url.append("/x");
+		}
+		String longUrl = url.toString();
+		try (ChecksumCache cache = ChecksumCache.open(dir)) {
+			cache.put(URL, SHA1);
+			cache.put(longUrl, SHA1);
+			cache.put(URL + ".asc", SHA1);
+			assertEquals(SHA1, cache.get(longUrl));
+		}
+		try (ChecksumCache cache = ChecksumCache.open(dir)) {
+			assertEquals(2, cache.size());
+			assertNull(cache.get(longUrl));
+			assertEquals(SHA1, cache.get(URL + ".asc"));
+		}
+	}
+
+	@Test
+	public void shouldKeepSha256Separately() throws Exception {
+		String sha256 = "ba7816bf8f01cfea414140de5dae2223" +
+			"b00361a396177a9cb410ff61f20015ad";
+		try (ChecksumCache cache = ChecksumCache.openSha256(dir)) {
+			cache.put(URL, SHA1);
+			cache.put(URL, sha256);
+		}
+		try (ChecksumCache cache = ChecksumCache.openSha256(dir);
+			ChecksumCache sha1 = ChecksumCache.open(dir)) {
+			assertEquals(sha256, cache.get(URL));
+			assertNull(sha1.get(URL));
+		}
+	}
+
+	@Test
+	public void shouldShareOpenCacheWithinJvm() throws Exception {
+		try (ChecksumCache first = ChecksumCache.open(dir)) {
+			try (ChecksumCache second = ChecksumCache.open(dir)) {
+				assertSame(first, second);
+				second.put(URL, SHA1);
+			}
+			first.put(URL + ".asc", SHA1);
+			assertEquals(SHA1, first.get(URL));
+		}
+		try (ChecksumCache cache = ChecksumCache.open(dir)) {
+			assertEquals(2, cache.size());
+		}
+	}
+}
@@ -0,0 +1,219 @@
+/*
+ * Copyright (c) 2026 The mvn2nix-maven-plugin authors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.nixos.mvn2nix;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+import org.junit.jupiter.api.Test;
+
+import org.eclipse.aether.artifact.Artifact;
+import org.eclipse.aether.artifact.DefaultArtifact;
+import org.eclipse.aether.repository.RemoteRepository;
+import org.eclipse.aether.spi.connector.transport.GetTask;
+import org.eclipse.aether.spi.connector.transport.PeekTask;
+import org.eclipse.aether.spi.connector.transport.PutTask;
+import org.eclipse.aether.spi.connector.transport.Transporter;
+import org.eclipse.aether.transfer.ArtifactNotFoundException;
+import org.eclipse.aether.transfer.ArtifactTransferException;
+
+public class ConcurrencyLimiterTest {
+
+	private static final String URL = "https://repo.example/maven2/";
+
+	private static final long SECOND = 1000000000L;
+
+	private final List<String> changes = new ArrayList<String>();
+
+	private ConcurrencyLimiter limiter(int initial, int max) {
+		return new ConcurrencyLimiter(initial, max,
+			new ConcurrencyLimiter.Listener() {
+			@Override
+			public void limitChanged(String host,
+				int previous,
+				int limit) {
+				synchronized (changes) {
+					changes.add(host + " " + previous + "->" +
+						limit);
+				}
+			}
+		});
+	}
+
+	private static void succeed(ConcurrencyLimiter.Limit limit, int n,
+		long nanos) throws InterruptedException {
+		for (int i = 0; i < n; i++) {
+			limit.acquire();
+			limit.release(nanos, false);
+		}
+	}
+
+	@Test
+	public void shouldKeyLimitsByHost() {
+		assertEquals("repo1.maven.org", ConcurrencyLimiter.host(
+			"https://repo1.maven.org/maven2/"));
+		assertEquals("127.0.0.1:8801", ConcurrencyLimiter.host(
+			"http://127.0.0.1:8801/"));
+		assertEquals("file:", ConcurrencyLimiter.host(
+			"file:///tmp/repo"));
+		ConcurrencyLimiter limiter = limiter(2, 8);
+		assertTrue(limiter.get("https://a.example/one/") ==
+			limiter.get("https://a.example/two/"));
+		assertFalse(limiter.get("https://a.example/") ==
+			limiter.get("https://b.example/"));
+	}
+
+	@Test
+	public void shouldRaiseTheLimitWhileRequestsDoWell()
+		throws Exception {
+		ConcurrencyLimiter.Limit limit = limiter(2, 8).get(URL);
+		succeed(limit, 20, SECOND / 100);
+		assertTrue(limit.getLimit() > 2);
+		assertTrue(changes.contains("repo.example 2->3"));
+
+		succeed(limit, 1000, SECOND / 100);
+		assertEquals(8, limit.getLimit());
+	}
+
+	@Test
+	public void shouldHalveTheLimitOnceForABurstOfFailures()
+		throws Exception {
+		ConcurrencyLimiter.Limit limit = limiter(8, 8).get(URL);
+		succeed(limit, 5, 10 * SECOND);
+		limit.acquire();
+		limit.acquire();
+		limit.release(SECOND, true);
+		limit.release(SECOND, true);
+		assertEquals(4, limit.getLimit());
+		assertEquals(2, limit.getOverloads());
+		assertTrue(changes.contains("repo.example 8->4"));
+	}
+
+	@Test
+	public void shouldLowerTheLimitAsLatencyClimbs() throws Exception {
+		ConcurrencyLimiter.Limit limit = limiter(8, 8).get(URL);
+		succeed(limit, 5, SECOND / 1000);
+		assertEquals(8, limit.getLimit());
+		succeed(limit, 5, SECOND / 10);
+		assertTrue(limit.getLimit() < 8);
+		assertEquals(0, limit.getOverloads());
+	}
+
+	@Test
+	public void shouldHoldBackRequestsOverTheLimit() throws Exception {
+		final ConcurrencyLimiter.Limit limit = limiter(1, 1).get(URL);
+		limit.acquire();
+		final AtomicBoolean entered = new AtomicBoolean();
+		Thread t = new Thread() {
+			@Override
+			public void run() {
+				try {
+					limit.acquire();
+					entered.set(true);
+					limit.release(0, false);
+				} catch (InterruptedException e) {
+				}
+			}
+		};
+		t.start();
+		Thread.sleep(100);
+		assertFalse(entered.get());
+		limit.release(0, false);
+		t.join(5000);
+		assertTrue(entered.get());
+		assertEquals(1, limit.getPeak());
+	}
+
+	private static final class FailingTransporter implements Transporter {
+		final Exception error;
+
+		FailingTransporter(Exception error) {
+			this.error = error;
+		}
+
+		@Override
+		public int classify(Throwable e) {
+			return e instanceof FileNotFoundException ?
+				ERROR_NOT_FOUND : ERROR_OTHER;
+		}
+
+		@Override
+		public void get(GetTask task) throws Exception {
+			throw error;
+		}
+
+		@Override
+		public void peek(PeekTask task) throws Exception {
+			throw error;
+		}
+
+		@Override
+		public void put(PutTask task) throws Exception {
+			throw error;
+		}
+
+		@Override
+		public void close() {
+		}
+	}
+
+	@Test
+	public void shouldOnlyCountFailuresOfFilesThatExist()
+		throws Exception {
+		ConcurrencyLimiter limiter = limiter(4, 4);
+		Transporter missing = limiter.limit(new FailingTransporter(
+			new FileNotFoundException()), URL);
+		try {
+			missing.get(new GetTask(URI.create("a.sha1")));
+			fail("Got a missing file");
+		} catch (FileNotFoundException expected) {
+		}
+		assertEquals(0, limiter.get(URL).getOverloads());
+
+		Transporter broken = limiter.limit(new FailingTransporter(
+			new IOException("503")), URL);
+		try {
+			broken.get(new GetTask(URI.create("a.sha1")));
+			fail("Got a file from a failing host");
+		} catch (IOException expected) {
+		}
+		assertEquals(1, limiter.get(URL).getOverloads());
+		assertEquals(2, limiter.get(URL).getLimit());
+		assertEquals(1, limiter.getLimits().size());
+
+		Artifact art = new DefaultArtifact("org.example:a:1.0");
+		RemoteRepository repo = new RemoteRepository.Builder("repo",
+			"default", URL).build();
+		assertFalse(ConcurrencyLimiter.isOverload(
+			new ArtifactNotFoundException(art, repo)));
+		assertTrue(ConcurrencyLimiter.isOverload(
+			new ArtifactTransferException(art, repo, "503")));
+	}
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright (c) 2026 The mvn2nix-maven-plugin authors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.nixos.mvn2nix;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import org.eclipse.aether.artifact.DefaultArtifact;
+import org.eclipse.aether.graph.Dependency;
+import org.eclipse.aether.graph.Exclusion;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import org.junit.jupiter.api.Test;
+
+public class CoordinateInternerTest {
+
+	private static Dependency dep(String scope, Exclusion... excls) {
+		return new Dependency(
+			new DefaultArtifact("org.assertj:assertj-core:jar:3.16.1"),
+			scope,
+			false,
+			new HashSet<Exclusion>(Arrays.asList(excls)));
+	}
+
+	private static final Exclusion A = new Exclusion("g", "a", "", "");
+
+	private static final Exclusion B = new Exclusion("g", "b", "", "");
+
+	@Test
+	public void shouldRoundTripDependencies() {
+		CoordinateInterner interner = new CoordinateInterner();
+		Dependency dep = dep("runtime", A, B);
+		assertEquals(dep, interner.materialize(interner.intern(dep)));
+	}
+
+	@Test
+	public void shouldShareKeysForEqualDependencies() {
+		CoordinateInterner interner = new CoordinateInterner();
+		assertEquals(interner.intern(dep("compile", A, B)),
+			interner.intern(dep("compile", B, A)));
+		assertNotEquals(interner.intern(dep("compile", A)),
+			interner.intern(dep("compile", B)));
+		assertNotEquals(interner.intern(dep("compile", A)),
+			interner.intern(dep("runtime", A)));
+		assertEquals(1, interner.artifactCount());
+	}
+
+	@Test
+	public void shouldTrackLongsInHashSet() {
+		LongHashSet set = new LongHashSet();
+		for (long i = 0; i < 1000; i++) {
+			assertEquals(true, set.add(i * 31));
+		}
+		for (long i = 0; i < 1000; i++) {
+			assertEquals(false, set.add(i * 31));
+			assertEquals(true, set.contains(i * 31));
+		}
+		assertEquals(false, set.contains(1));
+		assertEquals(1000, set.size());
+	}
+}
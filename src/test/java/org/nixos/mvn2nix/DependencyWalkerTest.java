@@ -0,0 +1,194 @@
+/*
+ * Copyright (c) 2026 The mvn2nix-maven-plugin authors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.nixos.mvn2nix;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.json.Json;
+import javax.json.stream.JsonGenerator;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.eclipse.aether.artifact.DefaultArtifact;
+import org.eclipse.aether.graph.Dependency;
+import org.eclipse.aether.graph.Exclusion;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.fail;
+import org.junit.jupiter.api.Test;
+
+public class DependencyWalkerTest {
+
+	private static Dependency dep(String coords, String scope,
+		Exclusion... excls) {
+		return new Dependency(new DefaultArtifact(coords), scope, false,
+			new HashSet<Exclusion>(Arrays.asList(excls)));
+	}
+
+	private static final Exclusion A = new Exclusion("g", "a", "", "");
+
+	private static final Exclusion B = new Exclusion("g", "b", "", "");
+
+	@Test
+	public void shouldSkipSubsumedExclusionSets() throws Exception {
+		final List<Dependency> visited =
+			Collections.synchronizedList(new ArrayList<Dependency>());
+		DependencyWalker walker = new DependencyWalker(1, 1,
+			new DependencyWalker.Visitor() {
+				@Override
+				public void visit(Dependency dep,
+					DependencyWalker w) {
+					visited.add(dep);
+				}
+			});
+		walker.add(dep("g:x:1", "compile", A));
+		walker.add(dep("g:x:1", "runtime", A));
+		walker.add(dep("g:x:1", "compile", A, B));
+		walker.add(dep("g:x:1", "compile", B));
+		walker.add(dep("g:x:1", "compile"));
+		walker.add(dep("g:x:1", "test", B));
+		walker.add(dep("g:y:1", "compile", A, B));
+		walker.await();
+		assertEquals(4, visited.size());
+		assertEquals(4, walker.getVisits());
+		assertEquals(1, walker.getSubsumed());
+	}
+
+	/* Visits g:n:1 for n below 500, where n depends on 2n + 1 and
+	 * 2n + 2 and on n / 3, forking one task per visit that writes its
+	 * entry to output the way the mojo does.
+	 */
+	private static Set<String> walk(int threads, int forkThreads,
+		final AtomicInteger forked, StringWriter output)
+		throws Exception {
+		final Set<String> visited = Collections.newSetFromMap(
+			new ConcurrentHashMap<String, Boolean>());
+		final EntryWriter entries = new EntryWriter(null, false, true);
+		DependencyWalker walker = new DependencyWalker(threads,
+			forkThreads,
+			new DependencyWalker.Visitor() {
+				@Override
+				public void visit(final Dependency dep,
+					DependencyWalker w) {
+					final String id =
+						dep.getArtifact().getArtifactId();
+					int n = Integer.parseInt(id);
+					for (int next : new int[] { 2 * n + 1,
+						2 * n + 2, n / 3 }) {
+						if (next < 500) {
+							w.add(dep("g:" + next + ":1",
+								"compile"));
+						}
+					}
+					final long position = entries.reserve();
+					w.fork(new DependencyWalker.Task() {
+						@Override
+						public void run() throws
+							MojoExecutionException {
+							visited.add(id);
+							forked.incrementAndGet();
+							write(entries, dep, position);
+						}
+					});
+				}
+			});
+		walker.add(dep("g:0:1", "compile"));
+		walker.await();
+		JsonGenerator gen = Json.createGenerator(output);
+		gen.writeStartArray();
+		entries.finish(gen);
+		gen.writeEnd();
+		gen.close();
+		entries.close();
+		return visited;
+	}
+
+	private static void write(EntryWriter entries, final Dependency dep,
+		long position) throws MojoExecutionException {
+		try {
+			entries.write(EntryWriter.key(dep.getArtifact(),
+					dep.getArtifact().getVersion()),
+				position,
+				new EntryWriter.Body() {
+					@Override
+					public void write(JsonGenerator gen) {
+						gen.write("artifactId", dep
+							.getArtifact()
+							.getArtifactId());
+						gen.write("scope",
+							dep.getScope());
+					}
+				});
+		} catch (IOException e) {
+			throw new MojoExecutionException("Writing", e);
+		}
+	}
+
+	@Test
+	public void shouldVisitSameGraphInParallel() throws Exception {
+		AtomicInteger serialForks = new AtomicInteger();
+		StringWriter serialOutput = new StringWriter();
+		Set<String> serial = walk(1, 1, serialForks, serialOutput);
+		assertEquals(500, serial.size());
+		assertEquals(500, serialForks.get());
+		for (int i = 0; i < 5; i++) {
+			AtomicInteger forks = new AtomicInteger();
+			StringWriter output = new StringWriter();
+			assertEquals(serial, walk(8, 4, forks, output));
+			assertEquals(500, forks.get());
+			assertEquals(serialOutput.toString(), output.toString());
+		}
+	}
+
+	@Test
+	public void shouldRethrowFirstFailure() throws Exception {
+		DependencyWalker walker = new DependencyWalker(4, 2,
+			new DependencyWalker.Visitor() {
+				@Override
+				public void visit(Dependency dep,
+					DependencyWalker w)
+					throws MojoExecutionException {
+					w.fork(new DependencyWalker.Task() {
+						@Override
+						public void run()
+							throws MojoExecutionException {
+							throw new MojoExecutionException(
+								"broken");
+						}
+					});
+				}
+			});
+		walker.add(dep("g:x:1", "compile"));
+		try {
+			walker.await();
+			fail("Finished despite a failed task");
+		} catch (MojoExecutionException expected) {
+			assertEquals("broken", expected.getMessage());
+		}
+	}
+}
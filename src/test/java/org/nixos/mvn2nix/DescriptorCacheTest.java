@@ -0,0 +1,136 @@
+/*
+ * Copyright (c) 2026 The mvn2nix-maven-plugin authors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.nixos.mvn2nix;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import org.eclipse.aether.DefaultRepositorySystemSession;
+import org.eclipse.aether.RepositorySystemSession;
+import org.eclipse.aether.artifact.DefaultArtifact;
+import org.eclipse.aether.repository.RemoteRepository;
+import org.eclipse.aether.resolution.ArtifactDescriptorResult;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class DescriptorCacheTest {
+
+	@TempDir
+	File dir;
+
+	private final MojoHarness harness = new MojoHarness();
+
+	private RemoteRepository synthetic;
+
+	private RemoteRepository empty;
+
+	private List<String> roots;
+
+	@BeforeEach
+	public void generate() throws Exception {
+		SyntheticRepository repo = new SyntheticRepository();
+		repo.artifacts = 20;
+		repo.depth = 2;
+		File remote = new File(dir, "remote");
+		roots = repo.write(remote);
+		synthetic = new RemoteRepository.Builder("synthetic", "default",
+			remote.toURI().toString()).build();
+		File other = new File(dir, "empty");
+		other.mkdirs();
+		empty = new RemoteRepository.Builder("empty", "default",
+			other.toURI().toString()).build();
+	}
+
+	private DescriptorCache cache(RepositorySystemSession session,
+		List<RemoteRepository> repos,
+		BoundedCache<String, ArtifactDescriptorResult> shared) {
+		return new DescriptorCache(harness.getSystem(),
+			session,
+			repos,
+			shared,
+			null,
+			false,
+			0,
+			0,
+			new Metrics());
+	}
+
+	@Test
+	public void shouldShareUnderRepositoriesOfEachRead()
+		throws Exception {
+		RepositorySystemSession session =
+			harness.newSession(new File(dir, "local"));
+		BoundedCache<String, ArtifactDescriptorResult> shared =
+			new BoundedCache<String, ArtifactDescriptorResult>(100);
+
+		List<RemoteRepository> growing =
+			new CopyOnWriteArrayList<RemoteRepository>();
+		growing.add(synthetic);
+		DescriptorCache first = cache(session, growing, shared);
+		first.read(new DefaultArtifact(roots.get(0)));
+		growing.add(empty);
+		first.read(new DefaultArtifact(roots.get(1)));
+
+		List<RemoteRepository> both =
+			new CopyOnWriteArrayList<RemoteRepository>();
+		both.add(synthetic);
+		both.add(empty);
+		DescriptorCache second = cache(session, both, shared);
+		second.read(new DefaultArtifact(roots.get(0)));
+		assertEquals(0, second.getSharedHits());
+		second.read(new DefaultArtifact(roots.get(1)));
+		assertEquals(1, second.getSharedHits());
+	}
+
+	@Test
+	public void shouldOnlyShareBetweenSameProperties() throws Exception {
+		File local = new File(dir, "local");
+		BoundedCache<String, ArtifactDescriptorResult> shared =
+			new BoundedCache<String, ArtifactDescriptorResult>(100);
+		List<RemoteRepository> repos =
+			new CopyOnWriteArrayList<RemoteRepository>();
+		repos.add(synthetic);
+
+		DefaultRepositorySystemSession session =
+			harness.newSession(local);
+		session.setUserProperty("flavour", "a");
+		cache(session, repos, shared).read(
+			new DefaultArtifact(roots.get(0)));
+
+		DefaultRepositorySystemSession other =
+			harness.newSession(local);
+		other.setUserProperty("flavour", "b");
+		DescriptorCache different = cache(other, repos, shared);
+		different.read(new DefaultArtifact(roots.get(0)));
+		assertEquals(0, different.getSharedHits());
+
+		DefaultRepositorySystemSession same =
+			harness.newSession(local);
+		same.setUserProperty("flavour", "a");
+		DescriptorCache equal = cache(same, repos, shared);
+		equal.read(new DefaultArtifact(roots.get(0)));
+		assertEquals(1, equal.getSharedHits());
+	}
+}
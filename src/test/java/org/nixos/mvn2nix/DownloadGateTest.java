@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2026 The mvn2nix-maven-plugin authors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.nixos.mvn2nix;
+
+import java.io.File;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.eclipse.aether.DefaultRepositorySystemSession;
+import org.eclipse.aether.transfer.TransferEvent;
+import org.eclipse.aether.transfer.TransferResource;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+public class DownloadGateTest {
+
+	private static TransferEvent event(TransferResource res) {
+		return new TransferEvent.Builder(
+			new DefaultRepositorySystemSession(), res).build();
+	}
+
+	private static TransferResource resource() {
+		return new TransferResource("https://repo.example/",
+			"org/apache/apache/3/apache-3.pom",
+			new File("/tmp/repo/org/apache/apache/3/apache-3.pom"),
+			null);
+	}
+
+	@Test
+	public void shouldHoldBackSameDownload() throws Exception {
+		final DownloadGate gate = new DownloadGate(null);
+		TransferResource first = resource();
+		gate.transferInitiated(event(first));
+
+		final TransferResource second = resource();
+		final CountDownLatch started = new CountDownLatch(1);
+		Thread t = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					gate.transferInitiated(event(second));
+					started.countDown();
+				} catch (Exception e) {
+					throw new RuntimeException(e);
+				}
+			}
+		});
+		t.start();
+		assertEquals(false, started.await(200, TimeUnit.MILLISECONDS));
+
+		gate.transferSucceeded(event(first));
+		assertTrue(started.await(5, TimeUnit.SECONDS));
+		gate.transferFailed(event(second));
+		t.join();
+
+		gate.transferInitiated(event(resource()));
+	}
+}
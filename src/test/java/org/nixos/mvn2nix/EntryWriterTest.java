@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) 2026 The mvn2nix-maven-plugin authors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.nixos.mvn2nix;
+
+import java.io.StringWriter;
+import javax.json.Json;
+import javax.json.JsonObject;
+import javax.json.stream.JsonGenerator;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import org.junit.jupiter.api.Test;
+
+public class EntryWriterTest {
+
+	private static String write(boolean sorted, boolean ordered)
+		throws Exception {
+		StringWriter buf = new StringWriter();
+		try (EntryWriter entries = new EntryWriter(null, sorted,
+				ordered)) {
+			for (final String name : new String[] { "b", "c", "a" }) {
+				entries.write(name, new EntryWriter.Body() {
+					@Override
+					public void write(JsonGenerator gen) {
+						gen.write("name", name);
+					}
+				});
+			}
+			try (JsonGenerator gen = Json.createGenerator(buf)) {
+				gen.writeStartArray();
+				entries.finish(gen);
+				gen.writeEnd();
+			}
+		}
+		return buf.toString();
+	}
+
+	@Test
+	public void shouldSpoolUntilFinished() throws Exception {
+		assertEquals("[{\"name\":\"b\"},{\"name\":\"c\"},{\"name\":\"a\"}]",
+			write(false, false));
+		assertEquals("[{\"name\":\"a\"},{\"name\":\"b\"},{\"name\":\"c\"}]",
+			write(true, false));
+		assertEquals("[{\"name\":\"a\"},{\"name\":\"b\"},{\"name\":\"c\"}]",
+			write(false, true));
+	}
+
+	private static String reuse(boolean sorted, boolean ordered)
+		throws Exception {
+		JsonObject entry = Json.createObjectBuilder()
+			.add("artifactId", "x")
+			.add("dependencies", Json.createArrayBuilder()
+				.add(Json.createObjectBuilder()
+					.add("artifactId", "b"))
+				.add(Json.createObjectBuilder()
+					.add("artifactId", "a")))
+			.build();
+		StringWriter buf = new StringWriter();
+		try (EntryWriter entries = new EntryWriter(null, sorted,
+				ordered)) {
+			entries.write("x", entry);
+			try (JsonGenerator gen = Json.createGenerator(buf)) {
+				gen.writeStartArray();
+				entries.finish(gen);
+				gen.writeEnd();
+			}
+		}
+		return buf.toString();
+	}
+
+	@Test
+	public void shouldOnlyCanonicalizeSortedEntries() throws Exception {
+		assertEquals("[{\"artifactId\":\"x\",\"dependencies\":" +
+			"[{\"artifactId\":\"b\"},{\"artifactId\":\"a\"}]}]",
+			reuse(false, true));
+		assertEquals("[{\"artifactId\":\"x\",\"dependencies\":" +
+			"[{\"artifactId\":\"a\"},{\"artifactId\":\"b\"}]}]",
+			reuse(true, false));
+	}
+
+	@Test
+	public void shouldWriteInReservedOrder() throws Exception {
+		StringWriter buf = new StringWriter();
+		try (JsonGenerator gen = Json.createGenerator(buf)) {
+			gen.writeStartArray();
+			try (EntryWriter entries = new EntryWriter(gen, false)) {
+				long[] positions = { entries.reserve(),
+					entries.reserve(), entries.reserve() };
+				for (final int i : new int[] { 2, 0, 1 }) {
+					entries.write("k", positions[i],
+						new EntryWriter.Body() {
+							@Override
+							public void write(
+								JsonGenerator g) {
+								g.write("name",
+									"e" + i);
+							}
+						});
+				}
+				entries.finish(gen);
+			}
+			gen.writeEnd();
+		}
+		assertEquals("[{\"name\":\"e0\"},{\"name\":\"e1\"}," +
+			"{\"name\":\"e2\"}]", buf.toString());
+	}
+}
@@ -0,0 +1,284 @@
+/*
+ * Copyright (c) 2026 The mvn2nix-maven-plugin authors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.nixos.mvn2nix;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.eclipse.aether.spi.connector.transport.GetTask;
+import org.eclipse.aether.spi.connector.transport.PeekTask;
+import org.eclipse.aether.spi.connector.transport.PutTask;
+import org.eclipse.aether.spi.connector.transport.Transporter;
+
+public class HedgedFetcherTest {
+
+	private static final URI LOCATION =
+		URI.create("org/example/a/1.0/a-1.0.jar.sha1");
+
+	/* A stand-in repository answering every request after a delay,
+	 * failing the first few with a 503.
+	 */
+	private static final class Server implements HttpHandler {
+		final HttpServer http;
+		final String body;
+		final long delayMillis;
+		final int failures;
+		final AtomicInteger requests = new AtomicInteger();
+
+		Server(String body, long delayMillis, int failures)
+			throws IOException {
+			this.body = body;
+			this.delayMillis = delayMillis;
+			this.failures = failures;
+			http = HttpServer.create(
+				new InetSocketAddress("127.0.0.1", 0), 0);
+			http.createContext("/", this);
+			http.setExecutor(java.util.concurrent.Executors
+				.newCachedThreadPool());
+			http.start();
+		}
+
+		String url() {
+			return "http://127.0.0.1:" +
+				http.getAddress().getPort() + "/";
+		}
+
+		@Override
+		public void handle(HttpExchange ex) throws IOException {
+			int n = requests.incrementAndGet();
+			try {
+				Thread.sleep(delayMillis);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			byte[] data = body.getBytes(StandardCharsets.UTF_8);
+			int status = 200;
+			if (body.isEmpty()) {
+				status = 404;
+			} else if (n <= failures) {
+				status = 503;
+			}
+			ex.sendResponseHeaders(status,
+				status == 200 ? data.length : -1);
+			if (status == 200) {
+				OutputStream out = ex.getResponseBody();
+				out.write(data);
+				out.close();
+			}
+			ex.close();
+		}
+
+		void stop() {
+			http.stop(0);
+		}
+	}
+
+	/* Just enough of an HTTP transporter to fetch from a Server */
+	private static final class UrlTransporter implements Transporter {
+		final String base;
+
+		UrlTransporter(String base) {
+			this.base = base;
+		}
+
+		@Override
+		public int classify(Throwable error) {
+			return error instanceof FileNotFoundException ?
+				ERROR_NOT_FOUND : ERROR_OTHER;
+		}
+
+		@Override
+		public void get(GetTask task) throws Exception {
+			HttpURLConnection conn = (HttpURLConnection)
+				URI.create(base).resolve(task.getLocation())
+					.toURL().openConnection();
+			InputStream in = conn.getInputStream();
+			try {
+				OutputStream out = task.newOutputStream();
+				byte[] buf = new byte[4096];
+				for (int n; (n = in.read(buf)) >= 0; ) {
+					out.write(buf, 0, n);
+				}
+				out.close();
+			} finally {
+				in.close();
+			}
+		}
+
+		@Override
+		public void peek(PeekTask task) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void put(PutTask task) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void close() {
+		}
+	}
+
+	private Server primary;
+
+	private Server mirror;
+
+	@AfterEach
+	public void stop() {
+		if (primary != null) {
+			primary.stop();
+		}
+		if (mirror != null) {
+			mirror.stop();
+		}
+	}
+
+	private static String string(byte[] data) {
+		return new String(data, StandardCharsets.UTF_8);
+	}
+
+	private byte[] get(HedgedFetcher fetcher) throws Exception {
+		return fetcher.get(LOCATION,
+			new UrlTransporter(primary.url()),
+			primary.url(),
+			mirror != null ? new UrlTransporter(mirror.url()) : null,
+			mirror != null ? mirror.url() : null);
+	}
+
+	@Test
+	public void shouldNotHedgeFastRequests() throws Exception {
+		primary = new Server("primary", 0, 0);
+		mirror = new Server("mirror", 0, 0);
+		HedgedFetcher fetcher = new HedgedFetcher(0, 0, 0.95, 2000,
+			new Metrics());
+		try {
+			assertEquals("primary", string(get(fetcher)));
+		} finally {
+			fetcher.close();
+		}
+		assertEquals(0, fetcher.getHedged());
+		assertEquals(0, mirror.requests.get());
+	}
+
+	@Test
+	public void shouldTakeTheMirrorWhenThePrimaryStalls()
+		throws Exception {
+		primary = new Server("primary", 3000, 0);
+		mirror = new Server("mirror", 0, 0);
+		HedgedFetcher fetcher = new HedgedFetcher(0, 0, 0.95, 50,
+			new Metrics());
+		long start = System.nanoTime();
+		try {
+			assertEquals("mirror", string(get(fetcher)));
+		} finally {
+			fetcher.close();
+		}
+		assertTrue(System.nanoTime() - start < 2000000000L);
+		assertEquals(1, fetcher.getHedged());
+		assertEquals(1, fetcher.getHedgeWins());
+	}
+
+	@Test
+	public void shouldWaitForThePrimaryWhenTheMirrorFails()
+		throws Exception {
+		primary = new Server("primary", 1500, 0);
+		mirror = new Server("mirror", 0, 1);
+		HedgedFetcher fetcher = new HedgedFetcher(0, 0, 0.95, 50,
+			new Metrics());
+		try {
+			assertEquals("primary", string(get(fetcher)));
+		} finally {
+			fetcher.close();
+		}
+		assertEquals(1, fetcher.getHedged());
+		assertEquals(0, fetcher.getHedgeWins());
+	}
+
+	@Test
+	public void shouldRetryFailedTransfers() throws Exception {
+		primary = new Server("primary", 0, 2);
+		HedgedFetcher fetcher = new HedgedFetcher(2, 1, 0.95, 50,
+			new Metrics());
+		assertEquals("primary", string(get(fetcher)));
+		assertEquals(2, fetcher.getRetried());
+		assertEquals(3, primary.requests.get());
+	}
+
+	@Test
+	public void shouldGiveUpAfterTheLastRetry() throws Exception {
+		primary = new Server("primary", 0, 3);
+		HedgedFetcher fetcher = new HedgedFetcher(1, 1, 0.95, 50,
+			new Metrics());
+		try {
+			get(fetcher);
+			fail("Fetched from a failing repository");
+		} catch (IOException expected) {
+		}
+		assertEquals(2, primary.requests.get());
+	}
+
+	@Test
+	public void shouldNotRetryMissingFiles() throws Exception {
+		primary = new Server("", 0, 0);
+		HedgedFetcher fetcher = new HedgedFetcher(3, 1, 0.95, 50,
+			new Metrics());
+		try {
+			get(fetcher);
+			fail("Fetched a missing file");
+		} catch (FileNotFoundException expected) {
+		}
+		assertEquals(1, primary.requests.get());
+		assertEquals(0, fetcher.getRetried());
+	}
+
+	@Test
+	public void shouldHedgeAfterTheObservedLatency() throws Exception {
+		Metrics metrics = new Metrics();
+		HedgedFetcher fetcher = new HedgedFetcher(0, 0, 0.95, 5,
+			metrics);
+		String base = "http://repo.example/";
+		assertEquals(1000, fetcher.delayMillis(base));
+		for (int i = 0; i < 20; i++) {
+			metrics.request(base, metrics.start(), 0, false);
+		}
+		assertEquals(5, fetcher.delayMillis(base));
+	}
+}
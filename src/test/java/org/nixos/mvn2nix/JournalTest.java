@@ -0,0 +1,72 @@
+/*
+ * Copyright (c) 2026 The mvn2nix-maven-plugin authors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.nixos.mvn2nix;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import org.eclipse.aether.artifact.DefaultArtifact;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class JournalTest {
+
+	@TempDir
+	File dir;
+
+	private static String entry(String artifactId) {
+		return "{\"artifactId\":\"" + artifactId + "\"," +
+			"\"groupId\":\"org.example\",\"version\":\"1.0\"," +
+			"\"classifier\":\"\",\"extension\":\"jar\"," +
+			"\"dependencies\":[]}";
+	}
+
+	@Test
+	public void shouldDropTornLineOnReopen() throws Exception {
+		File file = Journal.file(new File(dir, "project-info.json"));
+		try (Journal journal = new Journal(file)) {
+			journal.append(entry("a"));
+			journal.append(entry("b"));
+		}
+		try (FileOutputStream out = new FileOutputStream(file, true)) {
+			out.write(entry("c").substring(0, 20)
+				.getBytes(StandardCharsets.UTF_8));
+		}
+
+		PreviousOutput read = PreviousOutput.withJournal(null, file);
+		assertEquals(2, read.size());
+
+		try (Journal journal = new Journal(file)) {
+			journal.append(entry("d"));
+		}
+		assertEquals(3, Files.readAllLines(file.toPath(),
+			StandardCharsets.UTF_8).size());
+		PreviousOutput resumed = PreviousOutput.withJournal(read, file);
+		assertEquals(3, resumed.size());
+		assertNotNull(resumed.get(
+			new DefaultArtifact("org.example:d:1.0")));
+	}
+}
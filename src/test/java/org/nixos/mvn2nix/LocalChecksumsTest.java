@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2026 The mvn2nix-maven-plugin authors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.nixos.mvn2nix;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class LocalChecksumsTest {
+
+	@TempDir
+	File dir;
+
+	@Test
+	public void shouldHashFileWithoutSidecar() throws Exception {
+		File jar = new File(dir, "a.jar");
+		Files.write(jar.toPath(), "abc".getBytes(StandardCharsets.UTF_8));
+		assertEquals("a9993e364706816aba3e25717850c26c9cd0d89d",
+			LocalChecksums.sha1(jar));
+	}
+
+	@Test
+	public void shouldComputeSeveralDigestsInOnePass() throws Exception {
+		File jar = new File(dir, "a.jar");
+		Files.write(jar.toPath(), "abc".getBytes(StandardCharsets.UTF_8));
+		String[] hashes = LocalChecksums.digest(jar, "SHA-1", "SHA-256");
+		assertEquals("a9993e364706816aba3e25717850c26c9cd0d89d",
+			hashes[0]);
+		assertEquals("ba7816bf8f01cfea414140de5dae2223" +
+			"b00361a396177a9cb410ff61f20015ad", hashes[1]);
+	}
+
+	@Test
+	public void shouldPreferSidecar() throws Exception {
+		File jar = new File(dir, "a.jar");
+		Files.write(jar.toPath(), "abc".getBytes(StandardCharsets.UTF_8));
+		Files.write(new File(dir, "a.jar.sha1").toPath(),
+			"0123456789abcdef0123456789abcdef01234567  a.jar\n"
+				.getBytes(StandardCharsets.UTF_8));
+		assertEquals("0123456789abcdef0123456789abcdef01234567",
+			LocalChecksums.sha1(jar));
+	}
+
+	@Test
+	public void shouldIgnoreMalformedSidecar() throws Exception {
+		File jar = new File(dir, "a.jar");
+		Files.write(jar.toPath(), "abc".getBytes(StandardCharsets.UTF_8));
+		Files.write(new File(dir, "a.jar.sha1").toPath(),
+			"<html>not found</html>\n<!-- padding padding padding -->"
+				.getBytes(StandardCharsets.UTF_8));
+		assertEquals("a9993e364706816aba3e25717850c26c9cd0d89d",
+			LocalChecksums.sha1(jar));
+	}
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2026 The mvn2nix-maven-plugin authors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.nixos.mvn2nix;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import javax.json.Json;
+import javax.json.JsonObject;
+import javax.json.JsonReader;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class MetricsTest {
+
+	private static long ago(long millis) {
+		return System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(millis);
+	}
+
+	@Test
+	public void shouldBucketLatencies() {
+		Metrics.Timer timer = new Metrics.Timer();
+		for (int i = 0; i < 98; i++) {
+			timer.record(TimeUnit.MILLISECONDS.toNanos(3));
+		}
+		timer.record(TimeUnit.MILLISECONDS.toNanos(100));
+		timer.record(TimeUnit.MILLISECONDS.toNanos(100));
+		assertEquals(4, timer.quantileBelow(0.5));
+		assertEquals(128, timer.quantileBelow(0.99));
+		assertEquals(100, timer.getCount());
+	}
+
+	@Test
+	public void shouldWriteReport(@TempDir Path dir) throws Exception {
+		Metrics metrics = new Metrics();
+		metrics.phase("fetchSha1", ago(5));
+		metrics.request("https://repo.example", ago(5), 40, false);
+		metrics.request("https://repo.example", ago(5), 0, true);
+		metrics.count("visits", 7);
+		File file = dir.resolve("metrics.json").toFile();
+		metrics.write(file);
+
+		try (JsonReader reader =
+			Json.createReader(new FileInputStream(file))) {
+			JsonObject report = reader.readObject();
+			assertEquals(40, report.getInt("bytes"));
+			assertEquals(7, report.getJsonObject("counts")
+				.getInt("visits"));
+			assertEquals(1, report.getJsonObject("phases")
+				.getJsonObject("fetchSha1").getInt("count"));
+			JsonObject repo = report.getJsonObject("repositories")
+				.getJsonObject("https://repo.example");
+			assertEquals(2, repo.getInt("count"));
+			assertEquals(1, repo.getInt("failures"));
+		}
+	}
+}
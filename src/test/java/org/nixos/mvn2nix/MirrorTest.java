@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2026 The mvn2nix-maven-plugin authors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.nixos.mvn2nix;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class MirrorTest {
+
+	private static final URI LOCATION =
+		URI.create("org/example/a/1.0/a-1.0.jar");
+
+	private static final String SHA1 =
+		"a9993e364706816aba3e25717850c26c9cd0d89d";
+
+	@TempDir
+	File dir;
+
+	private File write(File f, String contents) throws IOException {
+		Files.write(f.toPath(), contents.getBytes(StandardCharsets.UTF_8));
+		return f;
+	}
+
+	@Test
+	public void shouldCopyCheckedFilesWithSidecar() throws Exception {
+		Mirror mirror = new Mirror(new File(dir, "mirror"));
+		File local = write(new File(dir, "a.jar"), "abc");
+		assertFalse(mirror.contains(LOCATION, SHA1, true));
+
+		File f = mirror.copy(local, LOCATION, SHA1);
+		assertEquals(new File(dir, "mirror/" + LOCATION.getPath()), f);
+		assertEquals("abc", new String(Files.readAllBytes(f.toPath()),
+			StandardCharsets.UTF_8));
+		assertEquals(SHA1, LocalChecksums.readSidecar(
+			new File(f.getPath() + ".sha1")));
+		assertTrue(mirror.contains(LOCATION, SHA1, false));
+		assertEquals(2, f.getParentFile().list().length);
+	}
+
+	@Test
+	public void shouldRejectMismatchedDownloads() throws Exception {
+		Mirror mirror = new Mirror(new File(dir, "mirror"));
+		File tmp = write(mirror.newTempFile(LOCATION), "abd");
+		try {
+			mirror.commit(tmp, LOCATION, SHA1);
+			fail("Committed a mismatched file");
+		} catch (IOException expected) {
+		}
+		assertFalse(tmp.exists());
+		assertFalse(mirror.file(LOCATION).exists());
+
+		File good = write(mirror.newTempFile(LOCATION), "abc");
+		mirror.commit(good, LOCATION, SHA1);
+		assertEquals(1, mirror.getDownloaded());
+		assertFalse(mirror.contains(LOCATION, "0" + SHA1.substring(1),
+			false));
+	}
+
+	@Test
+	public void shouldStayInsideMirror() {
+		Mirror mirror = new Mirror(dir);
+		try {
+			mirror.file(URI.create("../../etc/passwd"));
+			fail("Accepted a path outside the mirror");
+		} catch (IOException expected) {
+		}
+	}
+}
@@ -0,0 +1,311 @@
+/*
+ * Copyright (c) 2026 The mvn2nix-maven-plugin authors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.nixos.mvn2nix;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.apache.maven.artifact.handler.DefaultArtifactHandler;
+import org.apache.maven.artifact.repository.ArtifactRepository;
+import org.apache.maven.artifact.repository.ArtifactRepositoryPolicy;
+import org.apache.maven.artifact.repository.MavenArtifactRepository;
+import org.apache.maven.artifact.repository.layout.DefaultRepositoryLayout;
+import org.apache.maven.execution.DefaultMavenExecutionRequest;
+import org.apache.maven.execution.DefaultMavenExecutionResult;
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.model.Model;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.apache.maven.project.MavenProject;
+import org.apache.maven.repository.internal.MavenRepositorySystemUtils;
+
+import org.eclipse.aether.DefaultRepositorySystemSession;
+import org.eclipse.aether.RepositorySystem;
+import org.eclipse.aether.connector.basic.BasicRepositoryConnectorFactory;
+import org.eclipse.aether.impl.DefaultServiceLocator;
+import org.eclipse.aether.repository.LocalRepository;
+import org.eclipse.aether.spi.connector.RepositoryConnectorFactory;
+import org.eclipse.aether.spi.connector.layout.RepositoryLayoutProvider;
+import org.eclipse.aether.spi.connector.transport.TransporterFactory;
+import org.eclipse.aether.spi.connector.transport.TransporterProvider;
+import org.eclipse.aether.transport.file.FileTransporterFactory;
+
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
+
+/**
+ * Sets up a {@link Mvn2NixMojo} outside of Maven, the way Maven would
+ * inject it, for a project depending on a set of artifacts in one remote
+ * repository.
+ *
+ * Parameters start out at the defaults recorded in the plugin descriptor,
+ * so that the mojo runs in the configuration users get unless told
+ * otherwise. Defaults that are expressions, such as the cache directory's,
+ * are left to the caller.
+ */
+final class MojoHarness
+{
+	private final DefaultServiceLocator locator;
+
+	private final RepositorySystem system;
+
+	private static final String DESCRIPTOR = "META-INF/maven/plugin.xml";
+
+	/* Parameter defaults of the mojo, by field */
+	private static Map<String, Element> defaults;
+
+	/* The Maven session around each repository session handed out */
+	private final Map<DefaultRepositorySystemSession, MavenSession>
+		mavenSessions = new IdentityHashMap<DefaultRepositorySystemSession,
+			MavenSession>();
+
+	MojoHarness() {
+		locator = MavenRepositorySystemUtils.newServiceLocator();
+		locator.addService(RepositoryConnectorFactory.class,
+			BasicRepositoryConnectorFactory.class);
+		locator.addService(TransporterFactory.class,
+			FileTransporterFactory.class);
+		system = locator.getService(RepositorySystem.class);
+	}
+
+	/** The repository system mojos get */
+	public RepositorySystem getSystem() {
+		return system;
+	}
+
+	/** A session using <code>localRepo</code> as the local repository */
+	public DefaultRepositorySystemSession newSession(File localRepo) {
+		DefaultRepositorySystemSession session =
+			MavenRepositorySystemUtils.newSession();
+		session.setLocalRepositoryManager(
+			system.newLocalRepositoryManager(session,
+				new LocalRepository(localRepo)));
+		return session;
+	}
+
+	/** The transporter provider mojos get */
+	public TransporterProvider getTransporterProvider() {
+		return locator.getService(TransporterProvider.class);
+	}
+
+	/**
+	 * The Maven session mojos using <code>session</code> get, the same
+	 * for all of them, as for the modules of one build.
+	 */
+	public synchronized MavenSession getMavenSession(
+		DefaultRepositorySystemSession session) {
+		MavenSession res = mavenSessions.get(session);
+		if (res == null) {
+			res = new MavenSession(null,
+				session,
+				new DefaultMavenExecutionRequest(),
+				new DefaultMavenExecutionResult());
+			mavenSessions.put(session, res);
+		}
+		return res;
+	}
+
+	/** A project depending on each of <code>coords</code> */
+	public static MavenProject newProject(File remoteRepo,
+		List<String> coords) {
+		return newProject(remoteRepo, "benchmark", coords);
+	}
+
+	/**
+	 * A project with <code>artifactId</code> depending on each of
+	 * <code>coords</code>.
+	 */
+	public static MavenProject newProject(File remoteRepo,
+		String artifactId,
+		List<String> coords) {
+		Model model = new Model();
+		model.setModelVersion("4.0.0");
+		model.setGroupId(SyntheticRepository.GROUP);
+		model.setArtifactId(artifactId);
+		model.setVersion("1.0");
+		for (String c : coords) {
+			String[] parts = c.split(":");
+			org.apache.maven.model.Dependency dep =
+				new org.apache.maven.model.Dependency();
+			dep.setGroupId(parts[0]);
+			dep.setArtifactId(parts[1]);
+			dep.setVersion(parts[2]);
+			model.addDependency(dep);
+		}
+		MavenProject project = new MavenProject(model);
+		project.setArtifact(new org.apache.maven.artifact.DefaultArtifact(
+			model.getGroupId(),
+			model.getArtifactId(),
+			model.getVersion(),
+			null,
+			"jar",
+			null,
+			new DefaultArtifactHandler("jar")));
+
+		ArtifactRepositoryPolicy policy = new ArtifactRepositoryPolicy(
+			true,
+			ArtifactRepositoryPolicy.UPDATE_POLICY_NEVER,
+			ArtifactRepositoryPolicy.CHECKSUM_POLICY_FAIL);
+		List<ArtifactRepository> repos = new ArrayList<ArtifactRepository>();
+		repos.add(new MavenArtifactRepository("synthetic",
+			remoteRepo.toURI().toString(),
+			new DefaultRepositoryLayout(),
+			policy,
+			policy));
+		project.setRemoteArtifactRepositories(repos);
+		project.setPluginArtifactRepositories(
+			Collections.<ArtifactRepository>emptyList());
+		return project;
+	}
+
+	/* The default-value configuration elements of the goal */
+	private static synchronized Map<String, Element> defaults()
+		throws IOException {
+		if (defaults != null) {
+			return defaults;
+		}
+		Map<String, Element> res = new LinkedHashMap<String, Element>();
+		try (InputStream in = MojoHarness.class.getClassLoader()
+				.getResourceAsStream(DESCRIPTOR)) {
+			if (in == null) {
+				throw new IOException("No " + DESCRIPTOR +
+					" on the class path");
+			}
+			NodeList config = DocumentBuilderFactory.newInstance()
+				.newDocumentBuilder()
+				.parse(in)
+				.getElementsByTagName("configuration");
+			for (int i = 0; i < config.getLength(); i++) {
+				NodeList params = config.item(i).getChildNodes();
+				for (int j = 0; j < params.getLength(); j++) {
+					Node n = params.item(j);
+					if (n instanceof Element &&
+						((Element) n).hasAttribute(
+							"default-value")) {
+						res.put(n.getNodeName(),
+							(Element) n);
+					}
+				}
+			}
+		} catch (ParserConfigurationException | SAXException e) {
+			throw new IOException("Parsing " + DESCRIPTOR, e);
+		}
+		defaults = res;
+		return res;
+	}
+
+	/* Sets every parameter with a literal default to that default */
+	private static void setDefaults(Mvn2NixMojo mojo)
+		throws IOException, ReflectiveOperationException {
+		for (Map.Entry<String, Element> e : defaults().entrySet()) {
+			String value = e.getValue().getAttribute("default-value");
+			if (value.contains("${")) {
+				continue;
+			}
+			String type = e.getValue().getAttribute("implementation");
+			Object v;
+			if (type.equals("int")) {
+				v = Integer.valueOf(value);
+			} else if (type.equals("long")) {
+				v = Long.valueOf(value);
+			} else if (type.equals("boolean")) {
+				v = Boolean.valueOf(value);
+			} else if (type.equals("java.io.File")) {
+				v = new File(value);
+			} else {
+				v = value;
+			}
+			set(mojo, e.getKey(), v);
+		}
+	}
+
+	/**
+	 * A mojo for <code>project</code> writing to <code>output</code>,
+	 * with every parameter at its default except for the ones set
+	 * through {@link #set}.
+	 */
+	public Mvn2NixMojo newMojo(MavenProject project,
+		DefaultRepositorySystemSession session,
+		File output,
+		File cacheDirectory)
+		throws IOException, ReflectiveOperationException {
+		Mvn2NixMojo mojo = new Mvn2NixMojo();
+		setDefaults(mojo);
+		set(mojo, "project", project);
+		set(mojo, "repoSystem", system);
+		set(mojo, "layoutProvider",
+			locator.getService(RepositoryLayoutProvider.class));
+		set(mojo, "transporterProvider", getTransporterProvider());
+		set(mojo, "repoSession", session);
+		set(mojo, "mavenSession", getMavenSession(session));
+		set(mojo, "reactorProjects", Collections.singletonList(project));
+		set(mojo, "outputFile", output.getPath());
+		set(mojo, "cacheDirectory", cacheDirectory);
+		mojo.setLog(new SystemStreamLog() {
+			@Override
+			public void debug(CharSequence content) {
+			}
+
+			@Override
+			public void debug(CharSequence content, Throwable error) {
+			}
+
+			@Override
+			public void debug(Throwable error) {
+			}
+
+			@Override
+			public void info(CharSequence content) {
+			}
+
+			@Override
+			public void info(CharSequence content, Throwable error) {
+			}
+
+			@Override
+			public void info(Throwable error) {
+			}
+		});
+		return mojo;
+	}
+
+	/** Sets a parameter or component of <code>mojo</code> */
+	public static void set(Mvn2NixMojo mojo, String field, Object value)
+		throws ReflectiveOperationException {
+		Field f = Mvn2NixMojo.class.getDeclaredField(field);
+		f.setAccessible(true);
+		f.set(mojo, value);
+	}
+}
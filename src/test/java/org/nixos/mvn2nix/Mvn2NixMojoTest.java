@@ -0,0 +1,646 @@
+/*
+ * Copyright (c) 2026 The mvn2nix-maven-plugin authors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.nixos.mvn2nix;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.json.Json;
+import javax.json.JsonArrayBuilder;
+import javax.json.JsonObject;
+import javax.json.JsonObjectBuilder;
+import javax.json.JsonReader;
+import javax.json.JsonValue;
+import javax.json.JsonWriter;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.project.MavenProject;
+import org.eclipse.aether.DefaultRepositorySystemSession;
+import org.eclipse.aether.RepositorySystemSession;
+import org.eclipse.aether.repository.RemoteRepository;
+import org.eclipse.aether.spi.connector.transport.GetTask;
+import org.eclipse.aether.spi.connector.transport.PeekTask;
+import org.eclipse.aether.spi.connector.transport.PutTask;
+import org.eclipse.aether.spi.connector.transport.Transporter;
+import org.eclipse.aether.spi.connector.transport.TransporterProvider;
+import org.eclipse.aether.transfer.AbstractTransferListener;
+import org.eclipse.aether.transfer.NoTransporterException;
+import org.eclipse.aether.transfer.TransferEvent;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class Mvn2NixMojoTest {
+
+	private static final String ZEROS =
+		"0000000000000000000000000000000000000000";
+
+	private static final String MARKER =
+		"ffffffffffffffffffffffffffffffffffffffff";
+
+	@TempDir
+	File dir;
+
+	private final MojoHarness harness = new MojoHarness();
+
+	private File remote;
+
+	private List<String> roots;
+
+	@BeforeEach
+	public void generate() throws Exception {
+		SyntheticRepository repo = new SyntheticRepository();
+		repo.artifacts = 120;
+		repo.fanOut = 3;
+		repo.depth = 4;
+		repo.parents = 1;
+		repo.snapshotEvery = 7;
+		repo.relocations = 2;
+		remote = new File(dir, "remote");
+		roots = repo.write(remote);
+	}
+
+	private Mvn2NixMojo mojo(List<String> coords, File output)
+		throws Exception {
+		return harness.newMojo(MojoHarness.newProject(remote, coords),
+			harness.newSession(new File(dir, "local")),
+			output,
+			new File(dir, "cache"));
+	}
+
+	private static String read(File file) throws Exception {
+		return new String(Files.readAllBytes(file.toPath()),
+			StandardCharsets.UTF_8);
+	}
+
+	private static JsonObject parse(File file) throws Exception {
+		try (InputStream in = new FileInputStream(file);
+			JsonReader reader = Json.createReader(in)) {
+			return reader.readObject();
+		}
+	}
+
+	private static JsonObject withSha1(JsonObject entry, String sha1) {
+		JsonObjectBuilder res = Json.createObjectBuilder();
+		for (Map.Entry<String, JsonValue> e : entry.entrySet()) {
+			if (e.getKey().equals("sha1")) {
+				res.add("sha1", sha1);
+			} else {
+				res.add(e.getKey(), e.getValue());
+			}
+		}
+		return res.build();
+	}
+
+	/* Replaces the SHA-1 of every snapshot in file with zeros and that
+	 * of the jar of the release with artifactId with a marker, returning
+	 * the jar's real SHA-1.
+	 */
+	private static String tamper(File file, String artifactId)
+		throws Exception {
+		JsonObject doc = parse(file);
+		JsonArrayBuilder deps = Json.createArrayBuilder();
+		String sha1 = null;
+		for (JsonObject entry : doc.getJsonArray("dependencies")
+				.getValuesAs(JsonObject.class)) {
+			if (entry.containsKey("unresolved-version")) {
+				entry = withSha1(entry, ZEROS);
+			} else if (entry.getString("artifactId")
+					.equals(artifactId) &&
+				entry.getString("extension").equals("jar")) {
+				sha1 = entry.getString("sha1");
+				entry = withSha1(entry, MARKER);
+			}
+			deps.add(entry);
+		}
+		try (OutputStream out = new FileOutputStream(file);
+			JsonWriter writer = Json.createWriter(out)) {
+			writer.writeObject(Json.createObjectBuilder()
+				.add("project", doc.getJsonObject("project"))
+				.add("dependencies", deps)
+				.build());
+		}
+		return sha1;
+	}
+
+	@Test
+	public void shouldWriteSameOutputWithAnyNumberOfThreads()
+		throws Exception {
+		File serial = new File(dir, "serial.json");
+		mojo(roots, serial).execute();
+		for (int i = 0; i < 3; i++) {
+			File parallel = new File(dir, "parallel.json");
+			Mvn2NixMojo mojo = mojo(roots, parallel);
+			MojoHarness.set(mojo, "threads", 8);
+			MojoHarness.set(mojo, "checksumThreads", 4);
+			mojo.execute();
+			assertEquals(read(serial), read(parallel));
+		}
+	}
+
+	private static final int MODULES = 3;
+
+	/* The mojos of a reactor of MODULES modules sharing session, each
+	 * depending on every third root and writing to its own file in
+	 * outputs, so that it shows which ones wrote output.
+	 */
+	private List<Mvn2NixMojo> reactor(DefaultRepositorySystemSession session,
+		File outputs) throws Exception {
+		List<MavenProject> projects = new ArrayList<MavenProject>();
+		for (int i = 0; i < MODULES; i++) {
+			List<String> coords = new ArrayList<String>();
+			for (int j = i; j < roots.size(); j += MODULES) {
+				coords.add(roots.get(j));
+			}
+			projects.add(MojoHarness.newProject(remote,
+				"module" + i,
+				coords));
+		}
+		outputs.mkdirs();
+		List<Mvn2NixMojo> mojos = new ArrayList<Mvn2NixMojo>();
+		for (MavenProject project : projects) {
+			Mvn2NixMojo mojo = harness.newMojo(project,
+				session,
+				new File(outputs, project.getArtifactId() +
+					".json"),
+				new File(dir, "cache"));
+			MojoHarness.set(mojo, "reactorProjects", projects);
+			mojos.add(mojo);
+		}
+		return mojos;
+	}
+
+	private DefaultRepositorySystemSession newSession() {
+		return harness.newSession(new File(dir, "local"));
+	}
+
+	/* The only output written to outputs */
+	private static File onlyOutput(File outputs) {
+		File[] written = outputs.listFiles();
+		assertEquals(1, written.length);
+		return written[0];
+	}
+
+	@Test
+	public void shouldWriteReactorOutputOnceWhateverTheModuleOrder()
+		throws Exception {
+		File outputs = new File(dir, "serial");
+		for (Mvn2NixMojo mojo : reactor(newSession(), outputs)) {
+			mojo.execute();
+		}
+		File serial = onlyOutput(outputs);
+		assertEquals("module" + (MODULES - 1) + ".json",
+			serial.getName());
+
+		/* Every module's closure, as resolved for a single project
+		 * with all the roots
+		 */
+		File single = new File(dir, "single.json");
+		mojo(roots, single).execute();
+		assertEquals(parse(single).getJsonArray("dependencies"),
+			parse(serial).getJsonArray("dependencies"));
+		assertEquals(roots.size(), parse(serial).getJsonObject("project")
+			.getJsonArray("dependencies").size());
+
+		ExecutorService pool = Executors.newFixedThreadPool(MODULES);
+		try {
+			for (int i = 0; i < 3; i++) {
+				outputs = new File(dir, "concurrent" + i);
+				final CountDownLatch start =
+					new CountDownLatch(1);
+				List<Future<Void>> runs =
+					new ArrayList<Future<Void>>();
+				for (final Mvn2NixMojo mojo :
+						reactor(newSession(), outputs)) {
+					MojoHarness.set(mojo, "threads", 2);
+					runs.add(pool.submit(new Callable<Void>() {
+						@Override
+						public Void call() throws Exception {
+							start.await();
+							mojo.execute();
+							return null;
+						}
+					}));
+				}
+				start.countDown();
+				for (Future<Void> run : runs) {
+					run.get();
+				}
+				assertEquals(read(serial), read(onlyOutput(outputs)));
+			}
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	private static boolean walkerRunning() {
+		for (Thread t : Thread.getAllStackTraces().keySet()) {
+			if (t.getName().startsWith("mvn2nix-walker-")) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Test
+	public void shouldCloseIncompleteReactorBuildAtSessionEnd()
+		throws Exception {
+		DefaultRepositorySystemSession session = newSession();
+		File outputs = new File(dir, "outputs");
+		List<Mvn2NixMojo> mojos = reactor(session, outputs);
+		/* The last module fails before it gets to run the goal */
+		for (Mvn2NixMojo mojo : mojos.subList(0, MODULES - 1)) {
+			mojo.execute();
+		}
+		assertNotNull(session.getData().get(Mvn2NixMojo.BUILD_KEY));
+		assertTrue(walkerRunning());
+
+		harness.getMavenSession(session).getRequest()
+			.getExecutionListener().sessionEnded(null);
+		assertNull(session.getData().get(Mvn2NixMojo.BUILD_KEY));
+		assertEquals(0, outputs.listFiles().length);
+		for (int i = 0; i < 50 && walkerRunning(); i++) {
+			Thread.sleep(100);
+		}
+		assertFalse(walkerRunning());
+	}
+
+	/* Counts the files transferred from each location, whether by Aether
+	 * or by the transporters the mojo opens itself, and the transporters
+	 * left open.
+	 */
+	private static final class Transfers extends AbstractTransferListener
+		implements TransporterProvider
+	{
+		final TransporterProvider next;
+		final ConcurrentMap<String, AtomicInteger> counts =
+			new ConcurrentHashMap<String, AtomicInteger>();
+		final AtomicInteger open = new AtomicInteger();
+
+		Transfers(TransporterProvider next) {
+			this.next = next;
+		}
+
+		void count(String location) {
+			counts.putIfAbsent(location, new AtomicInteger());
+			counts.get(location).incrementAndGet();
+		}
+
+		@Override
+		public void transferSucceeded(TransferEvent event) {
+			if (event.getRequestType() == TransferEvent.RequestType.GET) {
+				count(event.getResource().getRepositoryUrl() +
+					event.getResource().getResourceName());
+			}
+		}
+
+		@Override
+		public Transporter newTransporter(RepositorySystemSession session,
+			final RemoteRepository repo)
+			throws NoTransporterException {
+			final Transporter transport =
+				next.newTransporter(session, repo);
+			open.incrementAndGet();
+			return new Transporter() {
+				@Override
+				public int classify(Throwable error) {
+					return transport.classify(error);
+				}
+
+				@Override
+				public void peek(PeekTask task)
+					throws Exception {
+					transport.peek(task);
+				}
+
+				@Override
+				public void get(GetTask task) throws Exception {
+					transport.get(task);
+					count(repo.getUrl() + task.getLocation());
+				}
+
+				@Override
+				public void put(PutTask task) throws Exception {
+					transport.put(task);
+				}
+
+				@Override
+				public void close() {
+					transport.close();
+					open.decrementAndGet();
+				}
+			};
+		}
+	}
+
+	/* A project of a workspace depending on roots, in its own directory
+	 * under dir.
+	 */
+	private MavenProject workspaceProject(String name, List<String> coords) {
+		MavenProject project = MojoHarness.newProject(remote, name, coords);
+		project.setFile(new File(new File(dir, name), "pom.xml"));
+		project.getBasedir().mkdirs();
+		return project;
+	}
+
+	@Test
+	public void shouldResolveWorkspaceProjectsLikeSeparateRuns()
+		throws Exception {
+		/* Two projects sharing a third of their roots and much of their
+		 * closures
+		 */
+		int third = roots.size() / 3;
+		List<MavenProject> projects = new ArrayList<MavenProject>();
+		projects.add(workspaceProject("a", roots.subList(0, 2 * third)));
+		projects.add(workspaceProject("b",
+			roots.subList(third, roots.size())));
+
+		List<File> separate = new ArrayList<File>();
+		for (MavenProject project : projects) {
+			File output = new File(dir, project.getArtifactId() +
+				"-separate.json");
+			Mvn2NixMojo mojo = harness.newMojo(project,
+				harness.newSession(new File(dir,
+					project.getArtifactId() + "-local")),
+				output,
+				new File(dir, project.getArtifactId() + "-cache"));
+			MojoHarness.set(mojo, "useChecksumCache", false);
+			mojo.execute();
+			separate.add(output);
+		}
+
+		DefaultRepositorySystemSession session = newSession();
+		Transfers transfers =
+			new Transfers(harness.getTransporterProvider());
+		session.setTransferListener(transfers);
+		for (MavenProject project : projects) {
+			Mvn2NixMojo mojo = harness.newMojo(project,
+				session,
+				new File("project-info.json"),
+				new File(dir, "cache"));
+			MojoHarness.set(mojo, "transporterProvider", transfers);
+			MojoHarness.set(mojo, "reactorProjects", projects);
+			MojoHarness.set(mojo, "workspaceMode", true);
+			MojoHarness.set(mojo, "useChecksumCache", false);
+			mojo.execute();
+		}
+
+		for (int i = 0; i < projects.size(); i++) {
+			assertEquals(read(separate.get(i)), read(new File(
+				projects.get(i).getBasedir(),
+				"project-info.json")));
+		}
+		assertFalse(transfers.counts.isEmpty());
+		for (Map.Entry<String, AtomicInteger> e :
+				transfers.counts.entrySet()) {
+			assertEquals(1, e.getValue().get(), e.getKey());
+		}
+		/* The workspace was closed after the last project */
+		assertEquals(0, transfers.open.get());
+		assertNull(session.getData().get(Mvn2NixMojo.BUILD_KEY));
+	}
+
+	@Test
+	public void shouldCloseIncompleteWorkspaceAtSessionEnd()
+		throws Exception {
+		List<MavenProject> projects = new ArrayList<MavenProject>();
+		projects.add(workspaceProject("a", roots));
+		projects.add(workspaceProject("b", roots));
+		DefaultRepositorySystemSession session = newSession();
+		Mvn2NixMojo mojo = harness.newMojo(projects.get(0),
+			session,
+			new File("project-info.json"),
+			new File(dir, "cache"));
+		Transfers transfers =
+			new Transfers(harness.getTransporterProvider());
+		MojoHarness.set(mojo, "transporterProvider", transfers);
+		MojoHarness.set(mojo, "reactorProjects", projects);
+		MojoHarness.set(mojo, "workspaceMode", true);
+		mojo.execute();
+		assertTrue(new File(projects.get(0).getBasedir(),
+			"project-info.json").isFile());
+		assertTrue(transfers.open.get() > 0);
+
+		harness.getMavenSession(session).getRequest()
+			.getExecutionListener().sessionEnded(null);
+		assertEquals(0, transfers.open.get());
+		assertNull(session.getData().get(Mvn2NixMojo.BUILD_KEY));
+	}
+
+	@Test
+	public void shouldReuseReleasesAndResolveSnapshotsAgain()
+		throws Exception {
+		List<String> before = new ArrayList<String>(roots);
+		before.remove(before.size() - 1);
+		List<String> after = new ArrayList<String>(roots);
+		after.remove(0);
+
+		File output = new File(dir, "project-info.json");
+		mojo(before, output).execute();
+		/* A release every run reaches, and which is no root */
+		String sha1 = tamper(output, "a" + (roots.size() + 1));
+		assertNotNull(sha1);
+
+		Mvn2NixMojo incremental = mojo(after, output);
+		MojoHarness.set(incremental, "incremental", true);
+		incremental.execute();
+
+		File full = new File(dir, "full.json");
+		mojo(after, full).execute();
+
+		String reused = read(output);
+		assertTrue(reused.contains(MARKER));
+		assertEquals(read(full), reused.replace(MARKER, sha1));
+	}
+
+	@Test
+	public void shouldResolveAgainWhenSha256Changes() throws Exception {
+		File output = new File(dir, "project-info.json");
+		Mvn2NixMojo first = mojo(roots, output);
+		MojoHarness.set(first, "sha256", true);
+		first.execute();
+		assertTrue(read(output).contains("\"sha256\""));
+
+		Mvn2NixMojo incremental = mojo(roots, output);
+		MojoHarness.set(incremental, "incremental", true);
+		incremental.execute();
+
+		File full = new File(dir, "full.json");
+		mojo(roots, full).execute();
+		assertEquals(read(full), read(output));
+	}
+
+	/* A run with the journal, without the checksum cache, which would
+	 * otherwise answer for files taken away from the repository.
+	 */
+	private Mvn2NixMojo journaled(File output) throws Exception {
+		Mvn2NixMojo mojo = mojo(roots, output);
+		MojoHarness.set(mojo, "useJournal", true);
+		MojoHarness.set(mojo, "useChecksumCache", false);
+		return mojo;
+	}
+
+	/* Takes the last release jar in output away from the repository,
+	 * so that a run fails late, returning the files to put back.
+	 */
+	private File[] takeAwayLastJar(File output) throws Exception {
+		JsonObject last = null;
+		for (JsonObject entry : parse(output)
+				.getJsonArray("dependencies")
+				.getValuesAs(JsonObject.class)) {
+			if (entry.getString("extension").equals("jar") &&
+				!entry.containsKey("unresolved-version")) {
+				last = entry;
+			}
+		}
+		assertNotNull(last);
+		File jar = new File(remote, new java.net.URI(
+			last.getString("url")).getPath().substring(
+				remote.toURI().getPath().length()));
+		File sha1 = new File(jar.getPath() + ".sha1");
+		File away = new File(dir, "away");
+		away.mkdirs();
+		assertTrue(jar.renameTo(new File(away, "jar")));
+		assertTrue(sha1.renameTo(new File(away, "sha1")));
+		return new File[] { jar, sha1 };
+	}
+
+	private void putBack(File[] files) {
+		File away = new File(dir, "away");
+		assertTrue(new File(away, "jar").renameTo(files[0]));
+		assertTrue(new File(away, "sha1").renameTo(files[1]));
+	}
+
+	/* Leaves journal as a crash in the middle of an append would */
+	private static void truncateAppend(File journal) throws Exception {
+		List<String> lines = Files.readAllLines(journal.toPath(),
+			StandardCharsets.UTF_8);
+		assertFalse(lines.isEmpty());
+		try (OutputStream out = new FileOutputStream(journal, true)) {
+			out.write(lines.get(0).substring(0, 20)
+				.getBytes(StandardCharsets.UTF_8));
+		}
+	}
+
+	@Test
+	public void shouldResumeInterruptedRun() throws Exception {
+		File full = new File(dir, "full.json");
+		Mvn2NixMojo uninterrupted = mojo(roots, full);
+		MojoHarness.set(uninterrupted, "useChecksumCache", false);
+		uninterrupted.execute();
+		File[] away = takeAwayLastJar(full);
+
+		File output = new File(dir, "project-info.json");
+		File journal = Journal.file(output);
+		try {
+			journaled(output).execute();
+			fail("Resolved a missing jar");
+		} catch (MojoExecutionException expected) {
+		}
+		truncateAppend(journal);
+
+		putBack(away);
+		journaled(output).execute();
+		assertEquals(read(full), read(output));
+		assertFalse(journal.exists());
+	}
+
+	/* Runs a reactor whose modules all write to output with the journal
+	 * and without the checksum cache, from concurrent threads.
+	 */
+	private void runJournaledReactor(File output) throws Exception {
+		ExecutorService pool = Executors.newFixedThreadPool(MODULES);
+		try {
+			List<Future<Void>> runs = new ArrayList<Future<Void>>();
+			for (final Mvn2NixMojo mojo :
+					reactor(newSession(), new File(dir, "unused"))) {
+				MojoHarness.set(mojo, "outputFile", output.getPath());
+				MojoHarness.set(mojo, "useJournal", true);
+				MojoHarness.set(mojo, "useChecksumCache", false);
+				runs.add(pool.submit(new Callable<Void>() {
+					@Override
+					public Void call() throws Exception {
+						mojo.execute();
+						return null;
+					}
+				}));
+			}
+			for (Future<Void> run : runs) {
+				try {
+					run.get();
+				} catch (ExecutionException e) {
+					throw (Exception) e.getCause();
+				}
+			}
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	@Test
+	public void shouldResumeInterruptedReactorRun() throws Exception {
+		File full = new File(dir, "full.json");
+		for (Mvn2NixMojo mojo : reactor(newSession(),
+				new File(dir, "full"))) {
+			MojoHarness.set(mojo, "outputFile", full.getPath());
+			MojoHarness.set(mojo, "useChecksumCache", false);
+			mojo.execute();
+		}
+		File[] away = takeAwayLastJar(full);
+
+		File output = new File(dir, "project-info.json");
+		File journal = Journal.file(output);
+		try {
+			runJournaledReactor(output);
+			fail("Resolved a missing jar");
+		} catch (MojoExecutionException expected) {
+		}
+		truncateAppend(journal);
+
+		putBack(away);
+		runJournaledReactor(output);
+		assertEquals(read(full), read(output));
+		assertFalse(journal.exists());
+	}
+}
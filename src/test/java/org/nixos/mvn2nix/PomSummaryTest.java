@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2026 The mvn2nix-maven-plugin authors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.nixos.mvn2nix;
+
+import java.io.StringReader;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+public class PomSummaryTest {
+
+	private static PomSummary read(String body) throws Exception {
+		return PomSummary.read(new StringReader(
+			"<?xml version=\"1.0\"?>\n<project>" +
+			"<modelVersion>4.0.0</modelVersion>" + body +
+			"</project>"));
+	}
+
+	private static final String PARENT = "<parent>" +
+		"<groupId>org.example</groupId>" +
+		"<artifactId>parent</artifactId>" +
+		"<version>1</version></parent>";
+
+	@Test
+	public void shouldReadParentAndIgnoreManagement() throws Exception {
+		PomSummary pom = read(PARENT +
+			"<artifactId>child</artifactId>" +
+			"<dependencyManagement><dependencies><dependency>" +
+			"<groupId>org.example</groupId>" +
+			"<artifactId>bom</artifactId><version>${bom}</version>" +
+			"<type>pom</type><scope>import</scope>" +
+			"</dependency></dependencies></dependencyManagement>" +
+			"<build><plugins><plugin><dependencies><dependency>" +
+			"<artifactId>x</artifactId></dependency></dependencies>" +
+			"</plugin></plugins></build>");
+		assertTrue(pom.isSimple());
+		assertEquals("org.example:parent:pom:1",
+			pom.getParent().toString());
+
+		assertNull(read("<artifactId>root</artifactId>").getParent());
+	}
+
+	@Test
+	public void shouldNotBeSimpleWithDependencies() throws Exception {
+		assertFalse(read(PARENT + "<dependencies><dependency>" +
+			"<artifactId>x</artifactId></dependency>" +
+			"</dependencies>").isSimple());
+		assertFalse(read("<profiles><profile><dependencies>" +
+			"<dependency><artifactId>x</artifactId></dependency>" +
+			"</dependencies></profile></profiles>").isSimple());
+		assertFalse(read("<distributionManagement><relocation>" +
+			"<groupId>org.other</groupId></relocation>" +
+			"</distributionManagement>").isSimple());
+		assertFalse(read("<parent><groupId>org.example</groupId>" +
+			"<artifactId>parent</artifactId>" +
+			"<version>${revision}</version></parent>").isSimple());
+	}
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2026 The mvn2nix-maven-plugin authors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.nixos.mvn2nix;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import javax.json.JsonObject;
+import org.eclipse.aether.artifact.DefaultArtifact;
+import org.eclipse.aether.graph.Dependency;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class PreviousOutputTest {
+
+	@TempDir
+	File dir;
+
+	private static String entry(String artifactId, String version,
+		String extra) {
+		return "{\"artifactId\":\"" + artifactId + "\"," +
+			"\"groupId\":\"org.example\",\"version\":\"" + version +
+			"\",\"classifier\":\"\",\"extension\":\"jar\"," +
+			"\"dependencies\":[{\"artifactId\":\"b\"," +
+			"\"groupId\":\"org.example\",\"version\":\"2.0\"," +
+			"\"classifier\":\"\",\"extension\":\"jar\"," +
+			"\"scope\":\"runtime\",\"optional\":true," +
+			"\"exclusions\":[{\"artifactId\":\"c\"," +
+			"\"groupId\":\"org.example\",\"classifier\":\"\"," +
+			"\"extension\":\"jar\"}]}]" + extra + "}";
+	}
+
+	@Test
+	public void shouldOnlyIndexReleases() throws Exception {
+		File file = new File(dir, "project-info.json");
+		Files.write(file.toPath(), ("{\"project\":{}," +
+			"\"dependencies\":[" +
+			entry("release", "1.0", ",\"url\":\"u\",\"sha1\":\"s\"") +
+			"," + entry("snapshot", "1.0-SNAPSHOT", "") + "," +
+			entry("timestamped", "1.0-20200101.120000-1",
+				",\"unresolved-version\":\"1.0-SNAPSHOT\"") +
+			"]}").getBytes(StandardCharsets.UTF_8));
+
+		PreviousOutput previous = PreviousOutput.load(file);
+		assertEquals(1, previous.size());
+		JsonObject release = previous.get(
+			new DefaultArtifact("org.example:release:1.0"));
+		assertNotNull(release);
+		assertEquals("s", release.getString("sha1"));
+		assertNull(previous.get(
+			new DefaultArtifact("org.example:snapshot:1.0-SNAPSHOT")));
+		assertNull(previous.get(new DefaultArtifact(
+			"org.example:timestamped:1.0-20200101.120000-1")));
+		assertNull(previous.get(
+			new DefaultArtifact("org.example:release:1.1")));
+
+		List<Dependency> deps = PreviousOutput.getDependencies(release);
+		assertEquals(1, deps.size());
+		Dependency dep = deps.get(0);
+		assertEquals("org.example:b:jar:2.0",
+			dep.getArtifact().toString());
+		assertEquals("runtime", dep.getScope());
+		assertTrue(dep.isOptional());
+		assertEquals("c",
+			dep.getExclusions().iterator().next().getArtifactId());
+	}
+}
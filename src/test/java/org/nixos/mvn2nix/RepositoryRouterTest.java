@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 2026 The mvn2nix-maven-plugin authors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.nixos.mvn2nix;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import org.eclipse.aether.repository.RemoteRepository;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class RepositoryRouterTest {
+
+	private static final RemoteRepository CENTRAL =
+		new RemoteRepository.Builder("central", "default",
+			"https://repo.maven.apache.org/maven2").build();
+
+	private static final RemoteRepository NEXUS =
+		new RemoteRepository.Builder("nexus", "default",
+			"https://nexus.example/repository/internal").build();
+
+	private static final List<RemoteRepository> REPOS =
+		Arrays.asList(CENTRAL, NEXUS);
+
+	@Test
+	public void shouldRouteByGroupIdPrefix() {
+		RepositoryRouter router = new RepositoryRouter();
+		assertEquals(REPOS, router.order("com.example.app", REPOS));
+
+		router.learn("com.example", REPOS, NEXUS);
+		assertEquals(Arrays.asList(NEXUS, CENTRAL),
+			router.order("com.example.app", REPOS));
+		assertEquals(REPOS, router.order("org.example", REPOS));
+		assertEquals(1, router.getRouted());
+	}
+
+	@Test
+	public void shouldSkipKnownMisses() {
+		RepositoryRouter router = new RepositoryRouter();
+		router.learn("com.example", REPOS, NEXUS);
+		router.learn("org.example", REPOS, CENTRAL);
+		assertEquals(Arrays.asList(NEXUS),
+			router.order("com.example", REPOS));
+		assertEquals(1, router.getSkipped());
+	}
+
+	@Test
+	public void shouldPersistRoutes(@TempDir Path dir) throws Exception {
+		RepositoryRouter router = new RepositoryRouter();
+		router.learn("com.example", REPOS, NEXUS);
+		router.save(dir.toFile());
+
+		RepositoryRouter loaded = new RepositoryRouter();
+		loaded.load(dir.toFile());
+		assertEquals(1, loaded.size());
+		assertEquals(Arrays.asList(NEXUS, CENTRAL),
+			loaded.order("com.example", REPOS));
+		loaded.load(new File(dir.toFile(), "missing"));
+	}
+}
@@ -0,0 +1,194 @@
+/*
+ * Copyright (c) 2026 The mvn2nix-maven-plugin authors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.nixos.mvn2nix;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Arrays;
+import java.util.List;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import org.eclipse.aether.DefaultRepositorySystemSession;
+import org.eclipse.aether.artifact.Artifact;
+import org.eclipse.aether.repository.Authentication;
+import org.eclipse.aether.repository.RemoteRepository;
+import org.eclipse.aether.util.repository.AuthenticationBuilder;
+import org.eclipse.aether.util.repository.DefaultAuthenticationSelector;
+import org.eclipse.aether.util.repository.DefaultMirrorSelector;
+
+public class ResolveRequestTest {
+
+	@Test
+	public void shouldParseRootsRepositoriesAndProject() {
+		ResolveRequest req = ResolveRequest.parse(
+			"{\"roots\": [\"org.example:app:1.0\"," +
+			" \"org.example:lib:jar:tests:2.0-SNAPSHOT\"]," +
+			" \"repositories\": [{\"id\": \"internal\"," +
+			" \"url\": \"https://nexus.example/repo\"}]," +
+			" \"project\": \"org.example:top:pom:3.0\"}");
+		assertFalse(req.shutdown);
+		assertEquals(2, req.roots.size());
+		Artifact lib = req.roots.get(1).getArtifact();
+		assertEquals("lib", lib.getArtifactId());
+		assertEquals("tests", lib.getClassifier());
+		assertEquals("jar", lib.getExtension());
+		assertEquals("2.0-SNAPSHOT", lib.getVersion());
+		assertEquals("compile", req.roots.get(0).getScope());
+		assertEquals(1, req.repositories.size());
+		assertEquals("internal", req.repositories.get(0).getId());
+		assertEquals("https://nexus.example/repo",
+			req.repositories.get(0).getUrl());
+		assertEquals("top", req.project.getArtifactId());
+		assertEquals("pom", req.project.getExtension());
+	}
+
+	@Test
+	public void shouldDefaultTheProject() {
+		ResolveRequest req = ResolveRequest.parse(
+			"{\"roots\": [\"org.example:app:1.0\"]}");
+		assertEquals(ResolveRequest.DEFAULT_PROJECT,
+			req.project.toString());
+		assertTrue(req.repositories.isEmpty());
+	}
+
+	@Test
+	public void shouldOnlyAuthenticateMirroredRepositories(
+		@TempDir File dir) {
+		MojoHarness harness = new MojoHarness();
+		DefaultRepositorySystemSession session =
+			harness.newSession(dir);
+		Authentication secret = new AuthenticationBuilder()
+			.addUsername("deploy").addPassword("secret").build();
+		session.setAuthenticationSelector(
+			new DefaultAuthenticationSelector()
+				.add("internal", secret)
+				.add("mirror", secret));
+		session.setMirrorSelector(new DefaultMirrorSelector().add(
+			"mirror",
+			"https://mirror.example/repo",
+			"default",
+			false,
+			"mirrored",
+			null));
+		ResolveRequest req = ResolveRequest.parse(
+			"{\"roots\": [\"org.example:app:1.0\"]," +
+			" \"repositories\": [{\"id\": \"internal\"," +
+			" \"url\": \"https://elsewhere.example/repo\"}," +
+			" {\"id\": \"mirrored\"," +
+			" \"url\": \"https://mirrored.example/repo\"}]}");
+		List<RemoteRepository> repos = req.resolutionRepositories(
+			harness.getSystem(),
+			session);
+		assertEquals(2, repos.size());
+		assertEquals("internal", repos.get(0).getId());
+		assertEquals("https://elsewhere.example/repo",
+			repos.get(0).getUrl());
+		assertNull(repos.get(0).getAuthentication());
+		assertEquals("mirror", repos.get(1).getId());
+		assertEquals("https://mirror.example/repo",
+			repos.get(1).getUrl());
+		assertEquals(secret, repos.get(1).getAuthentication());
+	}
+
+	@Test
+	public void shouldCheckTheToken() {
+		ResolveRequest req = ResolveRequest.parse(
+			"{\"token\": \"secret\", \"shutdown\": true}");
+		assertTrue(req.hasToken("secret"));
+		assertFalse(req.hasToken("secrets"));
+		assertFalse(ResolveRequest.parse("{\"shutdown\": true}")
+			.hasToken("secret"));
+	}
+
+	@Test
+	public void shouldWriteAnOwnerOnlyToken(@TempDir File dir)
+		throws IOException {
+		File file = new File(dir, "cache/serve.token");
+		String token = ResolveRequest.writeToken(file);
+		assertEquals(64, token.length());
+		assertEquals(token, new String(Files.readAllBytes(file.toPath()),
+			StandardCharsets.UTF_8));
+		assertEquals("rw-------", PosixFilePermissions.toString(
+			Files.getPosixFilePermissions(file.toPath())));
+		assertFalse(token.equals(ResolveRequest.writeToken(file)));
+	}
+
+	@Test
+	public void shouldReadOneLine() throws IOException {
+		StringReader in = new StringReader("{\"a\": 1}\r\nrest\n");
+		assertEquals("{\"a\": 1}", ResolveRequest.readLine(in));
+		assertEquals("rest", ResolveRequest.readLine(in));
+		assertNull(ResolveRequest.readLine(in));
+	}
+
+	@Test
+	public void shouldRejectOverlongLines() throws IOException {
+		char[] line = new char[ResolveRequest.MAX_LENGTH + 1];
+		Arrays.fill(line, ' ');
+		try {
+			ResolveRequest.readLine(new StringReader(new String(line)));
+			fail("Read an overlong line");
+		} catch (IllegalArgumentException expected) {
+		}
+		line[line.length - 1] = '\n';
+		assertEquals(ResolveRequest.MAX_LENGTH, ResolveRequest.readLine(
+			new StringReader(new String(line))).length());
+	}
+
+	@Test
+	public void shouldRecognizeShutdown() {
+		assertTrue(ResolveRequest.parse("{\"shutdown\": true}").shutdown);
+	}
+
+	private static void assertRejected(String line) {
+		try {
+			ResolveRequest.parse(line);
+			fail("Accepted " + line);
+		} catch (IllegalArgumentException expected) {
+		}
+	}
+
+	@Test
+	public void shouldRejectInvalidRequests() {
+		assertRejected(null);
+		assertRejected("");
+		assertRejected("[\"org.example:app:1.0\"]");
+		assertRejected("{\"roots\": [\"org.example:app:1.0\"");
+		assertRejected("{\"roots\": []}");
+		assertRejected("{\"roots\": [\"app\"]}");
+		assertRejected("{\"roots\": [42]}");
+		assertRejected("{\"roots\": \"org.example:app:1.0\"}");
+		assertRejected("{\"roots\": [\"org.example:app:1.0\"]," +
+			" \"repositories\": [{\"id\": \"internal\"}]}");
+	}
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright (c) 2026 The mvn2nix-maven-plugin authors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.nixos.mvn2nix;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+public class RetriesTest {
+
+	@Test
+	public void shouldAllowTheGivenNumberOfRetries() {
+		Retries retries = new Retries(2, 10);
+		assertTrue(retries.allowed(0));
+		assertTrue(retries.allowed(1));
+		assertFalse(retries.allowed(2));
+	}
+
+	@Test
+	public void shouldDoubleTheBackoff() {
+		Retries retries = new Retries(5, 10);
+		assertEquals(10, retries.delayMillis(0));
+		assertEquals(20, retries.delayMillis(1));
+		assertEquals(80, retries.delayMillis(3));
+	}
+
+	@Test
+	public void shouldCapTheBackoff() {
+		Retries retries = new Retries(100, 500);
+		assertEquals(Retries.MAX_BACKOFF_MILLIS, retries.delayMillis(7));
+		assertEquals(Retries.MAX_BACKOFF_MILLIS, retries.delayMillis(99));
+		assertEquals(Retries.MAX_BACKOFF_MILLIS,
+			new Retries(1, Long.MAX_VALUE).delayMillis(0));
+	}
+}
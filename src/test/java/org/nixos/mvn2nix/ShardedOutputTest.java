@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2026 The mvn2nix-maven-plugin authors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.nixos.mvn2nix;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Map;
+import javax.json.Json;
+import javax.json.stream.JsonGenerator;
+import org.eclipse.aether.artifact.DefaultArtifact;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class ShardedOutputTest {
+
+	private static final String[] COORDS = { "org.b:x:1.0", "org.a:y:1.0",
+		"org.c:z:1.0", "org.a:x:1.0" };
+
+	private static Map<String, String> write(File index, int count,
+		boolean sorted) throws Exception {
+		try (ShardedOutput shards = new ShardedOutput(index, count);
+			EntryWriter entries = EntryWriter.sharded(shards,
+				sorted, false)) {
+			for (String coords : COORDS) {
+				final DefaultArtifact art =
+					new DefaultArtifact(coords);
+				entries.write(EntryWriter.key(art, art.getVersion()),
+					new EntryWriter.Body() {
+					@Override
+					public void write(JsonGenerator gen) {
+						gen.write("artifactId",
+							art.getArtifactId());
+						gen.write("groupId",
+							art.getGroupId());
+						gen.write("version",
+							art.getVersion());
+					}
+				});
+			}
+			entries.finish(null);
+			shards.finish();
+
+			Map<String, String> files = shards.getFiles();
+			try (JsonGenerator gen = Json.createGenerator(
+					new FileOutputStream(index))) {
+				gen.writeStartObject();
+				gen.writeStartObject("shards");
+				for (Map.Entry<String, String> e :
+						files.entrySet()) {
+					gen.write(e.getKey(), e.getValue());
+				}
+				gen.writeEnd();
+				gen.writeEnd();
+			}
+			return files;
+		}
+	}
+
+	@Test
+	public void shouldShardByGroupId(@TempDir Path dir) throws Exception {
+		File index = dir.resolve("project-info.json").toFile();
+		Map<String, String> files = write(index, 1, true);
+		assertEquals("{org.a=project-info-shards/0.json, " +
+			"org.b=project-info-shards/0.json, " +
+			"org.c=project-info-shards/0.json}", files.toString());
+		String shard = new String(Files.readAllBytes(
+			dir.resolve(files.get("org.a"))), "UTF-8");
+		assertTrue(shard.startsWith("{\"dependencies\":[{" +
+			"\"artifactId\":\"x\",\"groupId\":\"org.a\""));
+		assertTrue(shard.indexOf("org.a") < shard.indexOf("org.b"));
+
+		PreviousOutput previous = PreviousOutput.load(index);
+		assertNotNull(previous.get(new DefaultArtifact("org.c:z:1.0")));
+	}
+
+	@Test
+	public void shouldReplaceOldShards(@TempDir Path dir) throws Exception {
+		File index = dir.resolve("out.json").toFile();
+		write(index, 1, false);
+		Map<String, String> files = write(index, 16, false);
+
+		File shards = ShardedOutput.directory(index);
+		assertFalse(new File(shards, "0.json").exists());
+		assertEquals(3, files.size());
+		for (String name : files.values()) {
+			assertTrue(dir.resolve(name).toFile().isFile());
+		}
+		String[] left = shards.list();
+		assertEquals(new HashSet<String>(files.values()).size(),
+			left.length);
+	}
+}
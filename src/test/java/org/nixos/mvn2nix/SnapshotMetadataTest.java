@@ -0,0 +1,183 @@
+/*
+ * Copyright (c) 2026 The mvn2nix-maven-plugin authors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.nixos.mvn2nix;
+
+import java.io.File;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import org.eclipse.aether.DefaultRepositorySystemSession;
+import org.eclipse.aether.RepositorySystem;
+import org.eclipse.aether.artifact.Artifact;
+import org.eclipse.aether.artifact.DefaultArtifact;
+import org.eclipse.aether.repository.RemoteRepository;
+import org.eclipse.aether.resolution.MetadataRequest;
+import org.eclipse.aether.resolution.MetadataResult;
+import org.eclipse.aether.transfer.MetadataNotFoundException;
+import org.eclipse.aether.transfer.MetadataTransferException;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class SnapshotMetadataTest {
+
+	private static final RemoteRepository CENTRAL =
+		new RemoteRepository.Builder("central", "default",
+			"https://repo.maven.apache.org/maven2").build();
+
+	private static final RemoteRepository NEXUS =
+		new RemoteRepository.Builder("nexus", "default",
+			"https://nexus.example/repository/snapshots").build();
+
+	/* Answers every request, pretending only nexus had fresh metadata */
+	private static RepositorySystem fakeSystem(final File file,
+		final List<Collection<MetadataRequest>> batches) {
+		return (RepositorySystem) Proxy.newProxyInstance(
+			RepositorySystem.class.getClassLoader(),
+			new Class<?>[] { RepositorySystem.class },
+			new InvocationHandler() {
+				@Override
+				@SuppressWarnings("unchecked")
+				public Object invoke(Object proxy, Method method,
+					Object[] args) {
+					Collection<MetadataRequest> reqs =
+						(Collection<MetadataRequest>) args[1];
+					batches.add(reqs);
+					List<MetadataResult> res =
+						new ArrayList<MetadataResult>();
+					for (MetadataRequest req : reqs) {
+						MetadataResult r =
+							new MetadataResult(req);
+						if (req.getRepository() == NEXUS) {
+							r.setMetadata(req.getMetadata()
+								.setFile(file));
+							r.setUpdated(true);
+						}
+						res.add(r);
+					}
+					return res;
+				}
+			});
+	}
+
+	@Test
+	public void shouldResolveEachSnapshotOnceInOneBatch(@TempDir Path dir)
+		throws Exception {
+		File file = dir.resolve("maven-metadata-nexus.xml").toFile();
+		Files.write(file.toPath(), "<metadata/>".getBytes("UTF-8"));
+		List<Collection<MetadataRequest>> batches =
+			new ArrayList<Collection<MetadataRequest>>();
+		SnapshotMetadata snapshots = new SnapshotMetadata(
+			fakeSystem(file, batches),
+			new DefaultRepositorySystemSession(),
+			Arrays.asList(CENTRAL, NEXUS),
+			0,
+			0);
+
+		Artifact jar = new DefaultArtifact("com.example:app:1.0-SNAPSHOT");
+		Artifact pom = new DefaultArtifact(
+			"com.example:app:pom:1.0-SNAPSHOT");
+		Artifact lib = new DefaultArtifact("com.example:lib:2.0-SNAPSHOT");
+		Artifact release = new DefaultArtifact("com.example:lib:1.0");
+		snapshots.prefetch(Arrays.asList(jar, pom, lib, release));
+		snapshots.prefetch(Arrays.asList(pom, lib));
+
+		assertEquals(1, batches.size());
+		assertEquals(4, batches.get(0).size());
+		assertEquals(2, snapshots.getRequested());
+
+		Artifact timestamped = new DefaultArtifact(
+			"com.example:app:1.0-20260101.120000-1");
+		assertEquals(LocalChecksums.digest(file),
+			snapshots.getFreshSha1(NEXUS, timestamped));
+		assertNull(snapshots.getFreshSha1(CENTRAL, timestamped));
+	}
+
+	/* Fails central's requests with a transfer error in the first
+	 * batch, and reports nexus's metadata as missing.
+	 */
+	private static RepositorySystem flakySystem(
+		final List<Collection<MetadataRequest>> batches) {
+		return (RepositorySystem) Proxy.newProxyInstance(
+			RepositorySystem.class.getClassLoader(),
+			new Class<?>[] { RepositorySystem.class },
+			new InvocationHandler() {
+				@Override
+				@SuppressWarnings("unchecked")
+				public Object invoke(Object proxy, Method method,
+					Object[] args) {
+					Collection<MetadataRequest> reqs =
+						(Collection<MetadataRequest>) args[1];
+					batches.add(reqs);
+					List<MetadataResult> res =
+						new ArrayList<MetadataResult>();
+					for (MetadataRequest req : reqs) {
+						MetadataResult r =
+							new MetadataResult(req);
+						if (req.getRepository() == NEXUS) {
+							r.setException(
+								new MetadataNotFoundException(
+									req.getMetadata(),
+									NEXUS));
+						} else if (batches.size() == 1) {
+							r.setException(
+								new MetadataTransferException(
+									req.getMetadata(),
+									CENTRAL,
+									"503"));
+						}
+						res.add(r);
+					}
+					return res;
+				}
+			});
+	}
+
+	@Test
+	public void shouldRetryFailedTransfersOnly() throws Exception {
+		List<Collection<MetadataRequest>> batches =
+			new ArrayList<Collection<MetadataRequest>>();
+		SnapshotMetadata snapshots = new SnapshotMetadata(
+			flakySystem(batches),
+			new DefaultRepositorySystemSession(),
+			Arrays.asList(CENTRAL, NEXUS),
+			2,
+			1);
+		snapshots.prefetch(Arrays.asList(
+			(Artifact) new DefaultArtifact(
+				"com.example:app:1.0-SNAPSHOT")));
+
+		assertEquals(2, batches.size());
+		assertEquals(1, batches.get(1).size());
+		assertEquals(CENTRAL,
+			batches.get(1).iterator().next().getRepository());
+		assertEquals(1, snapshots.getRetried());
+	}
+}
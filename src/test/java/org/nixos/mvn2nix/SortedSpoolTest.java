@@ -0,0 +1,69 @@
+/*
+ * Copyright (c) 2026 The mvn2nix-maven-plugin authors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.nixos.mvn2nix;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import org.junit.jupiter.api.Test;
+
+public class SortedSpoolTest {
+
+	private static List<String> drain(SortedSpool spool) throws Exception {
+		final List<String> res = new ArrayList<String>();
+		spool.drain(new SortedSpool.Sink() {
+			@Override
+			public void accept(String value) {
+				res.add(value);
+			}
+		});
+		return res;
+	}
+
+	@Test
+	public void shouldOrderByKeyInMemory() throws Exception {
+		try (SortedSpool spool = new SortedSpool(100)) {
+			spool.add("b", "{\"b\":1}");
+			spool.add("a", "{\"a\":1}");
+			spool.add("c", "{\"c\":1}");
+			assertEquals(Arrays.asList("{\"a\":1}", "{\"b\":1}", "{\"c\":1}"),
+				drain(spool));
+		}
+	}
+
+	@Test
+	public void shouldMergeSpilledRuns() throws Exception {
+		List<String> expected = new ArrayList<String>();
+		try (SortedSpool spool = new SortedSpool(7)) {
+			for (int i = 99; i >= 0; i--) {
+				spool.add(String.format("k%03d", i), "v" + i);
+			}
+			for (int i = 0; i < 100; i++) {
+				expected.add("v" + i);
+			}
+			assertEquals(expected, drain(spool));
+		}
+	}
+}
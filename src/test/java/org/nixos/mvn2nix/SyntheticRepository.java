@@ -0,0 +1,273 @@
+/*
+ * Copyright (c) 2026 The mvn2nix-maven-plugin authors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.nixos.mvn2nix;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Writes a Maven repository of a given shape to disk, to be served over
+ * <code>file://</code>.
+ *
+ * Artifacts are spread evenly over <code>depth</code> levels and each one
+ * depends on <code>fanOut</code> artifacts of the next level, so the
+ * artifacts of level 0 reach the whole repository. Every artifact
+ * inherits from a chain of <code>parents</code> parent POMs, every
+ * <code>snapshotEvery</code>th artifact is a timestamped snapshot, and
+ * <code>relocations</code> relocated artifacts are depended on from level
+ * 0. Like many relocated artifacts on Central, these still come with a
+ * jar of their own.
+ * The same settings always produce the same repository.
+ */
+final class SyntheticRepository
+{
+	public static final String GROUP = "org.nixos.mvn2nix.synthetic";
+
+	private static final String TIMESTAMP = "20200101.120000";
+
+	public int artifacts = 1000;
+
+	public int fanOut = 4;
+
+	public int depth = 6;
+
+	public int parents = 2;
+
+	/* 0 for no snapshots */
+	public int snapshotEvery = 0;
+
+	public int relocations = 0;
+
+	public long seed = 42;
+
+	private File dir;
+
+	private static String groupId(int i) {
+		return GROUP + ".g" + (i % 10);
+	}
+
+	private String version(int i) {
+		return snapshotEvery > 0 && i % snapshotEvery == 0 ?
+			"1.0-SNAPSHOT" : "1.0";
+	}
+
+	private int level(int i) {
+		return (int) ((long) i * depth / artifacts);
+	}
+
+	private int firstOfLevel(int level) {
+		return (int) (((long) level * artifacts + depth - 1) / depth);
+	}
+
+	/**
+	 * Writes the repository into <code>dir</code>, returning the
+	 * coordinates of the artifacts of level 0.
+	 */
+	public List<String> write(File dir) throws IOException {
+		this.dir = dir;
+		Random random = new Random(seed);
+
+		for (int p = 0; p < parents; p++) {
+			StringBuilder pom = header(GROUP, "parent-" + p, "1.0",
+				"pom", p + 1 < parents ? "parent-" + (p + 1) : null);
+			writeFile(GROUP, "parent-" + p, "1.0", "1.0", "pom",
+				pom.append("</project>\n").toString()
+					.getBytes(StandardCharsets.UTF_8));
+		}
+
+		List<List<String>> extra = new ArrayList<List<String>>();
+		for (int i = 0; i < artifacts; i++) {
+			extra.add(new ArrayList<String>());
+		}
+		int roots = firstOfLevel(1);
+		for (int k = 0; k < relocations && artifacts > roots; k++) {
+			int target = roots + random.nextInt(artifacts - roots);
+			StringBuilder pom = header(GROUP, "old-" + k, "1.0",
+				"jar", null);
+			pom.append("  <distributionManagement><relocation>")
+				.append("<groupId>").append(groupId(target))
+				.append("</groupId><artifactId>a").append(target)
+				.append("</artifactId><version>")
+				.append(version(target))
+				.append("</version></relocation>")
+				.append("</distributionManagement>\n</project>\n");
+			writeFile(GROUP, "old-" + k, "1.0", "1.0", "pom",
+				pom.toString().getBytes(StandardCharsets.UTF_8));
+			writeFile(GROUP, "old-" + k, "1.0", "1.0", "jar",
+				("relocated " + k).getBytes(StandardCharsets.UTF_8));
+			extra.get(k % roots).add(GROUP + ":old-" + k + ":1.0");
+		}
+
+		for (int i = 0; i < artifacts; i++) {
+			int level = level(i);
+			StringBuilder pom = header(groupId(i), "a" + i,
+				version(i), "jar", parents > 0 ? "parent-0" : null);
+			pom.append("  <dependencies>\n");
+			if (level + 1 < depth) {
+				int first = firstOfLevel(level + 1);
+				int count = firstOfLevel(level + 2) - first;
+				for (int d = 0; d < fanOut && count > 0; d++) {
+					int dep = first + random.nextInt(count);
+					dependency(pom, groupId(dep), "a" + dep,
+						version(dep));
+				}
+			}
+			for (String coords : extra.get(i)) {
+				String[] parts = coords.split(":");
+				dependency(pom, parts[0], parts[1], parts[2]);
+			}
+			pom.append("  </dependencies>\n</project>\n");
+
+			String version = version(i);
+			String fileVersion = version.endsWith("-SNAPSHOT") ?
+				"1.0-" + TIMESTAMP + "-1" : version;
+			writeFile(groupId(i), "a" + i, version, fileVersion,
+				"pom",
+				pom.toString().getBytes(StandardCharsets.UTF_8));
+			writeFile(groupId(i), "a" + i, version, fileVersion,
+				"jar",
+				("synthetic " + i).getBytes(StandardCharsets.UTF_8));
+			if (!version.equals(fileVersion)) {
+				writeSnapshotMetadata(groupId(i), "a" + i, version);
+			}
+		}
+
+		List<String> res = new ArrayList<String>();
+		for (int i = 0; i < roots; i++) {
+			res.add(groupId(i) + ":a" + i + ":" + version(i));
+		}
+		return res;
+	}
+
+	private static StringBuilder header(String groupId, String artifactId,
+		String version, String packaging, String parent) {
+		StringBuilder pom = new StringBuilder();
+		pom.append("<project>\n  <modelVersion>4.0.0</modelVersion>\n");
+		if (parent != null) {
+			pom.append("  <parent><groupId>").append(GROUP)
+				.append("</groupId><artifactId>").append(parent)
+				.append("</artifactId><version>1.0</version>")
+				.append("</parent>\n");
+		}
+		pom.append("  <groupId>").append(groupId)
+			.append("</groupId>\n  <artifactId>").append(artifactId)
+			.append("</artifactId>\n  <version>").append(version)
+			.append("</version>\n  <packaging>").append(packaging)
+			.append("</packaging>\n");
+		return pom;
+	}
+
+	private static void dependency(StringBuilder pom, String groupId,
+		String artifactId, String version) {
+		pom.append("    <dependency><groupId>").append(groupId)
+			.append("</groupId><artifactId>").append(artifactId)
+			.append("</artifactId><version>").append(version)
+			.append("</version></dependency>\n");
+	}
+
+	private File versionDir(String groupId, String artifactId,
+		String version) {
+		return new File(dir, groupId.replace('.', '/') + '/' +
+			artifactId + '/' + version);
+	}
+
+	private void writeFile(String groupId, String artifactId,
+		String version, String fileVersion, String extension,
+		byte[] contents) throws IOException {
+		File file = new File(versionDir(groupId, artifactId, version),
+			artifactId + '-' + fileVersion + '.' + extension);
+		writeWithSha1(file, contents);
+	}
+
+	private void writeSnapshotMetadata(String groupId, String artifactId,
+		String version) throws IOException {
+		String value = "1.0-" + TIMESTAMP + "-1";
+		StringBuilder xml = new StringBuilder();
+		xml.append("<metadata>\n  <groupId>").append(groupId)
+			.append("</groupId>\n  <artifactId>").append(artifactId)
+			.append("</artifactId>\n  <version>").append(version)
+			.append("</version>\n  <versioning>\n    <snapshot>")
+			.append("<timestamp>").append(TIMESTAMP)
+			.append("</timestamp><buildNumber>1</buildNumber>")
+			.append("</snapshot>\n    <lastUpdated>")
+			.append(TIMESTAMP.replace(".", ""))
+			.append("</lastUpdated>\n    <snapshotVersions>\n");
+		for (String extension : new String[] { "pom", "jar" }) {
+			xml.append("      <snapshotVersion><extension>")
+				.append(extension).append("</extension><value>")
+				.append(value).append("</value><updated>")
+				.append(TIMESTAMP.replace(".", ""))
+				.append("</updated></snapshotVersion>\n");
+		}
+		xml.append("    </snapshotVersions>\n  </versioning>\n")
+			.append("</metadata>\n");
+		writeWithSha1(new File(versionDir(groupId, artifactId, version),
+			"maven-metadata.xml"),
+			xml.toString().getBytes(StandardCharsets.UTF_8));
+	}
+
+	private static void writeWithSha1(File file, byte[] contents)
+		throws IOException {
+		file.getParentFile().mkdirs();
+		Files.write(file.toPath(), contents);
+		MessageDigest md;
+		try {
+			md = MessageDigest.getInstance("SHA-1");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+		Files.write(new File(file.getPath() + ".sha1").toPath(),
+			LocalChecksums.toHex(md.digest(contents))
+				.getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Writes a repository to the directory given as the first argument,
+	 * taking artifacts, fan-out, depth, parents, snapshotEvery and
+	 * relocations as further optional arguments.
+	 */
+	public static void main(String[] args) throws IOException {
+		SyntheticRepository repo = new SyntheticRepository();
+		int[] values = { repo.artifacts, repo.fanOut, repo.depth,
+			repo.parents, repo.snapshotEvery, repo.relocations };
+		for (int i = 1; i < args.length && i <= values.length; i++) {
+			values[i - 1] = Integer.parseInt(args[i]);
+		}
+		repo.artifacts = values[0];
+		repo.fanOut = values[1];
+		repo.depth = values[2];
+		repo.parents = values[3];
+		repo.snapshotEvery = values[4];
+		repo.relocations = values[5];
+		List<String> roots = repo.write(new File(args[0]));
+		System.out.println("Wrote " + repo.artifacts + " artifacts with " +
+			roots.size() + " roots to " + args[0]);
+	}
+}